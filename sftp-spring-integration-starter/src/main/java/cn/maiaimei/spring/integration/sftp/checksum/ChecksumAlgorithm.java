@@ -0,0 +1,81 @@
+package cn.maiaimei.spring.integration.sftp.checksum;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+/**
+ * The checksum algorithms which can be computed while a file is transferred.
+ */
+public enum ChecksumAlgorithm {
+  CRC32C("crc32c", null) {
+    @Override
+    public StreamingDigest newDigest() {
+      final CRC32C crc = new CRC32C();
+      return new StreamingDigest() {
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+          crc.update(bytes, offset, length);
+        }
+
+        @Override
+        public byte[] digest() {
+          return ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array();
+        }
+      };
+    }
+  },
+  SHA256("sha256", "sha256") {
+    @Override
+    public StreamingDigest newDigest() {
+      final MessageDigest messageDigest;
+      try {
+        messageDigest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+      return new StreamingDigest() {
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+          messageDigest.update(bytes, offset, length);
+        }
+
+        @Override
+        public byte[] digest() {
+          return messageDigest.digest();
+        }
+      };
+    }
+  },
+  XXHASH64("xxh64", null) {
+    @Override
+    public StreamingDigest newDigest() {
+      return new XxHash64();
+    }
+  };
+
+  private final String extension;
+  private final String checkFileAlgorithm;
+
+  ChecksumAlgorithm(String extension, String checkFileAlgorithm) {
+    this.extension = extension;
+    this.checkFileAlgorithm = checkFileAlgorithm;
+  }
+
+  public abstract StreamingDigest newDigest();
+
+  /**
+   * the extension of the sidecar file, e.g. {@code sha256} for {@code X.dat.sha256}
+   */
+  public String getExtension() {
+    return extension;
+  }
+
+  /**
+   * the algorithm name of the SFTP {@code check-file} extension, null if not supported by it
+   */
+  public String getCheckFileAlgorithm() {
+    return checkFileAlgorithm;
+  }
+}
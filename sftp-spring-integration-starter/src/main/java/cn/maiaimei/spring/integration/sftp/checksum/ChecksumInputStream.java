@@ -0,0 +1,51 @@
+package cn.maiaimei.spring.integration.sftp.checksum;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Updates a {@link StreamingDigest} with the bytes read through it.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+
+  private final StreamingDigest digest;
+
+  public ChecksumInputStream(InputStream in, StreamingDigest digest) {
+    super(in);
+    this.digest = digest;
+  }
+
+  public StreamingDigest getDigest() {
+    return digest;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int read = super.read();
+    if (read >= 0) {
+      this.digest.update(new byte[]{(byte) read}, 0, 1);
+    }
+    return read;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    final int read = super.read(bytes, offset, length);
+    if (read > 0) {
+      this.digest.update(bytes, offset, read);
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    throw new IOException("skip is not supported while computing a checksum");
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+}
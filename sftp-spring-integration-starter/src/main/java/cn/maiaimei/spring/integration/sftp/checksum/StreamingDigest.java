@@ -0,0 +1,27 @@
+package cn.maiaimei.spring.integration.sftp.checksum;
+
+import java.util.HexFormat;
+
+/**
+ * A digest which is updated while the bytes of a file pass through.
+ */
+public interface StreamingDigest {
+
+  void update(byte[] bytes, int offset, int length);
+
+  /**
+   * Complete the computation.
+   *
+   * @return the digest in big-endian order
+   */
+  byte[] digest();
+
+  /**
+   * Complete the computation.
+   *
+   * @return the digest as lower case hex
+   */
+  default String hex() {
+    return HexFormat.of().formatHex(digest());
+  }
+}
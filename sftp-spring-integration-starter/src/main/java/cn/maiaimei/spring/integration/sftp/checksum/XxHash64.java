@@ -0,0 +1,123 @@
+package cn.maiaimei.spring.integration.sftp.checksum;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A streaming XXH64 with seed 0.
+ */
+public class XxHash64 implements StreamingDigest {
+
+  private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME64_3 = 0x165667B19E3779F9L;
+  private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+  private static final int STRIPE = 32;
+
+  private final byte[] buffer = new byte[STRIPE];
+  private int buffered;
+  private long length;
+  private long v1 = PRIME64_1 + PRIME64_2;
+  private long v2 = PRIME64_2;
+  private long v3 = 0;
+  private long v4 = -PRIME64_1;
+
+  @Override
+  public void update(byte[] bytes, int offset, int len) {
+    this.length += len;
+    if (this.buffered > 0) {
+      final int fill = Math.min(STRIPE - this.buffered, len);
+      System.arraycopy(bytes, offset, this.buffer, this.buffered, fill);
+      this.buffered += fill;
+      offset += fill;
+      len -= fill;
+      if (this.buffered < STRIPE) {
+        return;
+      }
+      stripe(this.buffer, 0);
+      this.buffered = 0;
+    }
+    final int end = offset + len;
+    while (end - offset >= STRIPE) {
+      stripe(bytes, offset);
+      offset += STRIPE;
+    }
+    if (offset < end) {
+      System.arraycopy(bytes, offset, this.buffer, 0, end - offset);
+      this.buffered = end - offset;
+    }
+  }
+
+  @Override
+  public byte[] digest() {
+    long hash;
+    if (this.length >= STRIPE) {
+      hash = Long.rotateLeft(this.v1, 1) + Long.rotateLeft(this.v2, 7)
+          + Long.rotateLeft(this.v3, 12) + Long.rotateLeft(this.v4, 18);
+      hash = mergeRound(hash, this.v1);
+      hash = mergeRound(hash, this.v2);
+      hash = mergeRound(hash, this.v3);
+      hash = mergeRound(hash, this.v4);
+    } else {
+      hash = PRIME64_5;
+    }
+    hash += this.length;
+    int offset = 0;
+    for (; offset + Long.BYTES <= this.buffered; offset += Long.BYTES) {
+      hash ^= round(0, readLong(this.buffer, offset));
+      hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+    }
+    if (offset + Integer.BYTES <= this.buffered) {
+      hash ^= (readInt(this.buffer, offset) & 0xFFFFFFFFL) * PRIME64_1;
+      hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+      offset += Integer.BYTES;
+    }
+    for (; offset < this.buffered; offset++) {
+      hash ^= (this.buffer[offset] & 0xFFL) * PRIME64_5;
+      hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+    }
+    hash ^= hash >>> 33;
+    hash *= PRIME64_2;
+    hash ^= hash >>> 29;
+    hash *= PRIME64_3;
+    hash ^= hash >>> 32;
+    return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+  }
+
+  private void stripe(byte[] bytes, int offset) {
+    this.v1 = round(this.v1, readLong(bytes, offset));
+    this.v2 = round(this.v2, readLong(bytes, offset + 8));
+    this.v3 = round(this.v3, readLong(bytes, offset + 16));
+    this.v4 = round(this.v4, readLong(bytes, offset + 24));
+  }
+
+  private static long round(long acc, long input) {
+    acc += input * PRIME64_2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * PRIME64_1;
+  }
+
+  private static long mergeRound(long acc, long value) {
+    acc ^= round(0, value);
+    return acc * PRIME64_1 + PRIME64_4;
+  }
+
+  private static long readLong(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFFL)
+        | (bytes[offset + 1] & 0xFFL) << 8
+        | (bytes[offset + 2] & 0xFFL) << 16
+        | (bytes[offset + 3] & 0xFFL) << 24
+        | (bytes[offset + 4] & 0xFFL) << 32
+        | (bytes[offset + 5] & 0xFFL) << 40
+        | (bytes[offset + 6] & 0xFFL) << 48
+        | (bytes[offset + 7] & 0xFFL) << 56;
+  }
+
+  private static int readInt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF)
+        | (bytes[offset + 1] & 0xFF) << 8
+        | (bytes[offset + 2] & 0xFF) << 16
+        | (bytes[offset + 3] & 0xFF) << 24;
+  }
+
+}
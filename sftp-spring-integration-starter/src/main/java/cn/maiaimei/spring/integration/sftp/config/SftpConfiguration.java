@@ -1,18 +1,36 @@
 package cn.maiaimei.spring.integration.sftp.config;
 
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.scheduler.SftpRuleScheduler;
+import cn.maiaimei.spring.integration.sftp.scheduler.SftpTransferExecutors;
+import cn.maiaimei.spring.integration.sftp.session.FailoverSftpSessionFactory;
+import cn.maiaimei.spring.integration.sftp.session.MultiplexedSftpSessionFactory;
+import cn.maiaimei.spring.integration.sftp.session.SftpCryptoProfile;
+import cn.maiaimei.spring.integration.sftp.session.SftpHostSelection;
+import cn.maiaimei.spring.integration.sftp.session.SftpSessionValidator;
+import cn.maiaimei.spring.integration.sftp.session.SftpTransferWindow;
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.throttle.SftpBandwidthLimiters;
+import cn.maiaimei.spring.integration.sftp.throttle.ThrottledSftpSessionFactory;
+import cn.maiaimei.spring.integration.sftp.throttle.TokenBucketBandwidthLimiter;
 import com.google.common.collect.Maps;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import org.apache.sshd.sftp.client.SftpClient;
 import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.integration.file.remote.session.CachingSessionFactory;
+import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.sftp.session.DefaultSftpSessionFactory;
+import org.springframework.integration.support.management.metrics.MetricsCaptor;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -23,6 +41,16 @@ import org.springframework.util.StringUtils;
 @Configuration
 public class SftpConfiguration {
 
+  private static final String SCHEDULER_POOL_SIZE = "sftp.scheduler.poolSize";
+  private static final int DEFAULT_SCHEDULER_POOL_SIZE = 10;
+  private static final String TRANSFER_PLATFORM_POOL_SIZE = "sftp.transfer.platformPoolSize";
+  private static final int DEFAULT_TRANSFER_PLATFORM_POOL_SIZE = 200;
+  private static final long DEFAULT_EJECT_DURATION = 30000;
+  private static final String PREWARM_PARALLELISM = "sftp.prewarm.parallelism";
+  private static final int DEFAULT_PREWARM_PARALLELISM = 8;
+  private static final String PREWARM_TIMEOUT = "sftp.prewarm.timeout";
+  private static final long DEFAULT_PREWARM_TIMEOUT = 30000;
+
   @Bean
   @ConfigurationProperties(prefix = "sftp")
   public SftpConnectionHolder defaultSftpConnectionHolder() {
@@ -63,42 +91,162 @@ public class SftpConfiguration {
     return sftpConnectionHolder;
   }
 
+  @Bean
+  public SftpBandwidthLimiters sftpBandwidthLimiters() {
+    return new SftpBandwidthLimiters();
+  }
+
+  /**
+   * Construct the {@link SftpRuleScheduler} running the polls of all rules.
+   * <p>
+   * The number of workers is configured by {@code sftp.scheduler.poolSize}, the polls of a schema running at once are
+   * capped by the max concurrency of its connection.
+   *
+   * @param sftpConnectionHolder the SFTP connections config holder
+   * @param environment          the environment to read the pool size from
+   * @param metricsCaptor        the metrics captor, may be unavailable
+   * @return a {@link SftpRuleScheduler} instance
+   */
+  @Bean
+  public SftpRuleScheduler sftpRuleScheduler(
+      @Autowired @Qualifier("sftpConnectionHolder") SftpConnectionHolder sftpConnectionHolder,
+      Environment environment, ObjectProvider<MetricsCaptor> metricsCaptor) {
+    final SftpRuleScheduler scheduler = new SftpRuleScheduler(
+        environment.getProperty(SCHEDULER_POOL_SIZE, Integer.class, DEFAULT_SCHEDULER_POOL_SIZE));
+    metricsCaptor.ifAvailable(scheduler::setMetricsCaptor);
+    if (Objects.nonNull(sftpConnectionHolder.getConnections())) {
+      sftpConnectionHolder.getConnections().forEach(
+          (schema, connection) -> scheduler.setMaxConcurrency(schema, connection.getMaxConcurrency()));
+    }
+    return scheduler;
+  }
+
+  /**
+   * Construct the {@link SftpTransferExecutors} of the rules transferring files on virtual threads.
+   * <p>
+   * The number of platform threads used before Java 21 is configured by {@code sftp.transfer.platformPoolSize}, the
+   * transfers of a schema running at once are capped by the max transfers of its connection, or by its pool size if
+   * not set.
+   *
+   * @param sftpConnectionHolder the SFTP connections config holder
+   * @param environment          the environment to read the pool size from
+   * @return a {@link SftpTransferExecutors} instance
+   */
+  @Bean
+  public SftpTransferExecutors sftpTransferExecutors(
+      @Autowired @Qualifier("sftpConnectionHolder") SftpConnectionHolder sftpConnectionHolder,
+      Environment environment) {
+    final SftpTransferExecutors executors = new SftpTransferExecutors(environment.getProperty(
+        TRANSFER_PLATFORM_POOL_SIZE, Integer.class, DEFAULT_TRANSFER_PLATFORM_POOL_SIZE));
+    if (Objects.nonNull(sftpConnectionHolder.getConnections())) {
+      sftpConnectionHolder.getConnections().forEach(
+          (schema, connection) -> executors.setMaxTransfers(schema,
+              connection.getMaxTransfers() > 0 ? connection.getMaxTransfers() : connection.getPoolSize()));
+    }
+    return executors;
+  }
+
+  /**
+   * Construct the {@link SftpSessionValidator} of the session pools.
+   * <p>
+   * The pool of a schema is prewarmed to the min idle sessions of its connection, and its sessions are validated in
+   * the background every validation interval instead of on each checkout. The pools are prewarmed in parallel by
+   * {@code sftp.prewarm.parallelism} workers, the start waits for the prewarm up to {@code sftp.prewarm.timeout}
+   * milliseconds, 30 seconds by default.
+   *
+   * @param sftpConnectionHolder the SFTP connections config holder
+   * @param sessionFactoryMap    the session pools by schema
+   * @param environment          the environment to read the prewarm settings from
+   * @param metricsCaptor        the metrics captor, may be unavailable
+   * @return a {@link SftpSessionValidator} instance
+   */
+  @Bean
+  public SftpSessionValidator sftpSessionValidator(
+      @Autowired @Qualifier("sftpConnectionHolder") SftpConnectionHolder sftpConnectionHolder,
+      @Autowired @Qualifier("sessionFactoryMap") Map<String, CachingSessionFactory<DirEntry>> sessionFactoryMap,
+      Environment environment, ObjectProvider<MetricsCaptor> metricsCaptor) {
+    final SftpSessionValidator validator = new SftpSessionValidator();
+    metricsCaptor.ifAvailable(validator::setMetricsCaptor);
+    validator.setPrewarmParallelism(
+        environment.getProperty(PREWARM_PARALLELISM, Integer.class, DEFAULT_PREWARM_PARALLELISM));
+    validator.setPrewarmTimeout(environment.getProperty(PREWARM_TIMEOUT, Long.class, DEFAULT_PREWARM_TIMEOUT));
+    sessionFactoryMap.forEach((schema, sessionFactory) -> {
+      final SftpConnection connection = sftpConnectionHolder.getConnections().get(schema);
+      final int validateCount = connection.getPoolSize() > 0 ? connection.getPoolSize() : connection.getMinIdle();
+      validator.register(schema, sessionFactory, connection.getPoolSize(), connection.getMinIdle(), validateCount,
+          connection.getValidationInterval());
+    });
+    return validator;
+  }
+
   /**
    * Construct a {@link CachingSessionFactory} map by the given connections.
+   * <p>
+   * The sessions of a schema share the bandwidth limiter of the schema, whose throughput is exposed as the
+   * {@code sftp.throughput} gauge tagged by schema if a {@link MetricsCaptor} is available.
    *
    * @param sftpConnectionHolder the SFTP connections config holder
+   * @param metricsCaptor        the metrics captor, may be unavailable
    * @return a {@link CachingSessionFactory} map
    */
   @Bean
   public Map<String, CachingSessionFactory<DirEntry>> sessionFactoryMap(
-      @Autowired @Qualifier("sftpConnectionHolder") SftpConnectionHolder sftpConnectionHolder) {
+      @Autowired @Qualifier("sftpConnectionHolder") SftpConnectionHolder sftpConnectionHolder,
+      ObjectProvider<MetricsCaptor> metricsCaptor) {
     Assert.notNull(sftpConnectionHolder, "sftpConnectionHolder must not be null");
     Assert.notEmpty(sftpConnectionHolder.getConnections(), "sftp connections must not be null");
+    final SftpBandwidthLimiters sftpBandwidthLimiters = sftpBandwidthLimiters();
     Map<String, CachingSessionFactory<DirEntry>> sessionFactoryMap = new HashMap<>(
         sftpConnectionHolder.getConnections().size());
     sftpConnectionHolder.getConnections().forEach((schema, connection) -> {
       validateSftpConnection(connection);
-      sessionFactoryMap.put(schema, cachingSessionFactory(connection));
+      final TokenBucketBandwidthLimiter limiter =
+          sftpBandwidthLimiters.register(schema, connection.getMaxBytesPerSecond());
+      metricsCaptor.ifAvailable(captor -> captor
+          .gaugeBuilder(SftpConstants.THROUGHPUT_GAUGE, limiter, l -> ((TokenBucketBandwidthLimiter) l).getThroughput())
+          .tag("schema", schema)
+          .description("the bytes per second transferred by the schema")
+          .build());
+      sessionFactoryMap.put(schema, cachingSessionFactory(connection, limiter));
     });
     return sessionFactoryMap;
   }
 
   /**
    * Construct a {@link CachingSessionFactory} instance by the given connection.
+   * <p>
+   * If the connection has a host list, the sessions are spread over the hosts by a {@link FailoverSftpSessionFactory}.
    *
-   * @param conn the connection to use
+   * @param conn    the connection to use
+   * @param limiter the bandwidth limiter of the connection
    * @return a {@link CachingSessionFactory} instance
    */
-  private CachingSessionFactory<SftpClient.DirEntry> cachingSessionFactory(SftpConnection conn) {
-    CachingSessionFactory<SftpClient.DirEntry> cachingSessionFactory =
-        new CachingSessionFactory<>(defaultSftpSessionFactory(conn));
+  private CachingSessionFactory<SftpClient.DirEntry> cachingSessionFactory(SftpConnection conn,
+      BandwidthLimiter limiter) {
+    final SessionFactory<DirEntry> sessionFactory;
+    if (CollectionUtils.isEmpty(conn.getHosts())) {
+      sessionFactory = defaultSftpSessionFactory(conn, conn.getHost(), conn.getPort(), limiter);
+    } else {
+      final Map<String, SessionFactory<DirEntry>> sessionFactories = new LinkedHashMap<>();
+      for (String hostPort : conn.getHosts()) {
+        final int index = hostPort.lastIndexOf(':');
+        final String host = index > 0 ? hostPort.substring(0, index) : hostPort;
+        final int port = index > 0 ? Integer.parseInt(hostPort.substring(index + 1)) : conn.getPort();
+        sessionFactories.put(host + ":" + port, defaultSftpSessionFactory(conn, host, port, limiter));
+      }
+      sessionFactory = new FailoverSftpSessionFactory(sessionFactories,
+          Objects.nonNull(conn.getHostSelection()) ? conn.getHostSelection() : SftpHostSelection.ROUND_ROBIN,
+          conn.getEjectDuration() > 0 ? conn.getEjectDuration() : DEFAULT_EJECT_DURATION);
+    }
+    CachingSessionFactory<SftpClient.DirEntry> cachingSessionFactory = new CachingSessionFactory<>(sessionFactory);
     if (conn.getPoolSize() > 0) {
       cachingSessionFactory.setPoolSize(conn.getPoolSize());
     }
     if (conn.getWaitTimeout() > 0) {
       cachingSessionFactory.setSessionWaitTimeout(conn.getWaitTimeout());
     }
-    if (conn.isTestSession()) {
+    // the background validation replaces the test on each checkout
+    if (conn.isTestSession() && conn.getValidationInterval() <= 0) {
       cachingSessionFactory.setTestSession(Boolean.TRUE);
     }
     return cachingSessionFactory;
@@ -106,14 +254,24 @@ public class SftpConfiguration {
 
   /**
    * Construct a {@link DefaultSftpSessionFactory} instance by the given connection.
+   * <p>
+   * If the connection has channels per connection, the sessions are channels multiplexed over shared SSH connections.
+   * The crypto profile, the compression and the transfer window of the connection are applied to the underlying SSH
+   * client.
    *
-   * @param conn the connection to use
+   * @param conn    the connection to use
+   * @param host    the host to connect to
+   * @param port    the port to connect to
+   * @param limiter the bandwidth limiter of the connection
    * @return a {@link DefaultSftpSessionFactory} instance
    */
-  private DefaultSftpSessionFactory defaultSftpSessionFactory(SftpConnection conn) {
-    DefaultSftpSessionFactory sessionFactory = new DefaultSftpSessionFactory();
-    sessionFactory.setHost(conn.getHost());
-    sessionFactory.setPort(conn.getPort());
+  private DefaultSftpSessionFactory defaultSftpSessionFactory(SftpConnection conn, String host, int port,
+      BandwidthLimiter limiter) {
+    ThrottledSftpSessionFactory sessionFactory = conn.getChannelsPerConnection() > 1
+        ? new MultiplexedSftpSessionFactory(limiter, conn.getChannelsPerConnection())
+        : new ThrottledSftpSessionFactory(limiter);
+    sessionFactory.setHost(host);
+    sessionFactory.setPort(port);
     sessionFactory.setUser(conn.getUser());
     if (Objects.nonNull(conn.getPrivateKey())) {
       sessionFactory.setPrivateKey(conn.getPrivateKey());
@@ -124,13 +282,27 @@ public class SftpConfiguration {
       sessionFactory.setPassword(conn.getPassword());
     }
     sessionFactory.setAllowUnknownKeys(Boolean.TRUE);
+    final SftpCryptoProfile cryptoProfile = Objects.nonNull(conn.getCryptoProfile())
+        ? conn.getCryptoProfile() : SftpCryptoProfile.DEFAULT;
+    final SftpTransferWindow transferWindow = new SftpTransferWindow(conn.getBufferSize(),
+        conn.getOutstandingRequests(), conn.getWindowSize());
+    sessionFactory.setBufferSize(transferWindow.getBufferSize());
+    sessionFactory.setSshClientConfigurer(sshClient -> {
+      cryptoProfile.apply(sshClient, conn.isCompression());
+      transferWindow.apply(sshClient);
+    });
     return sessionFactory;
   }
 
   private void validateSftpConnection(SftpConnection conn) {
-    Assert.hasText(conn.getHost(), "host must be configured");
-    Assert.isTrue(conn.getPort() > 0 && conn.getPort() < 65535,
-        "port must be assigned a unique number ranging from 0 to 65535");
+    if (CollectionUtils.isEmpty(conn.getHosts())) {
+      Assert.hasText(conn.getHost(), "host must be configured");
+      Assert.isTrue(conn.getPort() > 0 && conn.getPort() < 65535,
+          "port must be assigned a unique number ranging from 0 to 65535");
+    } else {
+      conn.getHosts().forEach(hostPort -> Assert.isTrue(StringUtils.hasText(hostPort)
+          && (hostPort.lastIndexOf(':') > 0 || conn.getPort() > 0), "hosts must be configured as host or host:port"));
+    }
     Assert.hasText(conn.getUser(), "user must be configured");
     Assert.isTrue(
         (Objects.nonNull(conn.getPrivateKey()) || StringUtils.hasText(conn.getPassword())),
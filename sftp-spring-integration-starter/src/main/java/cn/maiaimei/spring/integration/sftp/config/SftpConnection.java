@@ -1,5 +1,8 @@
 package cn.maiaimei.spring.integration.sftp.config;
 
+import cn.maiaimei.spring.integration.sftp.session.SftpCryptoProfile;
+import cn.maiaimei.spring.integration.sftp.session.SftpHostSelection;
+import java.util.List;
 import lombok.Data;
 import org.springframework.core.io.Resource;
 
@@ -8,6 +11,9 @@ public class SftpConnection {
 
   private String host;
   private int port;
+  private List<String> hosts;
+  private SftpHostSelection hostSelection = SftpHostSelection.ROUND_ROBIN;
+  private long ejectDuration;
   private String user;
   private String password;
   private Resource privateKey;
@@ -17,4 +23,15 @@ public class SftpConnection {
   private int poolSize;
   private long waitTimeout;
   private boolean testSession;
+  private int minIdle;
+  private long validationInterval;
+  private long maxBytesPerSecond;
+  private int maxConcurrency;
+  private int maxTransfers;
+  private int channelsPerConnection;
+  private SftpCryptoProfile cryptoProfile = SftpCryptoProfile.DEFAULT;
+  private boolean compression;
+  private int bufferSize;
+  private int outstandingRequests;
+  private long windowSize;
 }
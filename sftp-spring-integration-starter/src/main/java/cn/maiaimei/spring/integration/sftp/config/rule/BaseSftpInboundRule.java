@@ -1,5 +1,10 @@
 package cn.maiaimei.spring.integration.sftp.config.rule;
 
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.constants.ChecksumVerification;
+import cn.maiaimei.spring.integration.sftp.constants.ReadyFileAction;
+import cn.maiaimei.spring.integration.sftp.constants.RecordFormat;
+import java.util.Map;
 import lombok.Data;
 
 /**
@@ -28,6 +33,27 @@ public class BaseSftpInboundRule {
    * max messages per poll
    */
   private long maxMessagesPerPoll;
+  /**
+   * whether the poll interval adapts to the polls, bounded by the cron
+   */
+  private boolean adaptivePolling;
+  /**
+   * the min poll interval in milliseconds, reached while the polls receive files, only used when adaptive polling
+   */
+  private long pollingMinInterval = 1000;
+  /**
+   * the max poll interval in milliseconds, reached while the polls come back empty, zero or less to be bounded by the
+   * cron only, only used when adaptive polling
+   */
+  private long pollingMaxInterval;
+  /**
+   * the factor the poll interval is divided or multiplied by after each poll, only used when adaptive polling
+   */
+  private double pollingMultiplier = 2;
+  /**
+   * the share of the scheduler workers of the rule relative to the other rules, when polls of several rules wait
+   */
+  private int weight = 1;
   /**
    * the source path to download files on remote host
    */
@@ -57,9 +83,86 @@ public class BaseSftpInboundRule {
    */
   private String renameExpression;
   /**
-   * ready file suffix
+   * ready file suffix, a file is downloaded only when its ready file exists, e.g. X.dat.ok for X.dat
    */
   private String readyFileSuffix;
+  /**
+   * what to do with the ready file after the file has been archived, default is NONE
+   */
+  private ReadyFileAction readyFileAction = ReadyFileAction.NONE;
+  /**
+   * the local folder of the metadata store, if configured, files are accepted only once even after a restart
+   */
+  private String metadataStore;
+  /**
+   * the maximum number of files remembered by the metadata store, the oldest ones are evicted beyond it
+   */
+  private int metadataStoreMaxEntries = 1_000_000;
+  /**
+   * whether the subdirectories of the remote source are walked too, the relative path of a file is kept in the remote
+   * temp, the remote archive and the local folders
+   */
+  private boolean recursive;
+  /**
+   * the max depth of the subdirectories to walk, only used when recursive
+   */
+  private int maxDepth = 5;
+  /**
+   * the patterns of the file names by the Ant style pattern of their relative directory, e.g. {@code 2024/**} to
+   * {@code *.json}, the directories without a match use the pattern, only used when recursive
+   */
+  private Map<String, String> directoryPatterns;
+  /**
+   * the max number of directories listed concurrently by a recursive walk
+   */
+  private int walkConcurrency = 4;
+  /**
+   * the format of the records to split the remote files into, the files are then streamed to the record channel
+   * instead of the local folder
+   */
+  private RecordFormat recordFormat;
+  /**
+   * the name of the channel to send the records to, a bounded channel slows down the read of the remote files
+   */
+  private String recordChannel;
+  /**
+   * the max bytes per second transferred by the rule, on top of the limit of its schema, zero or less if unlimited
+   */
+  private long maxBytesPerSecond;
+  /**
+   * whether the listing skips the remote files at or below a watermark of modified time and file name
+   * <p>
+   * the watermark only passes files which will never be accepted, e.g. not matching the pattern or already accepted.
+   * a new remote file must not be older than the files already listed.
+   */
+  private boolean incrementalListing;
+  /**
+   * whether a retry continues from the bytes already downloaded instead of from byte zero
+   */
+  private boolean resumableDownload;
+  /**
+   * whether the remote operations of a file run on one session, which is checked out once per file, including the
+   * streaming GET or the resumable download of the file
+   */
+  private boolean sessionAffinity;
+  /**
+   * the minimum size in bytes of a file to download in segments over several sessions, {@code <= 0} disables it.
+   * <p>
+   * takes precedence over resumableDownload.
+   */
+  private long segmentThreshold;
+  /**
+   * the number of segments of a file not smaller than segmentThreshold, default is 4
+   */
+  private int segmentCount = 4;
+  /**
+   * the algorithm of the checksum computed during the transfer, the checksum is put in the "checksum" header
+   */
+  private ChecksumAlgorithm checksumAlgorithm;
+  /**
+   * where to get the expected checksum, default is NONE, CHECK_FILE supports SHA256 only
+   */
+  private ChecksumVerification checksumVerification = ChecksumVerification.NONE;
   /**
    * the maximum number of retry attempts including the initial attempt
    * <p>
@@ -72,4 +175,17 @@ public class BaseSftpInboundRule {
    * maximum retry wait time in milliseconds. Cannot be &lt; 1. Default value is 1000ms.
    */
   private long retryMaxWaitTime;
+  /**
+   * the number of files to download in parallel, {@code <= 1} downloads files on the poller thread.
+   * <p>
+   * each worker holds a session, so the pool size of the schema should be at least the concurrency.
+   */
+  private int concurrency;
+  /**
+   * whether each file is downloaded on its own virtual thread, or on a bounded pool of platform threads before Java 21.
+   * <p>
+   * the downloads are capped by the concurrency of the rule if positive and by the max transfers of the schema, not by
+   * a thread count.
+   */
+  private boolean virtualThreads;
 }
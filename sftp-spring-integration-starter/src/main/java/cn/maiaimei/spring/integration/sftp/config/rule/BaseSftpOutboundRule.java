@@ -1,5 +1,7 @@
 package cn.maiaimei.spring.integration.sftp.config.rule;
 
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.constants.ChecksumVerification;
 import lombok.Data;
 
 /**
@@ -28,6 +30,27 @@ public class BaseSftpOutboundRule {
    * max messages per poll
    */
   private long maxMessagesPerPoll;
+  /**
+   * whether the poll interval adapts to the polls, bounded by the cron
+   */
+  private boolean adaptivePolling;
+  /**
+   * the min poll interval in milliseconds, reached while the polls receive files, only used when adaptive polling
+   */
+  private long pollingMinInterval = 1000;
+  /**
+   * the max poll interval in milliseconds, reached while the polls come back empty, zero or less to be bounded by the
+   * cron only, only used when adaptive polling
+   */
+  private long pollingMaxInterval;
+  /**
+   * the factor the poll interval is divided or multiplied by after each poll, only used when adaptive polling
+   */
+  private double pollingMultiplier = 2;
+  /**
+   * the share of the scheduler workers of the rule relative to the other rules, when polls of several rules wait
+   */
+  private int weight = 1;
   /**
    * the files match this pattern will send to remote host
    */
@@ -48,6 +71,18 @@ public class BaseSftpOutboundRule {
    * whether passes files only one time
    */
   private boolean acceptOnce;
+  /**
+   * the algorithm of the checksum computed during the transfer, the checksum is put in the "checksum" header
+   */
+  private ChecksumAlgorithm checksumAlgorithm;
+  /**
+   * where to get the expected checksum, default is NONE, CHECK_FILE supports SHA256 only
+   */
+  private ChecksumVerification checksumVerification = ChecksumVerification.NONE;
+  /**
+   * the max bytes per second transferred by the rule, on top of the limit of its schema, zero or less if unlimited
+   */
+  private long maxBytesPerSecond;
   /**
    * the maximum number of retry attempts including the initial attempt
    * <p>
@@ -60,4 +95,33 @@ public class BaseSftpOutboundRule {
    * maximum retry wait time in milliseconds. Cannot be &lt; 1. Default value is 1000ms.
    */
   private long retryMaxWaitTime;
+  /**
+   * the number of files to upload in parallel, {@code <= 1} uploads files on the poller thread.
+   * <p>
+   * each worker holds a session, so the pool size of the schema should be at least the concurrency.
+   */
+  private int concurrency;
+  /**
+   * whether the files are detected by the events of the local folder, the cron only sweeps the folder then, as a
+   * safety net for missed events
+   */
+  private boolean watch;
+  /**
+   * the milliseconds the size of a file must be stable for before it is uploaded, only used when watching
+   */
+  private long watchDebounce = 500;
+  /**
+   * the milliseconds between two polls of the watched files, only used when watching
+   */
+  private long watchPollInterval = 250;
+  /**
+   * whether a failed upload is resumed by the next attempt from the size of its remote temporary file, instead of
+   * uploading the whole file again
+   */
+  private boolean resumableUpload;
+  /**
+   * whether a resumed upload reads back the part uploaded by the failed attempt to confirm it against the checksum
+   * algorithm, if the server does not compute it by check-file. By default the size of the temporary file is trusted.
+   */
+  private boolean verifyResumedUpload;
 }
@@ -0,0 +1,19 @@
+package cn.maiaimei.spring.integration.sftp.constants;
+
+/**
+ * Where to get the expected checksum of a transferred file.
+ */
+public enum ChecksumVerification {
+  /**
+   * compute the checksum only
+   */
+  NONE,
+  /**
+   * compare with the sidecar file next to the source file, e.g. X.dat.sha256
+   */
+  SIDECAR,
+  /**
+   * compare with the checksum computed by the server through the SFTP check-file extension
+   */
+  CHECK_FILE
+}
@@ -0,0 +1,19 @@
+package cn.maiaimei.spring.integration.sftp.constants;
+
+/**
+ * What to do with the ready file once its data file has been moved to the archive folder.
+ */
+public enum ReadyFileAction {
+  /**
+   * keep the ready file in the source folder
+   */
+  NONE,
+  /**
+   * delete the ready file from the source folder
+   */
+  DELETE,
+  /**
+   * move the ready file to the archive folder together with the data file
+   */
+  ARCHIVE
+}
@@ -0,0 +1,19 @@
+package cn.maiaimei.spring.integration.sftp.constants;
+
+/**
+ * The format of the records in a remote file which is split into per record messages.
+ */
+public enum RecordFormat {
+  /**
+   * a JSON array, each element is a record, e.g. [{"id":1},{"id":2}]
+   */
+  JSON_ARRAY,
+  /**
+   * newline delimited JSON, each non blank line is a record
+   */
+  NDJSON,
+  /**
+   * comma separated values with a header line, each line is a record keyed by the header
+   */
+  CSV
+}
@@ -11,4 +11,10 @@ public class SftpConstants {
   public static final String MESSAGE = "message";
   public static final String PAYLOAD = "payload";
   public static final String PROCESS_STATUS = "processStatus";
+  public static final String CHECKSUM = "checksum";
+  public static final String CHECKSUM_DIGEST = "checksumDigest";
+  public static final String RECORD_COUNT = "recordCount";
+  public static final String THROUGHPUT_GAUGE = "sftp.throughput";
+  public static final String QUEUE_DELAY_TIMER = "sftp.rule.queue.delay";
+  public static final String CONNECT_TIMER = "sftp.session.connect";
 }
@@ -0,0 +1,110 @@
+package cn.maiaimei.spring.integration.sftp.expression;
+
+import cn.maiaimei.commons.lang.utils.StringUtils;
+import cn.maiaimei.commons.lang.utils.ValueExpressionUtils;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.file.FileNameGenerator;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+
+/**
+ * Generate the local file name of a downloaded file by the rename expression of a rule, built once per rule.
+ * <p>
+ * The rename expression reads the message headers through a read-only view converting the values on access, instead
+ * of copying every header into a new map for each file. Without a rename expression the remote file name is kept.
+ */
+public class DownloadFileNameGenerator implements FileNameGenerator {
+
+  private final String renameExpression;
+
+  private final AtomicInteger counter;
+
+  private final boolean baseName;
+
+  /**
+   * Construct a generator by the given rename expression.
+   *
+   * @param renameExpression the rename expression of the rule, may be null
+   * @param counter          the counter of the rule
+   * @param baseName         whether to strip the directories of the generated name
+   */
+  public DownloadFileNameGenerator(String renameExpression, AtomicInteger counter, boolean baseName) {
+    this.renameExpression = StringUtils.hasText(renameExpression) ? renameExpression : null;
+    this.counter = counter;
+    this.baseName = baseName;
+  }
+
+  @Override
+  public String generateFileName(Message<?> message) {
+    final String fileName;
+    if (this.renameExpression == null) {
+      fileName = (String) message.getHeaders().get(FileHeaders.REMOTE_FILE);
+    } else {
+      fileName = ValueExpressionUtils.parse(this.renameExpression, new HeaderValueMap(message.getHeaders()),
+          this.counter);
+    }
+    return this.baseName ? fileName.substring(fileName.lastIndexOf('/') + 1) : fileName;
+  }
+
+  /**
+   * A read-only view of the message headers, the values are converted to strings on access.
+   */
+  private static final class HeaderValueMap extends AbstractMap<String, String> {
+
+    private final MessageHeaders headers;
+
+    private HeaderValueMap(MessageHeaders headers) {
+      this.headers = headers;
+    }
+
+    @Override
+    public String get(Object key) {
+      final Object value = this.headers.get(key);
+      return value == null ? null : String.valueOf(value);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return this.headers.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+      return this.headers.size();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+      return new AbstractSet<>() {
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+          final Iterator<Entry<String, Object>> iterator = headers.entrySet().iterator();
+          return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+              return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<String, String> next() {
+              final Entry<String, Object> entry = iterator.next();
+              return new SimpleImmutableEntry<>(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return headers.size();
+        }
+      };
+    }
+
+  }
+
+}
@@ -0,0 +1,62 @@
+package cn.maiaimei.spring.integration.sftp.expression;
+
+import java.util.function.Function;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.Assert;
+
+/**
+ * A remote path compiled once per rule, e.g. the temp path {@code <remoteTemp>/<file_remoteFile>}.
+ * <p>
+ * The folder and the header names are resolved when the flow is built, a message only costs the header lookups and
+ * the concatenation of the path, instead of interpreting a SpEL expression like
+ * {@code '<remoteTemp>/' + headers['file_remoteFile']}.
+ */
+public final class RemotePathExpression implements Function<Message<?>, String> {
+
+  private static final String SEPARATOR = "/";
+
+  private final String folder;
+
+  private final String[] headerNames;
+
+  private RemotePathExpression(String folder, String[] headerNames) {
+    this.folder = folder.endsWith(SEPARATOR) ? folder : folder + SEPARATOR;
+    this.headerNames = headerNames;
+  }
+
+  /**
+   * Compile the path of the given folder, followed by the values of the given headers separated by "/".
+   *
+   * @param folder      the remote folder
+   * @param headerNames the names of the headers to append
+   * @return a {@link RemotePathExpression} instance
+   */
+  public static RemotePathExpression of(String folder, String... headerNames) {
+    Assert.hasText(folder, "folder must not be empty");
+    Assert.notEmpty(headerNames, "headerNames must not be empty");
+    return new RemotePathExpression(folder, headerNames.clone());
+  }
+
+  @Override
+  public String apply(Message<?> message) {
+    final MessageHeaders headers = message.getHeaders();
+    if (this.headerNames.length == 1) {
+      return this.folder.concat(String.valueOf(headers.get(this.headerNames[0])));
+    }
+    final StringBuilder path = new StringBuilder(this.folder.length() + 64).append(this.folder);
+    for (int i = 0; i < this.headerNames.length; i++) {
+      if (i > 0) {
+        path.append(SEPARATOR);
+      }
+      path.append(headers.get(this.headerNames[i]));
+    }
+    return path.toString();
+  }
+
+  @Override
+  public String toString() {
+    return this.folder + "{" + String.join(SEPARATOR, this.headerNames) + "}";
+  }
+
+}
@@ -1,15 +1,40 @@
 package cn.maiaimei.spring.integration.sftp.factory;
 
 import cn.maiaimei.commons.lang.utils.StringUtils;
+import cn.maiaimei.spring.integration.sftp.config.SftpConnection;
+import cn.maiaimei.spring.integration.sftp.config.SftpConnectionHolder;
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.scheduler.PermitExecutor;
+import cn.maiaimei.spring.integration.sftp.scheduler.SftpRuleScheduler;
+import cn.maiaimei.spring.integration.sftp.scheduler.SftpTransferExecutors;
+import cn.maiaimei.spring.integration.sftp.session.SftpTransferWindow;
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.throttle.SftpBandwidthLimiters;
+import cn.maiaimei.spring.integration.sftp.throttle.TokenBucketBandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.trigger.AdaptivePollingTrigger;
 import cn.maiaimei.spring.integration.sftp.utils.PropertiesUtils;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 import org.apache.sshd.sftp.client.SftpClient.DirEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
+import org.springframework.integration.dsl.PollerFactory;
+import org.springframework.integration.dsl.PollerSpec;
 import org.springframework.integration.file.remote.session.CachingSessionFactory;
+import org.springframework.integration.support.management.metrics.MetricsCaptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-public class BaseSftpFactory {
+public class BaseSftpFactory implements DisposableBean {
+
+  private static final String SFTP_CONNECTION_HOLDER = "sftpConnectionHolder";
 
   protected Logger log;
 
@@ -17,6 +42,10 @@ public class BaseSftpFactory {
 
   protected Map<String, CachingSessionFactory<DirEntry>> sessionFactoryMap;
 
+  private final List<ThreadPoolTaskExecutor> taskExecutors = new CopyOnWriteArrayList<>();
+
+  private final List<Closeable> closeables = new CopyOnWriteArrayList<>();
+
   public BaseSftpFactory() {
     this.log = LoggerFactory.getLogger(getClass());
   }
@@ -44,4 +73,174 @@ public class BaseSftpFactory {
     return PropertiesUtils.getProperty(applicationContext, configName, Long.class);
   }
 
+  /**
+   * Apply the given cron, or the given adaptive trigger bounded by the cron, to a poller.
+   *
+   * @param pollerFactory   the poller factory
+   * @param cron            the cron expression
+   * @param adaptiveTrigger the adaptive trigger, null to poll by the cron only
+   * @param executor        the executor running the polls, null to poll on the task scheduler thread
+   * @return a {@link PollerSpec} instance
+   */
+  protected PollerSpec poller(PollerFactory pollerFactory, String cron, AdaptivePollingTrigger adaptiveTrigger,
+      Executor executor) {
+    final PollerSpec pollerSpec;
+    if (Objects.isNull(adaptiveTrigger)) {
+      pollerSpec = pollerFactory.cron(cron);
+    } else {
+      // the trigger advises the receive calls to learn whether a poll returned messages
+      pollerSpec = pollerFactory.trigger(adaptiveTrigger).advice(adaptiveTrigger);
+    }
+    return Objects.isNull(executor) ? pollerSpec : pollerSpec.taskExecutor(executor);
+  }
+
+  /**
+   * Apply the given fixed delay to a poller.
+   *
+   * @param pollerFactory the poller factory
+   * @param fixedDelay    the milliseconds between the end of a poll and the next one
+   * @param executor      the executor running the polls, null to poll on the task scheduler thread
+   * @return a {@link PollerSpec} instance
+   */
+  protected PollerSpec poller(PollerFactory pollerFactory, long fixedDelay, Executor executor) {
+    final PollerSpec pollerSpec = pollerFactory.fixedDelay(fixedDelay);
+    return Objects.isNull(executor) ? pollerSpec : pollerSpec.taskExecutor(executor);
+  }
+
+  /**
+   * Get the executor of a rule from the {@link SftpRuleScheduler}, the task scheduler thread only hands the polls of
+   * the rule over to the scheduler's workers.
+   *
+   * @param ruleName the rule name
+   * @param schema   the schema of the rule
+   * @param weight   the weight of the rule
+   * @return an {@link Executor} instance, or null if there is no scheduler
+   */
+  protected Executor ruleExecutor(String ruleName, String schema, int weight) {
+    final SftpRuleScheduler scheduler = applicationContext.getBeanProvider(SftpRuleScheduler.class).getIfAvailable();
+    return Objects.nonNull(scheduler) ? scheduler.executor(ruleName, schema, weight) : null;
+  }
+
+  /**
+   * Construct a bounded {@link ThreadPoolTaskExecutor} for transferring files of a rule.
+   * <p>
+   * The queue holds at most {@code concurrency} files, when it is full the poller thread transfers the file itself, so
+   * that the poller never fetches more files than the workers can handle.
+   *
+   * @param threadNamePrefix the thread name prefix to use
+   * @param concurrency      the number of worker threads
+   * @return a {@link ThreadPoolTaskExecutor} instance
+   */
+  protected ThreadPoolTaskExecutor taskExecutor(String threadNamePrefix, int concurrency) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(concurrency);
+    executor.setMaxPoolSize(concurrency);
+    executor.setQueueCapacity(concurrency);
+    executor.setThreadNamePrefix(threadNamePrefix);
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setWaitForTasksToCompleteOnShutdown(Boolean.TRUE);
+    executor.initialize();
+    taskExecutors.add(executor);
+    return executor;
+  }
+
+  /**
+   * Construct the executor of the transfers of a rule on virtual threads, see {@link SftpTransferExecutors}.
+   * <p>
+   * The transfers are capped by the given concurrency and by the max transfers of the schema, a transfer waiting for a
+   * permit holds no thread. The transfers of a rule waiting for a permit are bounded like the queue of
+   * {@link #taskExecutor(String, int)}: when it is full the poller thread transfers the file itself.
+   *
+   * @param schema      the schema of the rule, null not to apply the cap of the schema
+   * @param concurrency the number of transfers of the rule running at once, zero or less for the max transfers of the
+   *                    schema, or unlimited without a schema
+   * @return an {@link Executor} instance, or null if there are no transfer executors
+   */
+  protected Executor transferExecutor(String schema, int concurrency) {
+    final SftpTransferExecutors executors = applicationContext.getBeanProvider(SftpTransferExecutors.class)
+        .getIfAvailable();
+    if (Objects.isNull(executors)) {
+      return null;
+    }
+    if (Objects.isNull(schema)) {
+      return concurrency > 0 ? new PermitExecutor(executors.getExecutor(), concurrency) : executors.getExecutor();
+    }
+    final int permits = concurrency > 0 ? concurrency : executors.getMaxTransfers(schema);
+    return new PermitExecutor(executors.getExecutor(schema), permits, permits);
+  }
+
+  /**
+   * Get the bandwidth limiter shared by the sessions of the given schema.
+   *
+   * @param schema the schema
+   * @return the limiter of the schema, or {@link BandwidthLimiter#NONE} if there is none
+   */
+  protected BandwidthLimiter schemaBandwidthLimiter(String schema) {
+    final SftpBandwidthLimiters limiters = applicationContext.getBeanProvider(SftpBandwidthLimiters.class)
+        .getIfAvailable();
+    return Objects.nonNull(limiters) ? limiters.get(schema) : BandwidthLimiter.NONE;
+  }
+
+  /**
+   * Get the transfer window of the connection of the given schema, for the handlers reading or writing through the
+   * SFTP client instead of the streams of the schema's sessions.
+   *
+   * @param schema the schema
+   * @return the window of the schema, or {@link SftpTransferWindow#DEFAULT} if there is none
+   */
+  protected SftpTransferWindow schemaTransferWindow(String schema) {
+    if (!applicationContext.containsBean(SFTP_CONNECTION_HOLDER)) {
+      return SftpTransferWindow.DEFAULT;
+    }
+    final Map<String, SftpConnection> connections = applicationContext
+        .getBean(SFTP_CONNECTION_HOLDER, SftpConnectionHolder.class).getConnections();
+    final SftpConnection connection = Objects.nonNull(connections) ? connections.get(schema) : null;
+    return Objects.isNull(connection) ? SftpTransferWindow.DEFAULT : new SftpTransferWindow(
+        connection.getBufferSize(), connection.getOutstandingRequests(), connection.getWindowSize());
+  }
+
+  /**
+   * Construct the bandwidth limiter of a rule, whose throughput is exposed as the {@code sftp.throughput} gauge tagged
+   * by rule if a {@link MetricsCaptor} is available.
+   *
+   * @param ruleName          the rule name
+   * @param maxBytesPerSecond the limit in bytes per second, zero or less if unlimited
+   * @return a {@link TokenBucketBandwidthLimiter} instance
+   */
+  protected TokenBucketBandwidthLimiter ruleBandwidthLimiter(String ruleName, long maxBytesPerSecond) {
+    final TokenBucketBandwidthLimiter limiter = new TokenBucketBandwidthLimiter(maxBytesPerSecond);
+    applicationContext.getBeanProvider(MetricsCaptor.class).ifAvailable(captor -> captor
+        .gaugeBuilder(SftpConstants.THROUGHPUT_GAUGE, limiter, l -> ((TokenBucketBandwidthLimiter) l).getThroughput())
+        .tag("rule", ruleName)
+        .description("the bytes per second transferred by the rule")
+        .build());
+    return limiter;
+  }
+
+  /**
+   * Register a resource to close when this factory is destroyed.
+   *
+   * @param closeable the resource to close
+   */
+  protected void registerCloseable(Closeable closeable) {
+    closeables.add(closeable);
+  }
+
+  /**
+   * Shut down the executors and close the resources created by this factory.
+   */
+  @Override
+  public void destroy() {
+    taskExecutors.forEach(ThreadPoolTaskExecutor::shutdown);
+    taskExecutors.clear();
+    closeables.forEach(closeable -> {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        log.error(String.format("Error occurs in closing resource, message: %s", e.getMessage()), e);
+      }
+    });
+    closeables.clear();
+  }
+
 }
@@ -4,39 +4,77 @@ import cn.maiaimei.commons.lang.constants.DateTimeConstants;
 import cn.maiaimei.commons.lang.utils.DateTimeUtils;
 import cn.maiaimei.commons.lang.utils.FileUtils;
 import cn.maiaimei.commons.lang.utils.StringUtils;
-import cn.maiaimei.commons.lang.utils.ValueExpressionUtils;
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumInputStream;
+import cn.maiaimei.spring.integration.sftp.checksum.StreamingDigest;
 import cn.maiaimei.spring.integration.sftp.config.rule.BaseSftpInboundRule;
+import cn.maiaimei.spring.integration.sftp.constants.ChecksumVerification;
+import cn.maiaimei.spring.integration.sftp.constants.ReadyFileAction;
 import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.expression.DownloadFileNameGenerator;
+import cn.maiaimei.spring.integration.sftp.expression.RemotePathExpression;
+import cn.maiaimei.spring.integration.sftp.filters.SftpInFlightFileListFilter;
+import cn.maiaimei.spring.integration.sftp.filters.SftpPersistentAcceptOnceFileListFilter;
+import cn.maiaimei.spring.integration.sftp.filters.SftpReadyFileListFilter;
+import cn.maiaimei.spring.integration.sftp.filters.SftpRecursivePatternFileListFilter;
+import cn.maiaimei.spring.integration.sftp.filters.SftpSidecarFileListFilter;
+import cn.maiaimei.spring.integration.sftp.filters.SftpWatermarkFileListFilter;
+import cn.maiaimei.spring.integration.sftp.handler.RecordSplittingMessageHandler;
+import cn.maiaimei.spring.integration.sftp.handler.ResumableDownloadMessageHandler;
+import cn.maiaimei.spring.integration.sftp.handler.SegmentedDownloadMessageHandler;
+import cn.maiaimei.spring.integration.sftp.handler.SessionAffinityMessageHandler;
 import cn.maiaimei.spring.integration.sftp.handler.advice.CustomRequestHandlerRetryAdvice;
+import cn.maiaimei.spring.integration.sftp.metadata.MappedLogMetadataStore;
+import cn.maiaimei.spring.integration.sftp.remote.SftpListingRemoteFileTemplate;
+import cn.maiaimei.spring.integration.sftp.session.SftpTransferWindow;
+import cn.maiaimei.spring.integration.sftp.session.ThreadBoundSessionFactory;
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.throttle.ThrottledInputStream;
+import cn.maiaimei.spring.integration.sftp.throttle.TokenBucketBandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.trigger.AdaptivePollingTrigger;
+import cn.maiaimei.spring.integration.sftp.utils.ChecksumUtils;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 import org.aopalliance.aop.Advice;
 import org.apache.sshd.sftp.client.SftpClient;
 import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
 import org.springframework.integration.StaticMessageHeaderAccessor;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.core.MessageSource;
 import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlowBuilder;
+import org.springframework.integration.expression.FunctionExpression;
 import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.FileWritingMessageHandler;
-import org.springframework.integration.file.filters.CompositeFileListFilter;
+import org.springframework.integration.file.filters.ChainFileListFilter;
+import org.springframework.integration.file.filters.FileListFilter;
+import org.springframework.integration.file.remote.FileInfo;
 import org.springframework.integration.file.remote.RemoteFileTemplate;
-import org.springframework.integration.file.remote.gateway.AbstractRemoteFileOutboundGateway.Command;
-import org.springframework.integration.file.remote.gateway.AbstractRemoteFileOutboundGateway.Option;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.file.support.FileExistsMode;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
-import org.springframework.integration.sftp.dsl.Sftp;
 import org.springframework.integration.sftp.filters.SftpSimplePatternFileListFilter;
-import org.springframework.integration.sftp.gateway.SftpOutboundGateway;
 import org.springframework.integration.sftp.inbound.SftpStreamingMessageSource;
 import org.springframework.integration.support.MessagingExceptionWrapper;
+import org.springframework.integration.util.ErrorHandlingTaskExecutor;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.Assert;
 import org.springframework.util.ErrorHandler;
 
@@ -50,11 +88,7 @@ public class SftpInboundFactory extends BaseSftpFactory {
   private static final String RETRY_MAX_ATTEMPTS = "sftp.inbound.retry.maxAttempts";
   private static final String RETRY_MAX_WAIT_TIME = "sftp.inbound.retry.maxWaitTime";
 
-  private static final String SOURCE_FILE_EXPRESSION_FORMAT = "'%s/' + headers['file_remoteFile']";
-  private static final String TEMP_FILE_EXPRESSION_FORMAT = "'%s/' + headers['file_remoteFile']";
-  private static final String ARCHIVE_BY_DATE_FILE_EXPRESSION_FORMAT = "'%s/' + headers['now'] + "
-      + "'/' + headers['file_remoteFile']";
-  private static final String ARCHIVE_FILE_EXPRESSION_FORMAT = "'%s/' + headers['file_remoteFile']";
+  private static final String METADATA_STORE_FILE_SUFFIX = ".accept-once";
 
   /**
    * Construct a {@link IntegrationFlow} instance by the given rule.
@@ -66,29 +100,82 @@ public class SftpInboundFactory extends BaseSftpFactory {
     validateRule(rule);
     log.info("Init sftp inbound rule named {}, id: {}", rule.getName(), rule.getId());
     final AtomicInteger counter = new AtomicInteger();
-    String sourceFileExpression = getSourceFileExpression(rule);
-    String tempFileExpression = getTempFileExpression(rule);
-    String archiveFileExpression = getArchiveFileExpression(rule);
-    return IntegrationFlow.from(sftpStreamingMessageSource(rule),
-            e -> e.poller(p -> p.cron(getCron(rule.getCron(), POLLER_CRON))
+    // the remote paths and the local file name are compiled once per rule, not interpreted for every file
+    final RemotePathExpression sourceFilePath = RemotePathExpression.of(rule.getRemoteSource(), FileHeaders.REMOTE_FILE);
+    final RemotePathExpression tempFilePath = RemotePathExpression.of(rule.getRemoteTemp(), FileHeaders.REMOTE_FILE);
+    final RemotePathExpression archiveFilePath = getArchiveFilePath(rule);
+    final DownloadFileNameGenerator fileNameGenerator =
+        new DownloadFileNameGenerator(rule.getRenameExpression(), counter, Boolean.FALSE);
+    final SftpInFlightFileListFilter inFlightFilter = new SftpInFlightFileListFilter();
+    final SftpPersistentAcceptOnceFileListFilter acceptOnceFilter = acceptOnceFilter(rule);
+    final ErrorHandler errorHandler = errorHandler(rule, inFlightFilter, acceptOnceFilter);
+    // shared by the remote operations of a file, so that they can run on one session
+    final ThreadBoundSessionFactory affinitySessionFactory = rule.isSessionAffinity()
+        ? new ThreadBoundSessionFactory(sessionFactoryMap.get(rule.getSchema()))
+        : null;
+    final RemoteFileTemplate<DirEntry> fileTemplate = Objects.nonNull(affinitySessionFactory)
+        ? initTemplate(new RemoteFileTemplate<>(affinitySessionFactory))
+        : template(rule);
+    final TokenBucketBandwidthLimiter bandwidthLimiter =
+        ruleBandwidthLimiter(rule.getName(), rule.getMaxBytesPerSecond());
+    final IntegrationFlowBuilder builder = IntegrationFlow.from(
+            sftpStreamingMessageSource(rule, inFlightFilter, acceptOnceFilter),
+            e -> e.poller(p -> poller(p, getCron(rule.getCron(), POLLER_CRON), adaptiveTrigger(rule),
+                    ruleExecutor(rule.getName(), rule.getSchema(), rule.getWeight()))
                 .maxMessagesPerPoll(getMaxMessagesPerPoll(rule.getMaxMessagesPerPoll(), POLLER_MAX_MESSAGES_PER_POLL))
-                .errorHandler(errorHandler(rule))
+                .errorHandler(errorHandler)
             ))
         .handle(closeSession(rule))
         .wireTap(flow -> flow.handle(
             message -> log.info("[{}] File {} is detected in remote folder",
                 rule.getName(), message.getHeaders().get(FileHeaders.REMOTE_FILE))
         ))
-        // https://docs.spring.io/spring-integration/reference/sftp/outbound-gateway.html#using-the-mv-command
-        .handle(Sftp.outboundGateway(template(rule), Command.MV, sourceFileExpression).renameExpression(tempFileExpression))
+        .channel(workerChannel(rule, errorHandler));
+    if (Objects.nonNull(affinitySessionFactory)) {
+      builder.handle(new SessionAffinityMessageHandler(affinitySessionFactory));
+    }
+    builder
+        .handle(move(fileTemplate, sourceFilePath, tempFilePath))
+        .handle(releaseInFlight(inFlightFilter, acceptOnceFilter))
         .wireTap(flow -> flow.handle(
             message -> log.info("[{}] File {} has been moved to temp folder",
                 rule.getName(), message.getHeaders().get(FileHeaders.REMOTE_FILE))
-        ))
-        .handle(remoteFileToStream(rule, tempFileExpression), e -> e.advice(remoteFileToStreamAdvice(rule)))
-        .handle(checkFileStream(rule))
-        .handle(download(rule, counter))
-        .handle(closeSession(rule))
+        ));
+    // with session affinity, the streaming GET reads on the session bound to the worker thread
+    final SessionFactory<DirEntry> streamSessionFactory = Objects.nonNull(affinitySessionFactory)
+        ? affinitySessionFactory
+        : sessionFactoryMap.get(rule.getSchema());
+    if (Objects.nonNull(rule.getRecordFormat())) {
+      builder
+          .handle(remoteFileToStream(tempFilePath, streamSessionFactory),
+              e -> e.advice(remoteFileToStreamAdvice(rule)))
+          .handle(checkFileStream(rule))
+          .handle(throttleStream(bandwidthLimiter))
+          .handle(checksumStream(rule))
+          .handle(splitRecords(rule))
+          .handle(closeSession(rule));
+    } else if (rule.getSegmentThreshold() > 0) {
+      builder
+          .handle(segmentedDownload(rule, fileTemplate, bandwidthLimiter, tempFilePath, fileNameGenerator),
+              e -> e.advice(downloadAdvice(rule)))
+          .handle(checkFileStream(rule));
+    } else if (rule.isResumableDownload()) {
+      builder
+          .handle(resumableDownload(rule, fileTemplate, bandwidthLimiter, tempFilePath, fileNameGenerator),
+              e -> e.advice(downloadAdvice(rule)))
+          .handle(checkFileStream(rule));
+    } else {
+      builder
+          .handle(remoteFileToStream(tempFilePath, streamSessionFactory),
+              e -> e.advice(remoteFileToStreamAdvice(rule)))
+          .handle(checkFileStream(rule))
+          .handle(throttleStream(bandwidthLimiter))
+          .handle(checksumStream(rule))
+          .handle(download(rule, counter))
+          .handle(closeSession(rule));
+    }
+    return builder
+        .handle(verifyChecksum(rule, fileTemplate))
         .wireTap(flow -> flow.handle(
             message -> log.info("[{}] File {} has been downloaded to local folder",
                 rule.getName(), message.getHeaders().get(FileHeaders.REMOTE_FILE))
@@ -98,33 +185,36 @@ public class SftpInboundFactory extends BaseSftpFactory {
             h.header("now", DateTimeUtils.formatNow(DateTimeConstants.YYYYMMDD));
           }
         })
-        .handle(Sftp.outboundGateway(template(rule), Command.MV, tempFileExpression).renameExpression(archiveFileExpression))
+        .handle(move(fileTemplate, tempFilePath, archiveFilePath))
         .wireTap(flow -> flow.handle(
             message -> log.info("[{}] File {} has been moved to archive folder",
                 rule.getName(), message.getHeaders().get(FileHeaders.REMOTE_FILE))
         ))
+        .handle(handleReadyFile(rule, fileTemplate))
+        .handle(handleSidecarFile(rule, fileTemplate))
         .channel("nullChannel")
         .get();
   }
 
-  private String getSourceFileExpression(BaseSftpInboundRule rule) {
-    return String.format(SOURCE_FILE_EXPRESSION_FORMAT, rule.getRemoteSource());
-  }
-
-  private String getTempFileExpression(BaseSftpInboundRule rule) {
-    return String.format(TEMP_FILE_EXPRESSION_FORMAT, rule.getRemoteTemp());
+  /**
+   * Construct the adaptive poller trigger of the given rule.
+   *
+   * @param rule the rule to use
+   * @return an {@link AdaptivePollingTrigger} instance, or null if the rule polls by its cron only
+   */
+  private AdaptivePollingTrigger adaptiveTrigger(BaseSftpInboundRule rule) {
+    if (!rule.isAdaptivePolling()) {
+      return null;
+    }
+    return new AdaptivePollingTrigger(getCron(rule.getCron(), POLLER_CRON), rule.getPollingMinInterval(),
+        rule.getPollingMaxInterval(), rule.getPollingMultiplier());
   }
 
-  private String getArchiveFileExpression(BaseSftpInboundRule rule) {
-    String archiveFileExpression;
+  private RemotePathExpression getArchiveFilePath(BaseSftpInboundRule rule) {
     if (rule.isArchiveByDate()) {
-      archiveFileExpression = String.format(ARCHIVE_BY_DATE_FILE_EXPRESSION_FORMAT,
-          rule.getRemoteArchive());
-    } else {
-      archiveFileExpression = String.format(ARCHIVE_FILE_EXPRESSION_FORMAT,
-          rule.getRemoteArchive());
+      return RemotePathExpression.of(rule.getRemoteArchive(), "now", FileHeaders.REMOTE_FILE);
     }
-    return archiveFileExpression;
+    return RemotePathExpression.of(rule.getRemoteArchive(), FileHeaders.REMOTE_FILE);
   }
 
   /**
@@ -137,23 +227,67 @@ public class SftpInboundFactory extends BaseSftpFactory {
    * <p>
    * refer to https://docs.spring.io/spring-integration/reference/sftp/streaming.html
    *
-   * @param rule the rule to use
+   * @param rule             the rule to use
+   * @param inFlightFilter   the filter to reject files which are being downloaded
+   * @param acceptOnceFilter the filter to reject files which have been accepted, may be null
    * @return a {@link MessageSource} instance
    */
-  private MessageSource<InputStream> sftpStreamingMessageSource(BaseSftpInboundRule rule) {
-    CompositeFileListFilter<SftpClient.DirEntry> filter = new CompositeFileListFilter<>();
-    filter.addFilter(new SftpSimplePatternFileListFilter(rule.getPattern()));
+  private MessageSource<InputStream> sftpStreamingMessageSource(BaseSftpInboundRule rule,
+      SftpInFlightFileListFilter inFlightFilter, SftpPersistentAcceptOnceFileListFilter acceptOnceFilter) {
+    // each filter only sees the files accepted by the previous ones, so that a rejected file is never in flight
+    ChainFileListFilter<SftpClient.DirEntry> filter = new ChainFileListFilter<>();
     if (StringUtils.hasText(rule.getReadyFileSuffix())) {
-      
+      // must be the first one, the ready files are matched against the whole listing
+      filter.addFilter(new SftpReadyFileListFilter(rule.getReadyFileSuffix()));
     }
+    final FileListFilter<DirEntry> patternFilter = patternFilter(rule);
+    filter.addFilter(patternFilter);
+    if (Objects.nonNull(acceptOnceFilter)) {
+      filter.addFilter(acceptOnceFilter);
+    }
+    // must be the last one, only the files accepted by the other filters are in flight
+    filter.addFilter(inFlightFilter);
 
-    SftpStreamingMessageSource messageSource = new SftpStreamingMessageSource(template(rule));
+    final SftpListingRemoteFileTemplate listingTemplate = listingTemplate(rule);
+    final SftpStreamingMessageSource messageSource = new SftpStreamingMessageSource(listingTemplate);
+    if (rule.isIncrementalListing()) {
+      // a file in flight may still fail and be listed again, a file not matching the pattern or already accepted never
+      final SftpWatermarkFileListFilter watermarkFilter = new SftpWatermarkFileListFilter(filter,
+          file -> !inFlightFilter.isInFlight(file.getFilename())
+              && (!patternFilter.accept(file)
+              || Objects.nonNull(acceptOnceFilter) && acceptOnceFilter.isAccepted(file)),
+          rule.getReadyFileSuffix());
+      listingTemplate.setSkipFilter(watermarkFilter::isBelowWatermark);
+      messageSource.setFilter(watermarkFilter);
+    } else {
+      messageSource.setFilter(filter);
+    }
     messageSource.setRemoteDirectory(rule.getRemoteSource());
-    messageSource.setFilter(filter);
+    // keep the file info as object, so that a failed file can be forgotten by the accept once filter
+    messageSource.setFileInfoJson(Boolean.FALSE);
     return messageSource;
   }
 
-  private ErrorHandler errorHandler(BaseSftpInboundRule rule) {
+  /**
+   * Construct a {@link SftpPersistentAcceptOnceFileListFilter} instance by the given rule.
+   *
+   * @param rule the rule to use
+   * @return a {@link SftpPersistentAcceptOnceFileListFilter} instance, or null if no metadata store is configured
+   */
+  private SftpPersistentAcceptOnceFileListFilter acceptOnceFilter(BaseSftpInboundRule rule) {
+    if (!StringUtils.hasText(rule.getMetadataStore())) {
+      return null;
+    }
+    final Path file = Paths.get(rule.getMetadataStore(), rule.getId() + METADATA_STORE_FILE_SUFFIX);
+    final MappedLogMetadataStore store = new MappedLogMetadataStore(file, rule.getMetadataStoreMaxEntries());
+    log.info("[{}] Accept files once, {} files have been accepted", rule.getName(), store.size());
+    final SftpPersistentAcceptOnceFileListFilter filter = new SftpPersistentAcceptOnceFileListFilter(store);
+    registerCloseable(filter);
+    return filter;
+  }
+
+  private ErrorHandler errorHandler(BaseSftpInboundRule rule, SftpInFlightFileListFilter inFlightFilter,
+      SftpPersistentAcceptOnceFileListFilter acceptOnceFilter) {
     return new ErrorHandler() {
       @Override
       public void handleError(Throwable t) {
@@ -164,6 +298,14 @@ public class SftpInboundFactory extends BaseSftpFactory {
           log.error(String.format("[%s] Error occurs in download file, message: %s",
               rule.getName(), cause.getMessage()), cause);
           closeSession(rule, wrapper.getFailedMessage());
+          rollback(wrapper.getFailedMessage(), inFlightFilter, acceptOnceFilter);
+        } else if (MessagingException.class.isAssignableFrom(t.getClass())) {
+          // thrown by the download workers
+          final MessagingException exception = (MessagingException) t;
+          log.error(String.format("[%s] Error occurs in download file, message: %s",
+              rule.getName(), t.getMessage()), t);
+          closeSession(rule, exception.getFailedMessage());
+          rollback(exception.getFailedMessage(), inFlightFilter, acceptOnceFilter);
         } else {
           log.error(String.format("[%s] Error occurs in download file, message: %s",
               rule.getName(), t.getMessage()), t);
@@ -173,16 +315,210 @@ public class SftpInboundFactory extends BaseSftpFactory {
   }
 
   /**
-   * Construct a {@link SftpOutboundGateway} instance by the given rule and tempFileExpression.
+   * Construct the channel which hands the detected files to the download workers.
+   * <p>
+   * Each worker checks out its own session from the schema's {@link CachingSessionFactory}, so the files are downloaded
+   * in parallel, up to the rule's concurrency.
+   *
+   * @param rule         the rule to use
+   * @param errorHandler the error handler of the download workers
+   * @return a {@link MessageChannel} instance
+   */
+  private MessageChannel workerChannel(BaseSftpInboundRule rule, ErrorHandler errorHandler) {
+    if (rule.isVirtualThreads()) {
+      final Executor executor = transferExecutor(rule.getSchema(), rule.getConcurrency());
+      if (Objects.nonNull(executor)) {
+        log.info("[{}] Download files on virtual threads, up to {} at once", rule.getName(),
+            rule.getConcurrency() > 0 ? rule.getConcurrency() : "the max transfers of the schema");
+        return new ExecutorChannel(new ErrorHandlingTaskExecutor(executor, errorHandler));
+      }
+    }
+    if (rule.getConcurrency() <= 1) {
+      return new DirectChannel();
+    }
+    log.info("[{}] Download files with {} workers", rule.getName(), rule.getConcurrency());
+    final ThreadPoolTaskExecutor executor = taskExecutor(rule.getName() + "-", rule.getConcurrency());
+    return new ExecutorChannel(new ErrorHandlingTaskExecutor(executor, errorHandler));
+  }
+
+  /**
+   * Commit and release the file once it has been moved out of the source folder.
+   *
+   * @param inFlightFilter   the filter to use
+   * @param acceptOnceFilter the filter to commit the file to, may be null
+   * @return an {@link AbstractReplyProducingMessageHandler} instance
+   */
+  private AbstractReplyProducingMessageHandler releaseInFlight(SftpInFlightFileListFilter inFlightFilter,
+      SftpPersistentAcceptOnceFileListFilter acceptOnceFilter) {
+    return new AbstractReplyProducingMessageHandler() {
+      @Override
+      protected Object handleRequestMessage(Message<?> requestMessage) {
+        if (Objects.nonNull(acceptOnceFilter)) {
+          acceptOnceFilter.commit((String) requestMessage.getHeaders().get(FileHeaders.REMOTE_FILE));
+        }
+        releaseInFlight(inFlightFilter, requestMessage);
+        return requestMessage;
+      }
+    };
+  }
+
+  private void releaseInFlight(SftpInFlightFileListFilter inFlightFilter, Message<?> requestMessage) {
+    if (Objects.nonNull(requestMessage)) {
+      inFlightFilter.release((String) requestMessage.getHeaders().get(FileHeaders.REMOTE_FILE));
+    }
+  }
+
+  /**
+   * Release and forget the failed file, so that it can be accepted by the next poll.
+   */
+  private void rollback(Message<?> requestMessage, SftpInFlightFileListFilter inFlightFilter,
+      SftpPersistentAcceptOnceFileListFilter acceptOnceFilter) {
+    // forget the file before releasing it, a file neither in flight nor accepted can be listed again
+    if (Objects.nonNull(requestMessage) && Objects.nonNull(acceptOnceFilter)
+        && requestMessage.getHeaders().get(FileHeaders.REMOTE_FILE_INFO) instanceof FileInfo<?> fileInfo) {
+      acceptOnceFilter.remove(fileInfo.getFilename(), fileInfo.getSize(), fileInfo.getModified());
+    }
+    releaseInFlight(inFlightFilter, requestMessage);
+  }
+
+  /**
+   * Construct the filter of the remote files matching the pattern of the given rule, the checksum sidecar files are
+   * excluded if the files are verified by their sidecars.
+   *
+   * @param rule the rule to use
+   * @return a {@link FileListFilter} instance
+   */
+  private FileListFilter<DirEntry> patternFilter(BaseSftpInboundRule rule) {
+    final FileListFilter<DirEntry> patternFilter = rule.isRecursive()
+        ? new SftpRecursivePatternFileListFilter(rule.getPattern(), rule.getDirectoryPatterns())
+        : new SftpSimplePatternFileListFilter(rule.getPattern());
+    if (ChecksumVerification.SIDECAR != rule.getChecksumVerification()
+        || Objects.isNull(rule.getChecksumAlgorithm())) {
+      return patternFilter;
+    }
+    return new ChainFileListFilter<>(
+        List.of(new SftpSidecarFileListFilter(rule.getChecksumAlgorithm()), patternFilter));
+  }
+
+  /**
+   * Archive the checksum sidecar file once the file has been moved to archive folder, the sidecar is left in the
+   * source folder if the file failed its verification.
+   *
+   * @param rule     the rule to use
+   * @param template the template to use
+   * @return an {@link AbstractReplyProducingMessageHandler} instance
+   */
+  private AbstractReplyProducingMessageHandler handleSidecarFile(BaseSftpInboundRule rule,
+      RemoteFileTemplate<DirEntry> template) {
+    return new AbstractReplyProducingMessageHandler() {
+      @Override
+      protected Object handleRequestMessage(Message<?> requestMessage) {
+        if (ChecksumVerification.SIDECAR != rule.getChecksumVerification()
+            || Objects.isNull(rule.getChecksumAlgorithm())) {
+          return requestMessage;
+        }
+        final String sidecarFileName = ChecksumUtils.getSidecarFile(
+            (String) requestMessage.getHeaders().get(FileHeaders.REMOTE_FILE), rule.getChecksumAlgorithm());
+        String archiveFolder = rule.getRemoteArchive();
+        if (rule.isArchiveByDate()) {
+          archiveFolder = archiveFolder + "/" + requestMessage.getHeaders().get("now");
+        }
+        template.rename(rule.getRemoteSource() + "/" + sidecarFileName, archiveFolder + "/" + sidecarFileName);
+        log.info("[{}] Sidecar file {} has been moved to archive folder", rule.getName(), sidecarFileName);
+        return requestMessage;
+      }
+    };
+  }
+
+  /**
+   * Delete or archive the ready file once the file has been moved to archive folder.
+   *
+   * @param rule     the rule to use
+   * @param template the template to use
+   * @return an {@link AbstractReplyProducingMessageHandler} instance
+   */
+  private AbstractReplyProducingMessageHandler handleReadyFile(BaseSftpInboundRule rule,
+      RemoteFileTemplate<DirEntry> template) {
+    return new AbstractReplyProducingMessageHandler() {
+      @Override
+      protected Object handleRequestMessage(Message<?> requestMessage) {
+        if (!StringUtils.hasText(rule.getReadyFileSuffix())
+            || ReadyFileAction.NONE == rule.getReadyFileAction()) {
+          return requestMessage;
+        }
+        final String readyFileName = requestMessage.getHeaders().get(FileHeaders.REMOTE_FILE)
+            + rule.getReadyFileSuffix();
+        final String readyFile = rule.getRemoteSource() + "/" + readyFileName;
+        if (ReadyFileAction.DELETE == rule.getReadyFileAction()) {
+          template.remove(readyFile);
+          log.info("[{}] Ready file {} has been deleted", rule.getName(), readyFileName);
+        } else {
+          String archiveFolder = rule.getRemoteArchive();
+          if (rule.isArchiveByDate()) {
+            archiveFolder = archiveFolder + "/" + requestMessage.getHeaders().get("now");
+          }
+          template.rename(readyFile, archiveFolder + "/" + readyFileName);
+          log.info("[{}] Ready file {} has been moved to archive folder", rule.getName(), readyFileName);
+        }
+        return requestMessage;
+      }
+    };
+  }
+
+  /**
+   * Move the remote file like the MV command of the outbound gateway, by the given precompiled paths.
+   * <p>
+   * The {@link FileHeaders#REMOTE_FILE} header is kept, it remains the path of the file relative to the rule's folders.
+   * <p>
+   * refer to https://docs.spring.io/spring-integration/reference/sftp/outbound-gateway.html#using-the-mv-command
+   *
+   * @param template the template to use
+   * @param fromPath the current path of the file
+   * @param toPath   the new path of the file
+   * @return an {@link AbstractReplyProducingMessageHandler} instance
+   */
+  private AbstractReplyProducingMessageHandler move(RemoteFileTemplate<DirEntry> template,
+      RemotePathExpression fromPath, RemotePathExpression toPath) {
+    return new AbstractReplyProducingMessageHandler() {
+      @Override
+      protected Object handleRequestMessage(Message<?> requestMessage) {
+        final String renameTo = toPath.apply(requestMessage);
+        template.rename(fromPath.apply(requestMessage), renameTo);
+        return getMessageBuilderFactory().withPayload(Boolean.TRUE)
+            .setHeader(FileHeaders.RENAME_TO, renameTo);
+      }
+    };
+  }
+
+  /**
+   * Read the remote temp file as a stream like the GET command of the outbound gateway with the STREAM option.
+   * <p>
+   * The session is provided in the closeableResource header (IntegrationMessageHeaderAccessor.CLOSEABLE_RESOURCE), it
+   * must be closed once the stream is consumed. A session bound by session affinity stays checked out until the end
+   * of the file's scope.
+   * <p>
+   * refer to https://docs.spring.io/spring-integration/reference/sftp/outbound-gateway.html#using-the-get-command
    *
-   * @param rule               the rule to use
-   * @param tempFileExpression the tempFileExpression to use
-   * @return a {@link SftpOutboundGateway} instance
+   * @param tempFilePath   the path of the file in the remote temp folder
+   * @param sessionFactory the factory to check the session out from
+   * @return an {@link AbstractReplyProducingMessageHandler} instance
    */
-  private SftpOutboundGateway remoteFileToStream(BaseSftpInboundRule rule, String tempFileExpression) {
-    final SftpOutboundGateway gateway = new SftpOutboundGateway(template(rule), Command.GET.getCommand(), tempFileExpression);
-    gateway.setOption(Option.STREAM);
-    return gateway;
+  private AbstractReplyProducingMessageHandler remoteFileToStream(RemotePathExpression tempFilePath,
+      SessionFactory<DirEntry> sessionFactory) {
+    return new AbstractReplyProducingMessageHandler() {
+      @Override
+      protected Object handleRequestMessage(Message<?> requestMessage) {
+        final String remoteFile = tempFilePath.apply(requestMessage);
+        final Session<DirEntry> session = sessionFactory.getSession();
+        try {
+          return getMessageBuilderFactory().withPayload(session.readRaw(remoteFile))
+              .setHeader(IntegrationMessageHeaderAccessor.CLOSEABLE_RESOURCE, session);
+        } catch (IOException e) {
+          session.close();
+          throw new MessagingException(requestMessage, "Failed to read remote file " + remoteFile, e);
+        }
+      }
+    };
   }
 
   /**
@@ -192,13 +528,94 @@ public class SftpInboundFactory extends BaseSftpFactory {
    * @return a {@link Advice} instance
    */
   private Advice remoteFileToStreamAdvice(BaseSftpInboundRule rule) {
+    return retryAdvice(rule, "convert to stream", "converted to stream");
+  }
+
+  /**
+   * Construct a {@link ResumableDownloadMessageHandler} instance by the given rule.
+   * <p>
+   * Each retry attempt continues from the bytes already written to the local partial file.
+   *
+   * @param rule              the rule to use
+   * @param template          the template to use
+   * @param bandwidthLimiter  the bandwidth limiter of the rule
+   * @param tempFilePath      the path of the file in the remote temp folder
+   * @param fileNameGenerator the generator of the local file name
+   * @return a {@link ResumableDownloadMessageHandler} instance
+   */
+  private ResumableDownloadMessageHandler resumableDownload(BaseSftpInboundRule rule,
+      RemoteFileTemplate<DirEntry> template, BandwidthLimiter bandwidthLimiter, RemotePathExpression tempFilePath,
+      DownloadFileNameGenerator fileNameGenerator) {
+    final ResumableDownloadMessageHandler handler = new ResumableDownloadMessageHandler(template,
+        FileUtils.getOrCreateDirectory(rule.getLocal()).toPath(), tempFilePath);
+    handler.setFileNameGenerator(fileNameGenerator);
+    handler.setChecksumAlgorithm(rule.getChecksumAlgorithm());
+    // the client is read directly, bypassing the throttled streams of the schema's sessions
+    handler.setBandwidthLimiter(bandwidthLimiter.andThen(schemaBandwidthLimiter(rule.getSchema())));
+    final SftpTransferWindow transferWindow = schemaTransferWindow(rule.getSchema());
+    if (transferWindow.getBufferSize() > 0) {
+      handler.setBufferSize(transferWindow.getBufferSize());
+    }
+    return handler;
+  }
+
+  /**
+   * Construct a {@link SegmentedDownloadMessageHandler} instance by the given rule.
+   * <p>
+   * The segments of a file are read by a dedicated pool, each segment checks out its own session from the schema's
+   * {@link CachingSessionFactory}.
+   *
+   * @param rule              the rule to use
+   * @param template          the template to use
+   * @param bandwidthLimiter  the bandwidth limiter of the rule
+   * @param tempFilePath      the path of the file in the remote temp folder
+   * @param fileNameGenerator the generator of the local file name
+   * @return a {@link SegmentedDownloadMessageHandler} instance
+   */
+  private SegmentedDownloadMessageHandler segmentedDownload(BaseSftpInboundRule rule,
+      RemoteFileTemplate<DirEntry> template, BandwidthLimiter bandwidthLimiter, RemotePathExpression tempFilePath,
+      DownloadFileNameGenerator fileNameGenerator) {
+    final int segmentCount = Math.max(1, rule.getSegmentCount());
+    final SegmentedDownloadMessageHandler handler = new SegmentedDownloadMessageHandler(template,
+        FileUtils.getOrCreateDirectory(rule.getLocal()).toPath(), tempFilePath,
+        segmentExecutor(rule, segmentCount));
+    handler.setThreshold(rule.getSegmentThreshold());
+    handler.setSegmentCount(segmentCount);
+    handler.setChecksumAlgorithm(rule.getChecksumAlgorithm());
+    handler.setFileNameGenerator(fileNameGenerator);
+    // the client is read directly, bypassing the throttled streams of the schema's sessions
+    handler.setBandwidthLimiter(bandwidthLimiter.andThen(schemaBandwidthLimiter(rule.getSchema())));
+    final SftpTransferWindow transferWindow = schemaTransferWindow(rule.getSchema());
+    if (transferWindow.getBufferSize() > 0) {
+      handler.setBufferSize(transferWindow.getBufferSize());
+    }
+    return handler;
+  }
+
+  private Executor segmentExecutor(BaseSftpInboundRule rule, int segmentCount) {
+    // the segments are not capped by the schema, the download holding the schema's permit waits for them
+    final Executor executor = rule.isVirtualThreads() ? transferExecutor(null, segmentCount) : null;
+    return Objects.nonNull(executor) ? executor : taskExecutor(rule.getName() + "-segment-", segmentCount);
+  }
+
+  /**
+   * Construct a {@link Advice} instance by the given rule.
+   *
+   * @param rule the rule to use
+   * @return a {@link Advice} instance
+   */
+  private Advice downloadAdvice(BaseSftpInboundRule rule) {
+    return retryAdvice(rule, "download to local folder", "downloaded to local folder");
+  }
+
+  private Advice retryAdvice(BaseSftpInboundRule rule, String action, String actionCompleted) {
     CustomRequestHandlerRetryAdvice advice = new CustomRequestHandlerRetryAdvice(applicationContext);
     advice.setRuleName(rule.getName());
     advice.setRetryMaxAttempts(rule.getRetryMaxAttempts(), RETRY_MAX_ATTEMPTS);
     advice.setRetryMaxWaitTime(rule.getRetryMaxWaitTime(), RETRY_MAX_WAIT_TIME);
     advice.setFileNameFunction(message -> (String) message.getHeaders().get(FileHeaders.REMOTE_FILE));
-    advice.setAction("convert to stream");
-    advice.setActionCompleted("converted to stream");
+    advice.setAction(action);
+    advice.setActionCompleted(actionCompleted);
     advice.afterPropertiesSet();
     return advice;
   }
@@ -217,37 +634,136 @@ public class SftpInboundFactory extends BaseSftpFactory {
   }
 
   /**
-   * Download file
+   * Throttle the stream by the bandwidth limiter of the rule, the schema's limit is enforced by its sessions.
+   *
+   * @param bandwidthLimiter the bandwidth limiter of the rule
+   * @return an {@link AbstractReplyProducingMessageHandler} instance
+   */
+  private AbstractReplyProducingMessageHandler throttleStream(BandwidthLimiter bandwidthLimiter) {
+    return new AbstractReplyProducingMessageHandler() {
+      @Override
+      protected Object handleRequestMessage(Message<?> requestMessage) {
+        return MessageBuilder.withPayload(
+                new ThrottledInputStream((InputStream) requestMessage.getPayload(), bandwidthLimiter))
+            .copyHeaders(requestMessage.getHeaders())
+            .build();
+      }
+    };
+  }
+
+  /**
+   * Compute the checksum while the stream is written to the local folder.
    *
    * @param rule the rule to use
-   * @return an {@link MessageHandler} instance
+   * @return an {@link AbstractReplyProducingMessageHandler} instance
    */
-  private MessageHandler download(BaseSftpInboundRule rule, AtomicInteger counter) {
-    final FileWritingMessageHandler handler = new FileWritingMessageHandler(
-        FileUtils.getOrCreateDirectory(rule.getLocal()));
-    handler.setFileNameGenerator(
-        message -> getDownloadFileName(message, rule.getRenameExpression(), counter));
-    handler.setFileExistsMode(FileExistsMode.REPLACE);
-    return handler;
+  private AbstractReplyProducingMessageHandler checksumStream(BaseSftpInboundRule rule) {
+    return new AbstractReplyProducingMessageHandler() {
+      @Override
+      protected Object handleRequestMessage(Message<?> requestMessage) {
+        if (Objects.isNull(rule.getChecksumAlgorithm())) {
+          return requestMessage;
+        }
+        final StreamingDigest digest = rule.getChecksumAlgorithm().newDigest();
+        return MessageBuilder.withPayload(
+                new ChecksumInputStream((InputStream) requestMessage.getPayload(), digest))
+            .copyHeaders(requestMessage.getHeaders())
+            .setHeader(SftpConstants.CHECKSUM_DIGEST, digest)
+            .build();
+      }
+    };
   }
 
   /**
-   * get download filename
+   * Put the checksum of the downloaded file in the header, and compare it with the expected one if configured.
+   * <p>
+   * If they do not match, the downloaded file is deleted and the file is kept in the remote temp folder.
    *
-   * @param message          the message to use
-   * @param renameExpression the renameExpression to use
-   * @param counter          the counter to use
-   * @return download filename
+   * @param rule     the rule to use
+   * @param template the template to use
+   * @return an {@link AbstractReplyProducingMessageHandler} instance
+   */
+  private AbstractReplyProducingMessageHandler verifyChecksum(BaseSftpInboundRule rule,
+      RemoteFileTemplate<DirEntry> template) {
+    return new AbstractReplyProducingMessageHandler() {
+      @Override
+      protected Object handleRequestMessage(Message<?> requestMessage) {
+        final ChecksumAlgorithm algorithm = rule.getChecksumAlgorithm();
+        if (Objects.isNull(algorithm)) {
+          return requestMessage;
+        }
+        final String fileName = (String) requestMessage.getHeaders().get(FileHeaders.REMOTE_FILE);
+        String checksum = (String) requestMessage.getHeaders().get(SftpConstants.CHECKSUM);
+        if (Objects.isNull(checksum)
+            && requestMessage.getHeaders().get(SftpConstants.CHECKSUM_DIGEST) instanceof StreamingDigest digest) {
+          checksum = digest.hex();
+        }
+        String expectedChecksum = null;
+        if (ChecksumVerification.SIDECAR == rule.getChecksumVerification()) {
+          expectedChecksum = ChecksumUtils.readSidecar(template,
+              ChecksumUtils.getSidecarFile(rule.getRemoteSource() + "/" + fileName, algorithm));
+        } else if (ChecksumVerification.CHECK_FILE == rule.getChecksumVerification()) {
+          expectedChecksum = ChecksumUtils.checkFile(template, rule.getRemoteTemp() + "/" + fileName, algorithm);
+        }
+        if (Objects.nonNull(expectedChecksum)) {
+          try {
+            ChecksumUtils.verify(fileName, checksum, expectedChecksum);
+          } catch (IllegalStateException e) {
+            if (requestMessage.getPayload() instanceof File file) {
+              file.delete();
+            }
+            throw e;
+          }
+        }
+        log.info("[{}] File {} has {} checksum {}", rule.getName(), fileName, algorithm, checksum);
+        return MessageBuilder.fromMessage(requestMessage)
+            .setHeader(SftpConstants.CHECKSUM, checksum)
+            .removeHeader(SftpConstants.CHECKSUM_DIGEST)
+            .build();
+      }
+    };
+  }
+
+  /**
+   * Split the stream into record messages sent to the record channel of the given rule, the file is not written to
+   * the local folder.
+   *
+   * @param rule the rule to use
+   * @return a {@link RecordSplittingMessageHandler} instance
    */
-  private String getDownloadFileName(Message<?> message, String renameExpression,
-      AtomicInteger counter) {
-    if (StringUtils.hasText(renameExpression)) {
-      final Map<String, String> headerMap = message.getHeaders().entrySet().stream()
-          .collect(Collectors.toMap(Entry::getKey, e -> String.valueOf(e.getValue())));
-      return ValueExpressionUtils.parse(renameExpression, headerMap, counter);
+  private RecordSplittingMessageHandler splitRecords(BaseSftpInboundRule rule) {
+    return new RecordSplittingMessageHandler(rule.getRecordFormat(), rule.getRecordChannel());
+  }
+
+  /**
+   * Download file
+   *
+   * @param rule    the rule to use
+   * @param counter the counter to use
+   * @return an {@link MessageHandler} instance
+   */
+  private MessageHandler download(BaseSftpInboundRule rule, AtomicInteger counter) {
+    final File local = FileUtils.getOrCreateDirectory(rule.getLocal());
+    final FileWritingMessageHandler handler;
+    if (rule.isRecursive()) {
+      // keep the relative path of the remote file, the subdirectories are created on demand
+      handler = new FileWritingMessageHandler(new FunctionExpression<Message<?>>(
+          message -> new File(local, getRelativeDirectory(message))));
+      handler.setFileNameGenerator(
+          new DownloadFileNameGenerator(rule.getRenameExpression(), counter, Boolean.TRUE));
     } else {
-      return (String) message.getHeaders().get(FileHeaders.REMOTE_FILE);
+      handler = new FileWritingMessageHandler(local);
+      handler.setFileNameGenerator(
+          new DownloadFileNameGenerator(rule.getRenameExpression(), counter, Boolean.FALSE));
     }
+    handler.setFileExistsMode(FileExistsMode.REPLACE);
+    return handler;
+  }
+
+  private String getRelativeDirectory(Message<?> message) {
+    final String remoteFile = (String) message.getHeaders().get(FileHeaders.REMOTE_FILE);
+    final int index = remoteFile.lastIndexOf('/');
+    return index < 0 ? "" : remoteFile.substring(0, index);
   }
 
   /**
@@ -297,8 +813,29 @@ public class SftpInboundFactory extends BaseSftpFactory {
    * @return a {@link RemoteFileTemplate} instance
    */
   private RemoteFileTemplate<DirEntry> template(BaseSftpInboundRule rule) {
-    RemoteFileTemplate<DirEntry> template = new RemoteFileTemplate<>(
+    return initTemplate(new RemoteFileTemplate<>(sessionFactoryMap.get(rule.getSchema())));
+  }
+
+  /**
+   * Construct a {@link SftpListingRemoteFileTemplate} instance by the given rule to list the remote source folder.
+   * <p>
+   * A recursive rule walks the subdirectories up to its max depth, the directories of a level are listed concurrently
+   * by a dedicated pool, each on its own session checked out from the schema's {@link CachingSessionFactory}.
+   *
+   * @param rule the rule to use
+   * @return a {@link SftpListingRemoteFileTemplate} instance
+   */
+  private SftpListingRemoteFileTemplate listingTemplate(BaseSftpInboundRule rule) {
+    final SftpListingRemoteFileTemplate template = new SftpListingRemoteFileTemplate(
         sessionFactoryMap.get(rule.getSchema()));
+    if (rule.isRecursive()) {
+      template.setMaxDepth(rule.getMaxDepth());
+      template.setExecutor(taskExecutor(rule.getName() + "-walk-", Math.max(1, rule.getWalkConcurrency())));
+    }
+    return initTemplate(template);
+  }
+
+  private <T extends RemoteFileTemplate<DirEntry>> T initTemplate(T template) {
     template.setBeanFactory(applicationContext);
     template.setAutoCreateDirectory(Boolean.TRUE);
     // must invoke method "afterPropertiesSet", 
@@ -313,6 +850,13 @@ public class SftpInboundFactory extends BaseSftpFactory {
    * @param rule the rule to validate
    */
   private void validateRule(BaseSftpInboundRule rule) {
+    if (ChecksumVerification.NONE != rule.getChecksumVerification()) {
+      Assert.notNull(rule.getChecksumAlgorithm(), "checksumAlgorithm must be configured");
+    }
+    if (ChecksumVerification.CHECK_FILE == rule.getChecksumVerification()) {
+      Assert.notNull(rule.getChecksumAlgorithm().getCheckFileAlgorithm(),
+          "checksumAlgorithm is not supported by check-file");
+    }
     Assert.hasText(rule.getId(), "id must be configured");
     Assert.hasText(rule.getName(), "name must be configured");
     Assert.hasText(rule.getSchema(), "schema must be configured");
@@ -321,6 +865,14 @@ public class SftpInboundFactory extends BaseSftpFactory {
     Assert.hasText(rule.getRemoteSource(), "remoteSource must be configured");
     Assert.hasText(rule.getRemoteTemp(), "remoteTemp must be configured");
     Assert.hasText(rule.getRemoteArchive(), "remoteArchive must be configured");
+    if (rule.isRecursive()) {
+      Assert.isTrue(rule.getMaxDepth() > 0, "maxDepth must be positive");
+    }
+    if (Objects.nonNull(rule.getRecordFormat())) {
+      Assert.hasText(rule.getRecordChannel(), "recordChannel must be configured");
+      Assert.isTrue(rule.getSegmentThreshold() <= 0 && !rule.isResumableDownload() && !rule.isSessionAffinity(),
+          "recordFormat cannot be combined with segmented, resumable or session affinity download");
+    }
   }
 
 }
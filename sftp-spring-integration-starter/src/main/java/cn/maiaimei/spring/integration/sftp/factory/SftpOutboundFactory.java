@@ -1,27 +1,53 @@
 package cn.maiaimei.spring.integration.sftp.factory;
 
 import cn.maiaimei.commons.lang.utils.FileUtils;
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
 import cn.maiaimei.spring.integration.sftp.config.rule.BaseSftpOutboundRule;
 import cn.maiaimei.spring.integration.sftp.config.rule.SimpleSftpOutboundRule;
+import cn.maiaimei.spring.integration.sftp.constants.ChecksumVerification;
 import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.filters.LocalInFlightFileListFilter;
+import cn.maiaimei.spring.integration.sftp.filters.LocalSidecarFileListFilter;
+import cn.maiaimei.spring.integration.sftp.handler.BatchUploadMessageHandler;
+import cn.maiaimei.spring.integration.sftp.handler.ResumableUploadMessageHandler;
+import cn.maiaimei.spring.integration.sftp.handler.StreamingSftpOutboundGateway;
 import cn.maiaimei.spring.integration.sftp.handler.advice.CustomRequestHandlerRetryAdvice;
+import cn.maiaimei.spring.integration.sftp.source.WatchingFileMessageSource;
+import cn.maiaimei.spring.integration.sftp.trigger.AdaptivePollingTrigger;
+import cn.maiaimei.spring.integration.sftp.utils.ChecksumUtils;
 import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 import org.aopalliance.aop.Advice;
 import org.apache.sshd.sftp.client.SftpClient.DirEntry;
 import org.springframework.expression.common.LiteralExpression;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.core.MessageSource;
 import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.PollerFactory;
+import org.springframework.integration.dsl.PollerSpec;
 import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.FileReadingMessageSource;
 import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
-import org.springframework.integration.file.filters.CompositeFileListFilter;
+import org.springframework.integration.file.filters.ChainFileListFilter;
 import org.springframework.integration.file.filters.SimplePatternFileListFilter;
 import org.springframework.integration.file.remote.RemoteFileTemplate;
-import org.springframework.integration.file.remote.gateway.AbstractRemoteFileOutboundGateway.Command;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
-import org.springframework.integration.sftp.dsl.Sftp;
 import org.springframework.integration.sftp.gateway.SftpOutboundGateway;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.util.ErrorHandlingTaskExecutor;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
 
 /**
  * SFTP outbound factory
@@ -42,13 +68,18 @@ public class SftpOutboundFactory extends BaseSftpFactory {
   public IntegrationFlow createSimpleSftpOutboundFlow(SimpleSftpOutboundRule rule) {
     validateRule(rule);
     log.info("Init sftp outbound rule named {}, id: {}", rule.getName(), rule.getId());
-    return IntegrationFlow.from(fileReadingMessageSource(rule),
-            e -> e.poller(p -> p.cron(getCron(rule.getCron(), POLLER_CRON))
-                .maxMessagesPerPoll(getMaxMessagesPerPoll(rule.getMaxMessagesPerPoll(), POLLER_MAX_MESSAGES_PER_POLL))))
+    final LocalInFlightFileListFilter inFlightFilter = inFlightFilter(rule);
+    final ErrorHandler errorHandler = errorHandler(rule, inFlightFilter);
+    final String cron = getCron(rule.getCron(), POLLER_CRON);
+    return IntegrationFlow.from(messageSource(rule, cron, inFlightFilter),
+            e -> e.poller(p -> poller(p, rule, cron)
+                .maxMessagesPerPoll(getMaxMessagesPerPoll(rule.getMaxMessagesPerPoll(), POLLER_MAX_MESSAGES_PER_POLL))
+                .errorHandler(errorHandler)))
         .wireTap(info("[{}] File {} is detected in local folder", rule))
-        .handle(Sftp.outboundGateway(template(rule), Command.PUT, SftpConstants.PAYLOAD))
+        .channel(workerChannel(rule, errorHandler))
+        .handle(uploadHandler(rule))
         .wireTap(info("[{}] File {} has been uploaded to remote folder", rule))
-        .handle(moveToSent(rule))
+        .handle(moveToSent(rule, inFlightFilter))
         .get();
   }
 
@@ -61,26 +92,205 @@ public class SftpOutboundFactory extends BaseSftpFactory {
   public IntegrationFlow createAdvancedSftpOutboundFlow(SimpleSftpOutboundRule rule) {
     validateRule(rule);
     log.info("Init sftp outbound rule named {}, id: {}", rule.getName(), rule.getId());
-    return IntegrationFlow.from(fileReadingMessageSource(rule),
-            e -> e.poller(p -> p.cron(rule.getCron()).maxMessagesPerPoll(rule.getMaxMessagesPerPoll())))
+    final LocalInFlightFileListFilter inFlightFilter = inFlightFilter(rule);
+    final ErrorHandler errorHandler = errorHandler(rule, inFlightFilter);
+    return IntegrationFlow.from(messageSource(rule, rule.getCron(), inFlightFilter),
+            e -> e.poller(p -> poller(p, rule, rule.getCron())
+                .maxMessagesPerPoll(rule.getMaxMessagesPerPoll())
+                .errorHandler(errorHandler)))
         .wireTap(info("[{}] File {} is detected in local folder", rule))
-        .handle(new SftpOutboundGateway(template(rule), Command.PUT.getCommand(), SftpConstants.PAYLOAD),
-            e -> e.advice(uploadFileAdvice(rule)))
-        .handle(moveToSent(rule))
+        .channel(workerChannel(rule, errorHandler))
+        .handle(uploadHandler(rule), e -> e.advice(uploadFileAdvice(rule)))
+        .handle(moveToSent(rule, inFlightFilter))
         .get();
   }
 
   /**
-   * Construct a {@link FileReadingMessageSource} instance by the given rule.
+   * Construct a {@link IntegrationFlow} instance by the given rule, which uploads all the files of a poll through one
+   * session, see {@link BatchUploadMessageHandler}.
+   * <p>
+   * Each file is moved to the sent folder, or to its error folder if its upload failed, by its own status. If the whole
+   * batch fails, e.g. the session cannot be checked out, its files are forgotten by the filter and uploaded again by
+   * the next poll. The batch is polled by the cron, one batch per poll, uploaded on the poller thread and never resumed,
+   * so the rule must not watch its folder nor set a concurrency, a resumable upload or max messages per poll.
    *
    * @param rule the rule to use
+   * @return a {@link IntegrationFlow} instance
+   */
+  public IntegrationFlow createBatchSftpOutboundFlow(SimpleSftpOutboundRule rule) {
+    validateBatchRule(rule);
+    log.info("Init sftp outbound rule named {}, id: {}", rule.getName(), rule.getId());
+    final ChainFileListFilter<File> filter = fileListFilter(rule);
+    return IntegrationFlow.from(batchMessageSource(rule, filter),
+            e -> e.poller(p -> poller(p, getCron(rule.getCron(), POLLER_CRON), adaptiveTrigger(rule),
+                    ruleExecutor(rule.getName(), rule.getSchema(), rule.getWeight()))
+                .maxMessagesPerPoll(1)
+                .errorHandler(batchErrorHandler(rule, filter))))
+        .wireTap(flow -> flow.handle(
+            message -> log.info("[{}] {} files are detected in local folder", rule.getName(),
+                ((List<?>) message.getPayload()).size())
+        ))
+        .handle(batchUploadHandler(rule))
+        .split()
+        .handle(moveToSent(rule, null))
+        .get();
+  }
+
+  /**
+   * Construct the poller of the given rule, polling the watched files every poll interval if the rule watches its
+   * local folder, by the cron otherwise.
+   *
+   * @param pollerFactory the poller factory
+   * @param rule          the rule to use
+   * @param cron          the cron expression of the rule
+   * @return a {@link PollerSpec} instance
+   */
+  private PollerSpec poller(PollerFactory pollerFactory, BaseSftpOutboundRule rule, String cron) {
+    final Executor executor = ruleExecutor(rule.getName(), rule.getSchema(), rule.getWeight());
+    if (rule.isWatch()) {
+      return poller(pollerFactory, rule.getWatchPollInterval(), executor);
+    }
+    return poller(pollerFactory, cron, adaptiveTrigger(rule), executor);
+  }
+
+  /**
+   * Construct the adaptive poller trigger of the given rule.
+   *
+   * @param rule the rule to use
+   * @return an {@link AdaptivePollingTrigger} instance, or null if the rule polls by its cron only
+   */
+  private AdaptivePollingTrigger adaptiveTrigger(BaseSftpOutboundRule rule) {
+    if (!rule.isAdaptivePolling()) {
+      return null;
+    }
+    return new AdaptivePollingTrigger(getCron(rule.getCron(), POLLER_CRON), rule.getPollingMinInterval(),
+        rule.getPollingMaxInterval(), rule.getPollingMultiplier());
+  }
+
+  /**
+   * Construct the filter of the files handed to the upload workers, if the rule uploads files in parallel.
+   *
+   * @param rule the rule to use
+   * @return a {@link LocalInFlightFileListFilter} instance, or null if the rule uploads files on the poller thread
+   */
+  private LocalInFlightFileListFilter inFlightFilter(BaseSftpOutboundRule rule) {
+    return rule.getConcurrency() > 1 ? new LocalInFlightFileListFilter() : null;
+  }
+
+  /**
+   * Construct the {@link ErrorHandler} of the poller and the upload workers, which releases the failed file so that it
+   * is uploaded again by the next poll.
+   *
+   * @param rule           the rule to use
+   * @param inFlightFilter the filter of the files handed to the upload workers, may be null
+   * @return an {@link ErrorHandler} instance
+   */
+  private ErrorHandler errorHandler(BaseSftpOutboundRule rule, LocalInFlightFileListFilter inFlightFilter) {
+    return new ErrorHandler() {
+      @Override
+      public void handleError(Throwable t) {
+        log.error(String.format("[%s] Error occurs in upload file, message: %s",
+            rule.getName(), t.getMessage()), t);
+        if (Objects.nonNull(inFlightFilter) && MessagingException.class.isAssignableFrom(t.getClass())) {
+          final Message<?> failedMessage = ((MessagingException) t).getFailedMessage();
+          if (Objects.nonNull(failedMessage)) {
+            inFlightFilter.release((String) failedMessage.getHeaders().get(FileHeaders.FILENAME));
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Construct the {@link ErrorHandler} of the batch poller, which removes the files of the failed batch from the
+   * filter, so that they are uploaded again by the next poll instead of being left in the local folder.
+   *
+   * @param rule   the rule to use
+   * @param filter the filter of the local files
+   * @return an {@link ErrorHandler} instance
+   */
+  private ErrorHandler batchErrorHandler(BaseSftpOutboundRule rule, ChainFileListFilter<File> filter) {
+    return new ErrorHandler() {
+      @Override
+      public void handleError(Throwable t) {
+        log.error(String.format("[%s] Error occurs in upload files in batch, message: %s",
+            rule.getName(), t.getMessage()), t);
+        if (!MessagingException.class.isAssignableFrom(t.getClass())) {
+          return;
+        }
+        final Message<?> failedMessage = ((MessagingException) t).getFailedMessage();
+        if (Objects.isNull(failedMessage)) {
+          return;
+        }
+        final Object payload = failedMessage.getPayload();
+        final List<?> files = payload instanceof List ? (List<?>) payload : List.of(payload);
+        for (Object file : files) {
+          if (file instanceof File) {
+            filter.remove((File) file);
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Construct the channel which hands the detected files to the upload workers.
+   * <p>
+   * Each worker checks out its own session from the schema's {@link CachingSessionFactory}, so the files are uploaded
+   * in parallel, up to the rule's concurrency. Each file is moved to the sent folder by its own worker.
+   *
+   * @param rule         the rule to use
+   * @param errorHandler the error handler of the upload workers
+   * @return a {@link MessageChannel} instance
+   */
+  private MessageChannel workerChannel(BaseSftpOutboundRule rule, ErrorHandler errorHandler) {
+    if (rule.getConcurrency() <= 1) {
+      return new DirectChannel();
+    }
+    log.info("[{}] Upload files with {} workers", rule.getName(), rule.getConcurrency());
+    final ThreadPoolTaskExecutor executor = taskExecutor(rule.getName() + "-", rule.getConcurrency());
+    return new ExecutorChannel(new ErrorHandlingTaskExecutor(executor, errorHandler));
+  }
+
+  /**
+   * Construct the message source of the local files by the given rule, a {@link WatchingFileMessageSource} if the rule
+   * watches its local folder, whose cron drives the safety-net sweep, a {@link FileReadingMessageSource} otherwise.
+   *
+   * @param rule           the rule to use
+   * @param cron           the cron expression of the rule
+   * @param inFlightFilter the filter of the files handed to the upload workers, may be null
+   * @return a {@link MessageSource} instance
+   */
+  private MessageSource<File> messageSource(BaseSftpOutboundRule rule, String cron,
+      LocalInFlightFileListFilter inFlightFilter) {
+    if (!rule.isWatch()) {
+      return fileReadingMessageSource(rule, inFlightFilter);
+    }
+    log.info("[{}] Watch local folder {}", rule.getName(), rule.getLocal());
+    final ChainFileListFilter<File> filter = fileListFilter(rule);
+    if (Objects.nonNull(inFlightFilter)) {
+      // last in the chain, so that only the files accepted by the other filters are marked in flight
+      filter.addFilter(inFlightFilter);
+    }
+    final WatchingFileMessageSource messageSource = new WatchingFileMessageSource(
+        FileUtils.getFile(rule.getLocal()), filter, rule.getWatchDebounce(), cron);
+    registerCloseable(messageSource);
+    return messageSource;
+  }
+
+  /**
+   * Construct a {@link FileReadingMessageSource} instance by the given rule.
+   *
+   * @param rule           the rule to use
+   * @param inFlightFilter the filter of the files handed to the upload workers, may be null
    * @return a {@link FileReadingMessageSource} instance
    */
-  private FileReadingMessageSource fileReadingMessageSource(BaseSftpOutboundRule rule) {
-    CompositeFileListFilter<File> filter = new CompositeFileListFilter<>();
-    filter.addFilter(new SimplePatternFileListFilter(rule.getPattern()));
-    if (rule.isAcceptOnce()) {
-      filter.addFilter(new AcceptOnceFileListFilter<>());
+  private FileReadingMessageSource fileReadingMessageSource(BaseSftpOutboundRule rule,
+      LocalInFlightFileListFilter inFlightFilter) {
+    ChainFileListFilter<File> filter = fileListFilter(rule);
+    if (Objects.nonNull(inFlightFilter)) {
+      // last in the chain, so that only the files accepted by the other filters are marked in flight
+      filter.addFilter(inFlightFilter);
     }
 
     FileReadingMessageSource messageSource = new FileReadingMessageSource();
@@ -91,34 +301,213 @@ public class SftpOutboundFactory extends BaseSftpFactory {
   }
 
   /**
-   * Move the file from local to sent or send depending on status.
+   * Construct a {@link MessageSource} instance by the given rule, whose message holds all the files of a poll.
+   *
+   * @param rule   the rule to use
+   * @param filter the filter of the local files
+   * @return a {@link MessageSource} instance
+   */
+  private MessageSource<List<File>> batchMessageSource(BaseSftpOutboundRule rule,
+      ChainFileListFilter<File> filter) {
+    final File directory = FileUtils.getFile(rule.getLocal());
+    return () -> {
+      if (!directory.exists() && !directory.mkdirs()) {
+        log.warn("[{}] Failed to create local folder {}", rule.getName(), directory);
+        return null;
+      }
+      final File[] files = directory.listFiles(File::isFile);
+      if (Objects.isNull(files) || files.length == 0) {
+        return null;
+      }
+      Arrays.sort(files);
+      final List<File> accepted = filter.filterFiles(files);
+      return accepted.isEmpty() ? null : MessageBuilder.withPayload(accepted).build();
+    };
+  }
+
+  /**
+   * Construct the filter of the local files by the given rule, the sidecar files of a rule verified by them are moved
+   * along with their files instead of being uploaded.
+   * <p>
+   * The filters are chained, each one only sees the files accepted by the previous ones.
+   *
+   * @param rule the rule to use
+   * @return a {@link ChainFileListFilter} instance
+   */
+  private ChainFileListFilter<File> fileListFilter(BaseSftpOutboundRule rule) {
+    ChainFileListFilter<File> filter = new ChainFileListFilter<>();
+    filter.addFilter(new SimplePatternFileListFilter(rule.getPattern()));
+    if (ChecksumVerification.SIDECAR == rule.getChecksumVerification()) {
+      filter.addFilter(new LocalSidecarFileListFilter(rule.getChecksumAlgorithm()));
+    }
+    if (rule.isAcceptOnce()) {
+      filter.addFilter(new AcceptOnceFileListFilter<>());
+    }
+    return filter;
+  }
+
+  /**
+   * Construct the {@link BatchUploadMessageHandler} instance by the given rule, checksums are computed and verified as
+   * by the PUT gateway.
+   *
+   * @param rule the rule to use
+   * @return a {@link BatchUploadMessageHandler} instance
+   */
+  private BatchUploadMessageHandler batchUploadHandler(BaseSftpOutboundRule rule) {
+    final RemoteFileTemplate<DirEntry> template = template(rule);
+    final BatchUploadMessageHandler handler = new BatchUploadMessageHandler(template, rule.getRemote());
+    handler.setBandwidthLimiter(ruleBandwidthLimiter(rule.getName(), rule.getMaxBytesPerSecond()));
+    final ChecksumAlgorithm algorithm = rule.getChecksumAlgorithm();
+    if (Objects.nonNull(algorithm)) {
+      handler.setChecksumAlgorithm(algorithm);
+      if (ChecksumVerification.CHECK_FILE == rule.getChecksumVerification()) {
+        handler.setRemoteChecksumFunction(path -> ChecksumUtils.checkFile(template, path, algorithm));
+      }
+      handler.setChecksumVerifier(checksumVerifier(rule, algorithm));
+    }
+    return handler;
+  }
+
+  /**
+   * Construct the handler uploading a file by the given rule, a {@link ResumableUploadMessageHandler} if the rule
+   * resumes failed uploads, the PUT gateway otherwise.
+   *
+   * @param rule the rule to use
+   * @return a {@link AbstractReplyProducingMessageHandler} instance
+   */
+  private AbstractReplyProducingMessageHandler uploadHandler(BaseSftpOutboundRule rule) {
+    return rule.isResumableUpload() ? resumableUploadHandler(rule) : putGateway(rule);
+  }
+
+  /**
+   * Construct the {@link ResumableUploadMessageHandler} instance by the given rule.
+   * <p>
+   * A resumed upload trusts the size of the temporary file, unless a checksum algorithm is configured: then it is
+   * confirmed by the server's check-file result of the temporary file if configured, by reading back the part uploaded
+   * by the failed attempt if the rule verifies resumed uploads. The sidecar file is compared before the rename too.
+   *
+   * @param rule the rule to use
+   * @return a {@link ResumableUploadMessageHandler} instance
+   */
+  private ResumableUploadMessageHandler resumableUploadHandler(BaseSftpOutboundRule rule) {
+    final RemoteFileTemplate<DirEntry> template = template(rule);
+    final ResumableUploadMessageHandler handler = new ResumableUploadMessageHandler(template, rule.getRemote());
+    handler.setBandwidthLimiter(ruleBandwidthLimiter(rule.getName(), rule.getMaxBytesPerSecond()));
+    final ChecksumAlgorithm algorithm = rule.getChecksumAlgorithm();
+    handler.setChecksumAlgorithm(algorithm);
+    if (Objects.isNull(algorithm)) {
+      return handler;
+    }
+    if (ChecksumVerification.CHECK_FILE == rule.getChecksumVerification()) {
+      handler.setRemoteChecksumFunction(path -> ChecksumUtils.checkFile(template, path, algorithm));
+    }
+    handler.setVerifyResumedPrefix(rule.isVerifyResumedUpload());
+    handler.setChecksumVerifier(checksumVerifier(rule, algorithm));
+    return handler;
+  }
+
+  /**
+   * Construct the PUT {@link SftpOutboundGateway} instance by the given rule.
+   * <p>
+   * The file is uploaded through the bandwidth limiter of the rule, the schema's limit is enforced by its sessions. If
+   * a checksum algorithm is configured, the checksum is computed while the file is uploaded, and compared with the
+   * local sidecar file or the server's check-file result of the temporary file if configured, before the rename.
    *
    * @param rule the rule to use
+   * @return a {@link SftpOutboundGateway} instance
+   */
+  private SftpOutboundGateway putGateway(BaseSftpOutboundRule rule) {
+    final RemoteFileTemplate<DirEntry> template = template(rule);
+    final StreamingSftpOutboundGateway gateway = new StreamingSftpOutboundGateway(template);
+    gateway.setBandwidthLimiter(ruleBandwidthLimiter(rule.getName(), rule.getMaxBytesPerSecond()));
+    final ChecksumAlgorithm algorithm = rule.getChecksumAlgorithm();
+    if (Objects.isNull(algorithm)) {
+      return gateway;
+    }
+    gateway.setChecksumAlgorithm(algorithm);
+    if (ChecksumVerification.CHECK_FILE == rule.getChecksumVerification()) {
+      gateway.setRemoteChecksumFunction(path -> ChecksumUtils.checkFile(template, path, algorithm));
+    }
+    gateway.setChecksumVerifier(checksumVerifier(rule, algorithm));
+    return gateway;
+  }
+
+  /**
+   * Construct the verifier of the checksum of an uploaded file, which compares it with the local sidecar file if
+   * configured. The server's check-file result is compared by the upload handlers, against the temporary file.
+   *
+   * @param rule      the rule to use
+   * @param algorithm the checksum algorithm
+   * @return the verifier accepting the message of the file and its checksum
+   */
+  private BiConsumer<Message<?>, String> checksumVerifier(BaseSftpOutboundRule rule, ChecksumAlgorithm algorithm) {
+    return (message, checksum) -> {
+      final String fileName = (String) message.getHeaders().get(FileHeaders.FILENAME);
+      if (ChecksumVerification.SIDECAR == rule.getChecksumVerification()) {
+        ChecksumUtils.verify(fileName, checksum, ChecksumUtils.readSidecar(Paths.get(
+            ChecksumUtils.getSidecarFile(FileUtils.getFilePath(rule.getLocal(), fileName), algorithm))));
+      }
+      log.info("[{}] File {} has {} checksum {}", rule.getName(), fileName, algorithm, checksum);
+    };
+  }
+
+  /**
+   * Move the file from local to sent or send depending on status.
+   *
+   * @param rule           the rule to use
+   * @param inFlightFilter the filter of the files handed to the upload workers, may be null
    * @return a {@link AbstractReplyProducingMessageHandler} instance
    */
-  private AbstractReplyProducingMessageHandler moveToSent(BaseSftpOutboundRule rule) {
+  private AbstractReplyProducingMessageHandler moveToSent(BaseSftpOutboundRule rule,
+      LocalInFlightFileListFilter inFlightFilter) {
     return new AbstractReplyProducingMessageHandler() {
       @Override
       protected Object handleRequestMessage(Message<?> requestMessage) {
         final String fileName = (String) requestMessage.getHeaders().get(FileHeaders.FILENAME);
-        String targetFolder = rule.getArchive();
-        String targetFolderName = SftpConstants.ARCHIVE;
-        if (SftpConstants.FAILED.equals(
-            requestMessage.getHeaders().get(SftpConstants.PROCESS_STATUS))) {
-          targetFolder = FileUtils.normalizePath(
-              rule.getArchive() + File.separator + SftpConstants.ERROR);
-          targetFolderName = SftpConstants.ERROR;
+        try {
+          moveToSent(rule, requestMessage, fileName);
+        } finally {
+          if (Objects.nonNull(inFlightFilter)) {
+            inFlightFilter.release(fileName);
+          }
         }
-        String srcFile = FileUtils.getFilePath(rule.getLocal(), fileName);
-        String destFile = FileUtils.getFilePath(targetFolder, fileName);
-        FileUtils.moveFile(srcFile, destFile);
-        log.info("[{}] File {} has been moved to {} folder", rule.getName(), fileName, targetFolderName);
         // return null to terminate the flow
         return null;
       }
     };
   }
 
+  /**
+   * Move the given file, and its sidecar file if the rule is verified by them, from local to sent or send depending on
+   * the status of the given message.
+   *
+   * @param rule           the rule to use
+   * @param requestMessage the message of the file
+   * @param fileName       the file name
+   */
+  private void moveToSent(BaseSftpOutboundRule rule, Message<?> requestMessage, String fileName) {
+    String targetFolder = rule.getArchive();
+    String targetFolderName = SftpConstants.ARCHIVE;
+    if (SftpConstants.FAILED.equals(
+        requestMessage.getHeaders().get(SftpConstants.PROCESS_STATUS))) {
+      targetFolder = FileUtils.normalizePath(
+          rule.getArchive() + File.separator + SftpConstants.ERROR);
+      targetFolderName = SftpConstants.ERROR;
+    }
+    String srcFile = FileUtils.getFilePath(rule.getLocal(), fileName);
+    String destFile = FileUtils.getFilePath(targetFolder, fileName);
+    FileUtils.moveFile(srcFile, destFile);
+    log.info("[{}] File {} has been moved to {} folder", rule.getName(), fileName, targetFolderName);
+    if (ChecksumVerification.SIDECAR == rule.getChecksumVerification()) {
+      // the sidecar is filtered out of the listing, it leaves the local folder with its file
+      final String sidecarFile = ChecksumUtils.getSidecarFile(fileName, rule.getChecksumAlgorithm());
+      final String srcSidecarFile = FileUtils.getFilePath(rule.getLocal(), sidecarFile);
+      if (new File(srcSidecarFile).exists()) {
+        FileUtils.moveFile(srcSidecarFile, FileUtils.getFilePath(targetFolder, sidecarFile));
+      }
+    }
+  }
+
   /**
    * Construct a {@link RemoteFileTemplate} instance by the given rule.
    *
@@ -151,6 +540,33 @@ public class SftpOutboundFactory extends BaseSftpFactory {
     Assert.hasText(rule.getLocal(), "local must be configured");
     Assert.hasText(rule.getRemote(), "remote must be configured");
     Assert.hasText(rule.getArchive(), "archive must be configured");
+    if (rule.isWatch()) {
+      Assert.isTrue(rule.getWatchPollInterval() > 0, "watchPollInterval must be positive");
+      Assert.isTrue(rule.getWatchDebounce() >= 0, "watchDebounce must not be negative");
+    }
+    if (ChecksumVerification.NONE != rule.getChecksumVerification()) {
+      Assert.notNull(rule.getChecksumAlgorithm(), "checksumAlgorithm must be configured");
+    }
+    if (ChecksumVerification.CHECK_FILE == rule.getChecksumVerification()) {
+      Assert.notNull(rule.getChecksumAlgorithm().getCheckFileAlgorithm(),
+          "checksumAlgorithm is not supported by check-file");
+    }
+    if (rule.isVerifyResumedUpload()) {
+      Assert.isTrue(rule.isResumableUpload(), "verifyResumedUpload requires resumableUpload");
+      Assert.notNull(rule.getChecksumAlgorithm(), "checksumAlgorithm must be configured to verify resumed uploads");
+    }
+  }
+
+  /**
+   * Validate the given rule of a batch upload
+   *
+   * @param rule the rule to validate
+   */
+  private void validateBatchRule(BaseSftpOutboundRule rule) {
+    validateRule(rule);
+    Assert.isTrue(!rule.isWatch() && rule.getConcurrency() <= 1 && !rule.isResumableUpload()
+            && rule.getMaxMessagesPerPoll() <= 1,
+        "batch upload cannot be combined with watch, concurrency, resumable upload or maxMessagesPerPoll");
   }
 
   private IntegrationFlow info(String format, BaseSftpOutboundRule rule) {
@@ -0,0 +1,41 @@
+package cn.maiaimei.spring.integration.sftp.filters;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.integration.file.filters.AbstractFileListFilter;
+import org.springframework.integration.file.filters.ResettableFileListFilter;
+
+/**
+ * Rejects local files which have been handed to an upload worker but not yet moved out of the local folder.
+ * <p>
+ * When files are uploaded concurrently, the next poll may list a file again before its worker has moved it to the
+ * archive folder. The worker must {@link #release(String)} the file once it left the local folder or its processing
+ * failed.
+ */
+public class LocalInFlightFileListFilter extends AbstractFileListFilter<File>
+    implements ResettableFileListFilter<File> {
+
+  private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public boolean accept(File file) {
+    return this.inFlight.add(file.getName());
+  }
+
+  @Override
+  public boolean remove(File file) {
+    return release(file.getName());
+  }
+
+  /**
+   * Release the given file, so that it can be accepted by the next poll.
+   *
+   * @param fileName the local file name
+   * @return true if the file was in flight
+   */
+  public boolean release(String fileName) {
+    return fileName != null && this.inFlight.remove(fileName);
+  }
+
+}
@@ -0,0 +1,27 @@
+package cn.maiaimei.spring.integration.sftp.filters;
+
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.utils.ChecksumUtils;
+import java.io.File;
+import org.springframework.integration.file.filters.AbstractFileListFilter;
+import org.springframework.util.Assert;
+
+/**
+ * Rejects the local checksum sidecar files, e.g. {@code X.dat.sha256}, so that a sidecar matched by a broad pattern is
+ * not uploaded as a data file. The sidecar is read when its data file is verified, and moved along with it.
+ */
+public class LocalSidecarFileListFilter extends AbstractFileListFilter<File> {
+
+  private final String sidecarSuffix;
+
+  public LocalSidecarFileListFilter(ChecksumAlgorithm algorithm) {
+    Assert.notNull(algorithm, "algorithm must not be null");
+    this.sidecarSuffix = ChecksumUtils.getSidecarFile("", algorithm);
+  }
+
+  @Override
+  public boolean accept(File file) {
+    return file.isDirectory() || !file.getName().endsWith(this.sidecarSuffix);
+  }
+
+}
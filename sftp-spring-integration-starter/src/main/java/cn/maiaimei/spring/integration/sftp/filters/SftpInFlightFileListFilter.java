@@ -0,0 +1,68 @@
+package cn.maiaimei.spring.integration.sftp.filters;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.filters.AbstractFileListFilter;
+import org.springframework.integration.file.filters.ResettableFileListFilter;
+import org.springframework.integration.file.filters.ReversibleFileListFilter;
+
+/**
+ * Rejects remote files which have been handed to a download worker but not yet moved out of the
+ * source folder.
+ * <p>
+ * When files are downloaded concurrently, the next poll may list a file again before its worker
+ * has moved it to the temp folder. The worker must {@link #release(String)} the file once it left
+ * the source folder or its processing failed. The files dropped by the message source, e.g. on stop or beyond the max
+ * fetch size, are released by {@link #rollback(DirEntry, List)}.
+ */
+public class SftpInFlightFileListFilter extends AbstractFileListFilter<DirEntry>
+    implements ResettableFileListFilter<DirEntry>, ReversibleFileListFilter<DirEntry> {
+
+  private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public boolean accept(DirEntry file) {
+    return this.inFlight.add(file.getFilename());
+  }
+
+  @Override
+  public boolean remove(DirEntry file) {
+    return release(file.getFilename());
+  }
+
+  @Override
+  public void rollback(DirEntry file, List<DirEntry> files) {
+    boolean rollingBack = false;
+    for (DirEntry fileToRollback : files) {
+      if (fileToRollback.equals(file)) {
+        rollingBack = true;
+      }
+      if (rollingBack) {
+        remove(fileToRollback);
+      }
+    }
+  }
+
+  /**
+   * Whether the given file is in flight.
+   *
+   * @param fileName the remote file name
+   * @return true if the file is in flight
+   */
+  public boolean isInFlight(String fileName) {
+    return this.inFlight.contains(fileName);
+  }
+
+  /**
+   * Release the given file, so that it can be accepted by the next poll.
+   *
+   * @param fileName the remote file name
+   * @return true if the file was in flight
+   */
+  public boolean release(String fileName) {
+    return fileName != null && this.inFlight.remove(fileName);
+  }
+
+}
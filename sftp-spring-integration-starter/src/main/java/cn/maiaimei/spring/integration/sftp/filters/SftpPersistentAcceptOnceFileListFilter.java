@@ -0,0 +1,135 @@
+package cn.maiaimei.spring.integration.sftp.filters;
+
+import cn.maiaimei.spring.integration.sftp.metadata.MappedLogMetadataStore;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.filters.ResettableFileListFilter;
+import org.springframework.integration.file.filters.ReversibleFileListFilter;
+import org.springframework.util.Assert;
+
+/**
+ * Accepts a remote file only once, as long as its name, size and modified time do not change.
+ * <p>
+ * The accepted files are remembered by a {@link MappedLogMetadataStore}, so they are not accepted again after a
+ * restart. A file is only pending once accepted, it is written to the store when {@link #commit(String)} is called,
+ * i.e. once it has been moved out of the source folder. A pending file dropped by the message source is forgotten by
+ * {@link #rollback(DirEntry, List)}, and a crash before the commit leaves nothing in the store, so the file is listed
+ * again. The store is flushed once per listing, not once per file.
+ */
+public class SftpPersistentAcceptOnceFileListFilter implements ResettableFileListFilter<DirEntry>,
+    ReversibleFileListFilter<DirEntry>, Closeable {
+
+  private final MappedLogMetadataStore store;
+
+  private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+  public SftpPersistentAcceptOnceFileListFilter(MappedLogMetadataStore store) {
+    Assert.notNull(store, "store must not be null");
+    this.store = store;
+  }
+
+  @Override
+  public List<DirEntry> filterFiles(DirEntry[] files) {
+    // the files committed since the last listing are forced to the storage device
+    this.store.flush();
+    if (Objects.isNull(files) || files.length == 0) {
+      return Collections.emptyList();
+    }
+    List<DirEntry> accepted = new ArrayList<>();
+    for (DirEntry file : files) {
+      if (accept(file)) {
+        accepted.add(file);
+      }
+    }
+    return accepted;
+  }
+
+  @Override
+  public boolean accept(DirEntry file) {
+    final long fingerprint = fingerprint(file);
+    if (this.store.contains(fingerprint)) {
+      return false;
+    }
+    // a pending file changed since it was accepted is accepted again
+    return !Objects.equals(this.pending.put(file.getFilename(), fingerprint), fingerprint);
+  }
+
+  @Override
+  public boolean supportsSingleFileFiltering() {
+    return true;
+  }
+
+  @Override
+  public boolean remove(DirEntry file) {
+    final long fingerprint = fingerprint(file);
+    final boolean pendingRemoved = this.pending.remove(file.getFilename(), fingerprint);
+    return this.store.remove(fingerprint) || pendingRemoved;
+  }
+
+  @Override
+  public void rollback(DirEntry file, List<DirEntry> files) {
+    boolean rollingBack = false;
+    for (DirEntry fileToRollback : files) {
+      if (fileToRollback.equals(file)) {
+        rollingBack = true;
+      }
+      if (rollingBack) {
+        remove(fileToRollback);
+      }
+    }
+  }
+
+  /**
+   * Write the given pending file to the store, so that it is not accepted again, even after a restart.
+   *
+   * @param fileName the remote file name
+   * @return true if the file was pending
+   */
+  public boolean commit(String fileName) {
+    final Long fingerprint = Objects.isNull(fileName) ? null : this.pending.remove(fileName);
+    return Objects.nonNull(fingerprint) && this.store.add(fingerprint);
+  }
+
+  /**
+   * Whether the given file has been accepted, without accepting it.
+   *
+   * @param file the remote file
+   * @return true if the file has been accepted
+   */
+  public boolean isAccepted(DirEntry file) {
+    final long fingerprint = fingerprint(file);
+    return this.store.contains(fingerprint) || Objects.equals(this.pending.get(file.getFilename()), fingerprint);
+  }
+
+  /**
+   * Forget the given file, so that it can be accepted by the next poll.
+   *
+   * @param fileName the remote file name
+   * @param size     the remote file size
+   * @param modified the remote file modified time in milliseconds
+   * @return true if the file was accepted before
+   */
+  public boolean remove(String fileName, long size, long modified) {
+    final long fingerprint = MappedLogMetadataStore.fingerprint(fileName, size, modified);
+    final boolean pendingRemoved = this.pending.remove(fileName, fingerprint);
+    return this.store.remove(fingerprint) || pendingRemoved;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.store.close();
+  }
+
+  private long fingerprint(DirEntry file) {
+    return MappedLogMetadataStore.fingerprint(file.getFilename(), file.getAttributes().getSize(),
+        file.getAttributes().getModifyTime().toMillis());
+  }
+
+}
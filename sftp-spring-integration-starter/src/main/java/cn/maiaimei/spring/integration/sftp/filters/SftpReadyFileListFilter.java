@@ -0,0 +1,64 @@
+package cn.maiaimei.spring.integration.sftp.filters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.filters.FileListFilter;
+import org.springframework.util.Assert;
+
+/**
+ * Accepts a remote file only when its ready file exists in the same listing, e.g. {@code X.dat} is accepted when
+ * {@code X.dat.ok} is listed too.
+ * <p>
+ * The ready files are matched in memory against the listing of the poll, no extra round trip is made per file. The
+ * ready files themselves are never accepted, so this filter must run before the pattern filter.
+ */
+public class SftpReadyFileListFilter implements FileListFilter<DirEntry> {
+
+  private final String readyFileSuffix;
+
+  public SftpReadyFileListFilter(String readyFileSuffix) {
+    Assert.hasText(readyFileSuffix, "readyFileSuffix must not be empty");
+    this.readyFileSuffix = readyFileSuffix;
+  }
+
+  @Override
+  public List<DirEntry> filterFiles(DirEntry[] files) {
+    if (Objects.isNull(files) || files.length == 0) {
+      return Collections.emptyList();
+    }
+    Set<String> fileNames = new HashSet<>(files.length * 2);
+    for (DirEntry file : files) {
+      fileNames.add(file.getFilename());
+    }
+    List<DirEntry> accepted = new ArrayList<>();
+    for (DirEntry file : files) {
+      final String fileName = file.getFilename();
+      if (!file.getAttributes().isDirectory()
+          && !isReadyFile(fileName)
+          && fileNames.contains(getReadyFileName(fileName))) {
+        accepted.add(file);
+      }
+    }
+    return accepted;
+  }
+
+  /**
+   * Get the ready file name of the given file.
+   *
+   * @param fileName the file name
+   * @return the ready file name
+   */
+  public String getReadyFileName(String fileName) {
+    return fileName + this.readyFileSuffix;
+  }
+
+  private boolean isReadyFile(String fileName) {
+    return fileName.endsWith(this.readyFileSuffix);
+  }
+
+}
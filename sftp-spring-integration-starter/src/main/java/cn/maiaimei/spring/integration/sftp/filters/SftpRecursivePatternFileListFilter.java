@@ -0,0 +1,58 @@
+package cn.maiaimei.spring.integration.sftp.filters;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.filters.AbstractFileListFilter;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.Assert;
+
+/**
+ * Accepts a remote file of a recursive listing when its name matches the pattern of its directory.
+ * <p>
+ * The file name of a recursive listing is the path relative to the listed directory. Its directory part, e.g.
+ * {@code 2024/01/31/ACME}, is matched against the Ant style keys of the directory patterns in order, and the first match
+ * gives the pattern of the file name part. Directories without a match use the default pattern.
+ */
+public class SftpRecursivePatternFileListFilter extends AbstractFileListFilter<DirEntry> {
+
+  private final AntPathMatcher matcher = new AntPathMatcher();
+
+  private final String pattern;
+
+  private final Map<String, String> directoryPatterns;
+
+  /**
+   * Construct a recursive pattern filter.
+   *
+   * @param pattern           the default pattern of the file names
+   * @param directoryPatterns the patterns of the file names by the pattern of their relative directory, may be null
+   */
+  public SftpRecursivePatternFileListFilter(String pattern, Map<String, String> directoryPatterns) {
+    Assert.hasText(pattern, "pattern must not be empty");
+    this.pattern = pattern;
+    this.directoryPatterns = Objects.isNull(directoryPatterns)
+        ? Collections.emptyMap()
+        : new LinkedHashMap<>(directoryPatterns);
+  }
+
+  @Override
+  public boolean accept(DirEntry file) {
+    final String path = file.getFilename();
+    final int index = path.lastIndexOf('/');
+    final String directory = index < 0 ? "" : path.substring(0, index);
+    return this.matcher.match(getPattern(directory), path.substring(index + 1));
+  }
+
+  private String getPattern(String directory) {
+    for (Map.Entry<String, String> entry : this.directoryPatterns.entrySet()) {
+      if (this.matcher.match(entry.getKey(), directory)) {
+        return entry.getValue();
+      }
+    }
+    return this.pattern;
+  }
+
+}
@@ -0,0 +1,27 @@
+package cn.maiaimei.spring.integration.sftp.filters;
+
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.utils.ChecksumUtils;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.filters.AbstractFileListFilter;
+import org.springframework.util.Assert;
+
+/**
+ * Rejects the checksum sidecar files, e.g. {@code X.dat.sha256}, so that a sidecar matched by a broad pattern is not
+ * downloaded as a data file. The sidecar is read when its data file is verified, and moved along with it.
+ */
+public class SftpSidecarFileListFilter extends AbstractFileListFilter<DirEntry> {
+
+  private final String sidecarSuffix;
+
+  public SftpSidecarFileListFilter(ChecksumAlgorithm algorithm) {
+    Assert.notNull(algorithm, "algorithm must not be null");
+    this.sidecarSuffix = ChecksumUtils.getSidecarFile("", algorithm);
+  }
+
+  @Override
+  public boolean accept(DirEntry file) {
+    return file.getAttributes().isDirectory() || !file.getFilename().endsWith(this.sidecarSuffix);
+  }
+
+}
@@ -0,0 +1,150 @@
+package cn.maiaimei.spring.integration.sftp.filters;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.filters.FileListFilter;
+import org.springframework.integration.file.filters.ResettableFileListFilter;
+import org.springframework.integration.file.filters.ReversibleFileListFilter;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Keeps a watermark of modified time plus file name over the remote listing, so that an incremental listing can skip
+ * the entries at or below it while reading the remote directory.
+ * <p>
+ * The listed entries are passed to the delegate filter. The watermark then advances over the entries which will never
+ * be accepted, i.e. rejected permanently by the delegate, and stops at the first entry which may still be accepted
+ * later: an accepted, in flight, not yet ready or failed file. Entries of the newest modified time of the listing are
+ * never passed, since more files of the same second may still arrive.
+ * <p>
+ * The watermark assumes that a new remote file is not older than the files already listed, e.g. an upload preserving
+ * the original modified time may be missed. A ready file must not be older than its data file either.
+ */
+public class SftpWatermarkFileListFilter implements ResettableFileListFilter<DirEntry>,
+    ReversibleFileListFilter<DirEntry> {
+
+  private static final Comparator<DirEntry> ORDER = Comparator
+      .comparingLong(SftpWatermarkFileListFilter::getModified)
+      .thenComparing(DirEntry::getFilename);
+
+  private final FileListFilter<DirEntry> delegate;
+
+  private final Predicate<DirEntry> rejectedPermanently;
+
+  private final String readyFileSuffix;
+
+  private volatile Watermark watermark;
+
+  /**
+   * Construct a watermark filter.
+   *
+   * @param delegate            the filter to apply to the listed entries
+   * @param rejectedPermanently whether an entry rejected by the delegate will never be accepted
+   * @param readyFileSuffix     the ready file suffix, a ready file is kept above the watermark while its data file is
+   *                            listed, may be null
+   */
+  public SftpWatermarkFileListFilter(FileListFilter<DirEntry> delegate, Predicate<DirEntry> rejectedPermanently,
+      String readyFileSuffix) {
+    Assert.notNull(delegate, "delegate must not be null");
+    Assert.notNull(rejectedPermanently, "rejectedPermanently must not be null");
+    this.delegate = delegate;
+    this.rejectedPermanently = rejectedPermanently;
+    this.readyFileSuffix = readyFileSuffix;
+  }
+
+  /**
+   * Whether the given entry is at or below the watermark and can be skipped by the listing.
+   *
+   * @param file the remote entry
+   * @return true if the entry can be skipped
+   */
+  public boolean isBelowWatermark(DirEntry file) {
+    final Watermark current = this.watermark;
+    if (Objects.isNull(current)) {
+      return false;
+    }
+    final long modified = getModified(file);
+    return modified < current.modified()
+        || modified == current.modified() && file.getFilename().compareTo(current.fileName()) <= 0;
+  }
+
+  @Override
+  public List<DirEntry> filterFiles(DirEntry[] files) {
+    if (Objects.isNull(files) || files.length == 0) {
+      return Collections.emptyList();
+    }
+    final List<DirEntry> accepted = this.delegate.filterFiles(files);
+    advance(files, accepted);
+    return accepted;
+  }
+
+  @Override
+  public boolean remove(DirEntry file) {
+    return this.delegate instanceof ResettableFileListFilter<DirEntry> resettable && resettable.remove(file);
+  }
+
+  @Override
+  public void rollback(DirEntry file, List<DirEntry> files) {
+    // the watermark never passes an accepted file, the rolled back files are listed again
+    if (this.delegate instanceof ReversibleFileListFilter<DirEntry> reversible) {
+      reversible.rollback(file, files);
+    }
+  }
+
+  /**
+   * Reset the watermark, so that the next listing reads the whole remote directory.
+   */
+  public void reset() {
+    this.watermark = null;
+  }
+
+  private void advance(DirEntry[] files, List<DirEntry> accepted) {
+    final Set<String> acceptedNames = new HashSet<>(accepted.size() * 2);
+    accepted.forEach(file -> acceptedNames.add(file.getFilename()));
+    final Set<String> fileNames = new HashSet<>(files.length * 2);
+    long newest = Long.MIN_VALUE;
+    for (DirEntry file : files) {
+      fileNames.add(file.getFilename());
+      newest = Math.max(newest, getModified(file));
+    }
+    final DirEntry[] sorted = files.clone();
+    Arrays.sort(sorted, ORDER);
+    DirEntry last = null;
+    for (DirEntry file : sorted) {
+      if (getModified(file) >= newest || !isSettled(file, acceptedNames, fileNames)) {
+        break;
+      }
+      last = file;
+    }
+    if (Objects.nonNull(last)) {
+      this.watermark = new Watermark(getModified(last), last.getFilename());
+    }
+  }
+
+  private boolean isSettled(DirEntry file, Set<String> acceptedNames, Set<String> fileNames) {
+    final String fileName = file.getFilename();
+    if (acceptedNames.contains(fileName)) {
+      return false;
+    }
+    if (StringUtils.hasText(this.readyFileSuffix) && fileName.endsWith(this.readyFileSuffix)) {
+      return !fileNames.contains(fileName.substring(0, fileName.length() - this.readyFileSuffix.length()));
+    }
+    return this.rejectedPermanently.test(file);
+  }
+
+  private static long getModified(DirEntry file) {
+    return file.getAttributes().getModifyTime().toMillis();
+  }
+
+  private record Watermark(long modified, String fileName) {
+
+  }
+
+}
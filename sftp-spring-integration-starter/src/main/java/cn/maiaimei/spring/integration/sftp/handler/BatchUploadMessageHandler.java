@@ -0,0 +1,225 @@
+package cn.maiaimei.spring.integration.sftp.handler;
+
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumInputStream;
+import cn.maiaimei.spring.integration.sftp.checksum.StreamingDigest;
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.throttle.ThrottledInputStream;
+import cn.maiaimei.spring.integration.sftp.utils.ChecksumUtils;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.file.remote.RemoteFileTemplate;
+import org.springframework.integration.file.remote.RemoteFileUtils;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Uploads all the files of a poll through one session, instead of checking out a session, checking the remote
+ * directory and renaming the temporary file for each file.
+ * <p>
+ * The remote directory is created once, then the files are written one after another under their temporary names,
+ * one file at a time, verified and renamed at the end, so that a file whose checksum differs is never published under
+ * its final name but removed. The batch saves the session checkout and the directory check of each file, it does not
+ * upload the files in parallel. The reply is the list of the messages of the
+ * files, in order, each one having its own {@link SftpConstants#PROCESS_STATUS} header, {@link SftpConstants#SUCCESS}
+ * or {@link SftpConstants#FAILED}, so that a file failing does not fail the others. If the session cannot be checked
+ * out, the whole batch fails.
+ */
+public class BatchUploadMessageHandler extends AbstractReplyProducingMessageHandler {
+
+  private final RemoteFileTemplate<DirEntry> template;
+
+  private final String remoteDirectory;
+
+  private ChecksumAlgorithm checksumAlgorithm;
+
+  private Function<String, String> remoteChecksumFunction;
+
+  private BiConsumer<Message<?>, String> checksumVerifier;
+
+  private BandwidthLimiter bandwidthLimiter = BandwidthLimiter.NONE;
+
+  /**
+   * Construct an instance.
+   *
+   * @param template        the template to use
+   * @param remoteDirectory the remote directory to upload the files to
+   */
+  public BatchUploadMessageHandler(RemoteFileTemplate<DirEntry> template, String remoteDirectory) {
+    Assert.notNull(template, "template must not be null");
+    Assert.hasText(remoteDirectory, "remoteDirectory must not be empty");
+    this.template = template;
+    this.remoteDirectory = remoteDirectory;
+  }
+
+  /**
+   * Set the algorithm of the checksum computed while a file is uploaded, null for no checksum.
+   *
+   * @param checksumAlgorithm the checksum algorithm
+   */
+  public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+    this.checksumAlgorithm = checksumAlgorithm;
+  }
+
+  /**
+   * Set the function computing the checksum of a remote file on the server, e.g. by check-file. It is called with the
+   * temporary file, before the rename.
+   *
+   * @param remoteChecksumFunction the function accepting the remote path and returning its checksum
+   */
+  public void setRemoteChecksumFunction(Function<String, String> remoteChecksumFunction) {
+    this.remoteChecksumFunction = remoteChecksumFunction;
+  }
+
+  /**
+   * Set the verifier which accepts the message of a file and its computed checksum, and throws an exception if the
+   * uploaded file is not the expected one. It is called before the temporary file is renamed.
+   */
+  public void setChecksumVerifier(BiConsumer<Message<?>, String> checksumVerifier) {
+    this.checksumVerifier = checksumVerifier;
+  }
+
+  /**
+   * Set the limiter the uploaded bytes are acquired from.
+   *
+   * @param bandwidthLimiter the bandwidth limiter
+   */
+  public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+    Assert.notNull(bandwidthLimiter, "bandwidthLimiter must not be null");
+    this.bandwidthLimiter = bandwidthLimiter;
+  }
+
+  @Override
+  protected Object handleRequestMessage(Message<?> requestMessage) {
+    final List<?> files = (List<?>) requestMessage.getPayload();
+    if (files.isEmpty()) {
+      return null;
+    }
+    final List<Upload> uploads = new ArrayList<>(files.size());
+    for (Object file : files) {
+      uploads.add(new Upload((File) file, getMessageBuilderFactory().withPayload(file)
+          .copyHeaders(requestMessage.getHeaders())
+          .setHeader(FileHeaders.FILENAME, ((File) file).getName())
+          .build()));
+    }
+    this.template.execute(session -> {
+      RemoteFileUtils.makeDirectories(this.remoteDirectory, session, this.template.getRemoteFileSeparator(),
+          logger.getLog());
+      uploads.forEach(upload -> write(session, upload));
+      return null;
+    });
+    // the remote checksum function checks out its own session
+    uploads.forEach(this::verify);
+    this.template.execute(session -> {
+      uploads.forEach(upload -> rename(session, upload));
+      return null;
+    });
+    final List<Message<?>> replies = new ArrayList<>(uploads.size());
+    for (Upload upload : uploads) {
+      replies.add(getMessageBuilderFactory().fromMessage(upload.message)
+          .setHeader(SftpConstants.PROCESS_STATUS,
+              upload.failure == null ? SftpConstants.SUCCESS : SftpConstants.FAILED)
+          .setHeader(SftpConstants.CHECKSUM, upload.checksum)
+          .build());
+    }
+    return replies;
+  }
+
+  private void write(Session<DirEntry> session, Upload upload) {
+    final StreamingDigest digest = this.checksumAlgorithm != null ? this.checksumAlgorithm.newDigest() : null;
+    try (InputStream fileStream = Files.newInputStream(upload.file.toPath())) {
+      InputStream stream = new ThrottledInputStream(new BufferedInputStream(fileStream), this.bandwidthLimiter);
+      if (digest != null) {
+        stream = new ChecksumInputStream(stream, digest);
+      }
+      session.write(stream, upload.tempPath(this));
+      if (digest != null) {
+        upload.checksum = digest.hex();
+      }
+    } catch (IOException | RuntimeException e) {
+      fail(session, upload, e);
+    }
+  }
+
+  private void verify(Upload upload) {
+    if (upload.failure != null || upload.checksum == null) {
+      return;
+    }
+    final String tempPath = upload.tempPath(this);
+    try {
+      if (this.remoteChecksumFunction != null) {
+        ChecksumUtils.verify(tempPath, this.remoteChecksumFunction.apply(tempPath), upload.checksum);
+      }
+      if (this.checksumVerifier != null) {
+        this.checksumVerifier.accept(upload.message, upload.checksum);
+      }
+    } catch (RuntimeException e) {
+      upload.failure = e;
+      logger.error(e, () -> "Failed to verify " + upload.file + " in batch");
+      try {
+        this.template.remove(tempPath);
+      } catch (RuntimeException ex) {
+        logger.debug(ex, () -> "Failed to remove the temporary file of " + upload.file);
+      }
+    }
+  }
+
+  private void rename(Session<DirEntry> session, Upload upload) {
+    if (upload.failure != null) {
+      return;
+    }
+    try {
+      session.rename(upload.tempPath(this), upload.path(this));
+    } catch (IOException | RuntimeException e) {
+      fail(session, upload, e);
+    }
+  }
+
+  private void fail(Session<DirEntry> session, Upload upload, Exception e) {
+    upload.failure = e;
+    logger.error(e, () -> "Failed to upload " + upload.file + " in batch");
+    try {
+      session.remove(upload.tempPath(this));
+    } catch (IOException | RuntimeException ex) {
+      logger.debug(ex, () -> "Failed to remove the temporary file of " + upload.file);
+    }
+  }
+
+  private static final class Upload {
+
+    private final File file;
+
+    private final Message<?> message;
+
+    private String checksum;
+
+    private Exception failure;
+
+    private Upload(File file, Message<?> message) {
+      this.file = file;
+      this.message = message;
+    }
+
+    private String path(BatchUploadMessageHandler handler) {
+      return handler.remoteDirectory + handler.template.getRemoteFileSeparator() + this.file.getName();
+    }
+
+    private String tempPath(BatchUploadMessageHandler handler) {
+      return path(handler) + handler.template.getTemporaryFileSuffix();
+    }
+
+  }
+
+}
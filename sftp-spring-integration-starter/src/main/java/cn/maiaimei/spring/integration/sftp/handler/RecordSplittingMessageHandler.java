@@ -0,0 +1,112 @@
+package cn.maiaimei.spring.integration.sftp.handler;
+
+import cn.maiaimei.spring.integration.sftp.constants.RecordFormat;
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.record.RecordReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.util.Assert;
+
+/**
+ * Split the {@link InputStream} payload into one message per record and send them to the record channel, instead of
+ * writing the stream to a local file.
+ * <p>
+ * The records are read and sent one by one, the send blocks while a bounded record channel, e.g. a
+ * {@code QueueChannel} with a capacity, is full, so that a slow consumer slows down the read of the remote file. The
+ * record messages carry the remote file headers, the message id of the file as correlation id and the 1-based record
+ * index as sequence number. The reply is the request message with the number of records as payload.
+ */
+public class RecordSplittingMessageHandler extends AbstractReplyProducingMessageHandler {
+
+  private final RecordFormat format;
+
+  private final String recordChannelName;
+
+  private Charset charset = StandardCharsets.UTF_8;
+
+  private long sendTimeout = -1;
+
+  private volatile MessageChannel recordChannel;
+
+  /**
+   * Construct a record splitting handler.
+   *
+   * @param format            the record format
+   * @param recordChannelName the name of the channel to send the records to
+   */
+  public RecordSplittingMessageHandler(RecordFormat format, String recordChannelName) {
+    Assert.notNull(format, "format must not be null");
+    Assert.hasText(recordChannelName, "recordChannelName must not be empty");
+    this.format = format;
+    this.recordChannelName = recordChannelName;
+  }
+
+  /**
+   * Set the charset of the remote files, UTF-8 by default.
+   *
+   * @param charset the charset
+   */
+  public void setCharset(Charset charset) {
+    Assert.notNull(charset, "charset must not be null");
+    this.charset = charset;
+  }
+
+  /**
+   * Set the max time in milliseconds to wait for the record channel to accept a record, negative to wait as long as
+   * needed.
+   *
+   * @param sendTimeout the send timeout
+   */
+  public void setSendTimeout(long sendTimeout) {
+    this.sendTimeout = sendTimeout;
+  }
+
+  @Override
+  protected Object handleRequestMessage(Message<?> requestMessage) {
+    final MessageChannel channel = getRecordChannel();
+    final Object remoteFile = requestMessage.getHeaders().get(FileHeaders.REMOTE_FILE);
+    long count = 0;
+    try (RecordReader reader = RecordReader.of(this.format, (InputStream) requestMessage.getPayload(),
+        this.charset)) {
+      Object record;
+      while ((record = reader.read()) != null) {
+        count++;
+        final Message<?> message = getMessageBuilderFactory().withPayload(record)
+            .setHeader(FileHeaders.REMOTE_DIRECTORY, requestMessage.getHeaders().get(FileHeaders.REMOTE_DIRECTORY))
+            .setHeader(FileHeaders.REMOTE_FILE, remoteFile)
+            .setCorrelationId(requestMessage.getHeaders().getId())
+            .setSequenceNumber((int) Math.min(count, Integer.MAX_VALUE))
+            .build();
+        final boolean sent = this.sendTimeout < 0 ? channel.send(message) : channel.send(message, this.sendTimeout);
+        if (!sent) {
+          throw new MessageDeliveryException(message,
+              "Failed to send record " + count + " of " + remoteFile + " within " + this.sendTimeout + " ms");
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read record " + (count + 1) + " of " + remoteFile, e);
+    }
+    final long records = count;
+    logger.info(() -> String.format("Split %s into %d %s records", remoteFile, records, this.format));
+    return getMessageBuilderFactory().withPayload(records)
+        .copyHeaders(requestMessage.getHeaders())
+        .setHeader(SftpConstants.RECORD_COUNT, records)
+        .build();
+  }
+
+  private MessageChannel getRecordChannel() {
+    if (this.recordChannel == null) {
+      this.recordChannel = getChannelResolver().resolveDestination(this.recordChannelName);
+    }
+    return this.recordChannel;
+  }
+
+}
@@ -0,0 +1,178 @@
+package cn.maiaimei.spring.integration.sftp.handler;
+
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.checksum.StreamingDigest;
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.Attributes;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.apache.sshd.sftp.client.SftpClient.OpenMode;
+import org.springframework.integration.file.FileNameGenerator;
+import org.springframework.integration.file.remote.RemoteFileTemplate;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Download a remote file to the local folder, resuming from the bytes already written by a failed attempt.
+ * <p>
+ * The bytes are written to a local partial file, whose size records the progress of the download. Each attempt
+ * reopens the remote file and continues at that offset through the read-ahead stream of the SFTP client, skipped to
+ * the offset without reading the bytes before it, so a retry does not start over from byte zero and keeps as many read
+ * requests in flight as a streaming GET. The partial file name contains the hash of the remote path, the remote size
+ * and modified time, so neither a file with the same name in another folder nor a changed remote file ever resumes
+ * from it.
+ * <p>
+ * If a checksum algorithm is set, the checksum is computed while the bytes are written and put in the
+ * {@link SftpConstants#CHECKSUM} header, only the bytes of a resumed partial file are read back from the local disk.
+ * <p>
+ * The reply payload is the downloaded {@link File}.
+ */
+public class ResumableDownloadMessageHandler extends AbstractReplyProducingMessageHandler {
+
+  public static final String PARTIAL_FILE_SUFFIX = ".part";
+
+  private static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+  private final RemoteFileTemplate<DirEntry> template;
+  private final Path localDirectory;
+  private final Function<Message<?>, String> remoteFileFunction;
+
+  private FileNameGenerator fileNameGenerator;
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
+  private ChecksumAlgorithm checksumAlgorithm;
+  private BandwidthLimiter bandwidthLimiter = BandwidthLimiter.NONE;
+
+  /**
+   * Construct an instance.
+   *
+   * @param template           the template to use
+   * @param localDirectory     the local folder to download to
+   * @param remoteFileFunction the function to get the remote file path from a message
+   */
+  public ResumableDownloadMessageHandler(RemoteFileTemplate<DirEntry> template, Path localDirectory,
+      Function<Message<?>, String> remoteFileFunction) {
+    Assert.notNull(template, "template must not be null");
+    Assert.notNull(localDirectory, "localDirectory must not be null");
+    Assert.notNull(remoteFileFunction, "remoteFileFunction must not be null");
+    this.template = template;
+    this.localDirectory = localDirectory;
+    this.remoteFileFunction = remoteFileFunction;
+  }
+
+  /**
+   * Set the file name generator of the downloaded file, default is the remote file name.
+   */
+  public void setFileNameGenerator(FileNameGenerator fileNameGenerator) {
+    this.fileNameGenerator = fileNameGenerator;
+  }
+
+  /**
+   * Set the number of bytes requested by each read, e.g. the buffer size of the connection. Default is 32KB.
+   */
+  public void setBufferSize(int bufferSize) {
+    Assert.isTrue(bufferSize > 0, "bufferSize must be greater than 0");
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Set the algorithm of the checksum to compute during the download.
+   */
+  public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+    this.checksumAlgorithm = checksumAlgorithm;
+  }
+
+  /**
+   * Set the limiter the downloaded bytes are acquired from.
+   *
+   * @param bandwidthLimiter the bandwidth limiter
+   */
+  public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+    Assert.notNull(bandwidthLimiter, "bandwidthLimiter must not be null");
+    this.bandwidthLimiter = bandwidthLimiter;
+  }
+
+  @Override
+  protected Object handleRequestMessage(Message<?> requestMessage) {
+    final String remoteFile = this.remoteFileFunction.apply(requestMessage);
+    final String remoteFileName = remoteFile.substring(remoteFile.lastIndexOf('/') + 1);
+    final Download result = this.template.execute(session -> {
+      final SftpClient client = (SftpClient) session.getClientInstance();
+      final Attributes attributes = client.stat(remoteFile);
+      final Path file = this.localDirectory.resolve(String.format("%s.%08x.%d.%d%s", remoteFileName,
+          remoteFile.hashCode(), attributes.getSize(), attributes.getModifyTime().toMillis(), PARTIAL_FILE_SUFFIX));
+      return new Download(file, download(client, remoteFile, file));
+    });
+    final Path partialFile = result.partialFile();
+    final String fileName = this.fileNameGenerator != null
+        ? this.fileNameGenerator.generateFileName(requestMessage)
+        : remoteFileName;
+    final Path localFile = this.localDirectory.resolve(fileName);
+    try {
+      Files.createDirectories(localFile.getParent());
+      Files.move(partialFile, localFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to rename " + partialFile + " to " + localFile, e);
+    }
+    return getMessageBuilderFactory().withPayload(localFile.toFile())
+        .copyHeaders(requestMessage.getHeaders())
+        .setHeader(SftpConstants.CHECKSUM, result.checksum())
+        .build();
+  }
+
+  /**
+   * Download the remote file to the partial file.
+   *
+   * @return the checksum, or null if no checksum algorithm is set
+   */
+  private String download(SftpClient client, String remoteFile, Path partialFile) throws IOException {
+    try (FileChannel out = FileChannel.open(partialFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+        InputStream in = client.read(remoteFile, this.bufferSize, OpenMode.Read)) {
+      final long written = out.size();
+      final byte[] bytes = new byte[this.bufferSize];
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      final StreamingDigest digest = this.checksumAlgorithm != null ? this.checksumAlgorithm.newDigest() : null;
+      if (written > 0) {
+        logger.info(() -> String.format("Resume downloading %s at byte %d", remoteFile, written));
+        if (digest != null) {
+          int read;
+          while ((read = out.read(buffer.clear())) > 0) {
+            digest.update(bytes, 0, read);
+          }
+        }
+      }
+      // positions the stream before any request is sent, the read ahead starts at the offset
+      in.skipNBytes(written);
+      out.position(written);
+      int read;
+      while ((read = in.read(bytes)) > 0) {
+        this.bandwidthLimiter.acquire(read);
+        buffer.clear().limit(read);
+        while (buffer.hasRemaining()) {
+          out.write(buffer);
+        }
+        if (digest != null) {
+          digest.update(bytes, 0, read);
+        }
+      }
+      return digest != null ? digest.hex() : null;
+    }
+  }
+
+  private record Download(Path partialFile, String checksum) {
+
+  }
+
+}
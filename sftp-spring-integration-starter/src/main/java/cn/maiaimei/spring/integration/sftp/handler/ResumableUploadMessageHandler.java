@@ -0,0 +1,241 @@
+package cn.maiaimei.spring.integration.sftp.handler;
+
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumInputStream;
+import cn.maiaimei.spring.integration.sftp.checksum.StreamingDigest;
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.throttle.ThrottledInputStream;
+import cn.maiaimei.spring.integration.sftp.utils.ChecksumUtils;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.remote.RemoteFileTemplate;
+import org.springframework.integration.file.remote.RemoteFileUtils;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Uploads a file so that a failed upload is resumed by the next attempt, instead of being uploaded again from
+ * scratch.
+ * <p>
+ * The temporary file left by a failed attempt is kept, the next attempt stats it, seeks the local file to its size and
+ * appends the rest of the file. By default the size of the temporary file is trusted. If a checksum algorithm is set,
+ * the remote temporary file is confirmed before it is renamed: its checksum is computed by the remote checksum function
+ * if set, e.g. by check-file, otherwise, only if enabled, the part uploaded by the failed attempt is read back and
+ * digested together with the appended bytes. If the checksums differ, the temporary file is removed, so that the next
+ * attempt uploads the whole file. The checksum of the whole file is put in the {@link SftpConstants#CHECKSUM} header
+ * of the reply.
+ */
+public class ResumableUploadMessageHandler extends AbstractReplyProducingMessageHandler {
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final RemoteFileTemplate<DirEntry> template;
+
+  private final String remoteDirectory;
+
+  private ChecksumAlgorithm checksumAlgorithm;
+
+  private Function<String, String> remoteChecksumFunction;
+
+  private boolean verifyResumedPrefix;
+
+  private BiConsumer<Message<?>, String> checksumVerifier;
+
+  private BandwidthLimiter bandwidthLimiter = BandwidthLimiter.NONE;
+
+  /**
+   * Construct an instance.
+   *
+   * @param template        the template to use
+   * @param remoteDirectory the remote directory to upload the files to
+   */
+  public ResumableUploadMessageHandler(RemoteFileTemplate<DirEntry> template, String remoteDirectory) {
+    Assert.notNull(template, "template must not be null");
+    Assert.hasText(remoteDirectory, "remoteDirectory must not be empty");
+    this.template = template;
+    this.remoteDirectory = remoteDirectory;
+  }
+
+  /**
+   * Set the algorithm of the checksum confirming the uploaded file, null for no checksum, which is the default.
+   *
+   * @param checksumAlgorithm the checksum algorithm
+   */
+  public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+    this.checksumAlgorithm = checksumAlgorithm;
+  }
+
+  /**
+   * Set the function computing the checksum of a remote file on the server, e.g. by check-file, so that a resumed
+   * upload is confirmed without reading back the part uploaded by the failed attempt.
+   *
+   * @param remoteChecksumFunction the function accepting the remote path and returning its checksum
+   */
+  public void setRemoteChecksumFunction(Function<String, String> remoteChecksumFunction) {
+    this.remoteChecksumFunction = remoteChecksumFunction;
+  }
+
+  /**
+   * Set whether the part uploaded by the failed attempt is read back to confirm a resumed upload, if a checksum
+   * algorithm is set but no remote checksum function. Reading it back costs as much as uploading it again over a
+   * symmetric link, so it is disabled by default and the size of the temporary file is trusted.
+   *
+   * @param verifyResumedPrefix whether to read back the resumed part
+   */
+  public void setVerifyResumedPrefix(boolean verifyResumedPrefix) {
+    this.verifyResumedPrefix = verifyResumedPrefix;
+  }
+
+  /**
+   * Set the verifier which accepts the request message and the checksum of the whole file, and throws an exception if
+   * the file is not the expected one. It is called before the temporary file is renamed.
+   */
+  public void setChecksumVerifier(BiConsumer<Message<?>, String> checksumVerifier) {
+    this.checksumVerifier = checksumVerifier;
+  }
+
+  /**
+   * Set the limiter the uploaded bytes are acquired from.
+   *
+   * @param bandwidthLimiter the bandwidth limiter
+   */
+  public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+    Assert.notNull(bandwidthLimiter, "bandwidthLimiter must not be null");
+    this.bandwidthLimiter = bandwidthLimiter;
+  }
+
+  @Override
+  protected Object handleRequestMessage(Message<?> requestMessage) {
+    final File file = (File) requestMessage.getPayload();
+    final String path = this.remoteDirectory + this.template.getRemoteFileSeparator() + file.getName();
+    final String tempPath = path + this.template.getTemporaryFileSuffix();
+    final Transfer transfer = this.template.execute(session -> upload(session, file, tempPath));
+    String remoteChecksum = transfer.remoteChecksum;
+    if (remoteChecksum == null && transfer.checksum != null && this.remoteChecksumFunction != null) {
+      remoteChecksum = this.remoteChecksumFunction.apply(tempPath);
+    }
+    try {
+      if (remoteChecksum != null) {
+        ChecksumUtils.verify(tempPath, remoteChecksum, transfer.checksum);
+      }
+      if (transfer.checksum != null && this.checksumVerifier != null) {
+        this.checksumVerifier.accept(requestMessage, transfer.checksum);
+      }
+    } catch (RuntimeException e) {
+      // the next attempt uploads the whole file
+      try {
+        this.template.remove(tempPath);
+      } catch (RuntimeException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+    this.template.rename(tempPath, path);
+    return getMessageBuilderFactory().withPayload(path)
+        .setHeader(SftpConstants.CHECKSUM, transfer.checksum);
+  }
+
+  private Transfer upload(Session<DirEntry> session, File file, String tempPath) throws IOException {
+    RemoteFileUtils.makeDirectories(this.remoteDirectory, session, this.template.getRemoteFileSeparator(),
+        logger.getLog());
+    long offset = session.exists(tempPath) ? ((SftpClient) session.getClientInstance()).stat(tempPath).getSize() : 0;
+    if (offset > file.length()) {
+      logger.warn(() -> "Temporary file " + tempPath + " is larger than " + file + ", uploading it again");
+      session.remove(tempPath);
+      offset = 0;
+    }
+    final StreamingDigest digest = this.checksumAlgorithm != null ? this.checksumAlgorithm.newDigest() : null;
+    StreamingDigest remoteDigest = null;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (digest != null) {
+        digest(channel, offset, digest);
+        if (offset > 0 && this.remoteChecksumFunction == null && this.verifyResumedPrefix) {
+          remoteDigest = this.checksumAlgorithm.newDigest();
+          digest(session, tempPath, offset, remoteDigest);
+        }
+      }
+      channel.position(offset);
+      InputStream stream = new ThrottledInputStream(
+          new BufferedInputStream(Channels.newInputStream(channel)), this.bandwidthLimiter);
+      if (digest != null) {
+        stream = new ChecksumInputStream(stream, digest);
+      }
+      if (remoteDigest != null) {
+        stream = new ChecksumInputStream(stream, remoteDigest);
+      }
+      if (offset > 0) {
+        final long resumed = offset;
+        logger.info(() -> "Resume uploading " + file + " at " + resumed + " of " + file.length() + " bytes");
+        session.append(stream, tempPath);
+      } else {
+        session.write(stream, tempPath);
+      }
+    }
+    return new Transfer(digest != null ? digest.hex() : null, remoteDigest != null ? remoteDigest.hex() : null);
+  }
+
+  /**
+   * Digest the first bytes of the local file, without moving the position of the channel.
+   */
+  private static void digest(FileChannel channel, long length, StreamingDigest digest) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    long position = 0;
+    while (position < length) {
+      buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - position));
+      final int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Local file is shorter than " + length + " bytes");
+      }
+      digest.update(buffer.array(), 0, read);
+      position += read;
+    }
+  }
+
+  /**
+   * Digest the first bytes of the remote file, i.e. the part uploaded by the failed attempt.
+   */
+  private static void digest(Session<DirEntry> session, String path, long length, StreamingDigest digest)
+      throws IOException {
+    try (InputStream stream = session.readRaw(path)) {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      long remaining = length;
+      while (remaining > 0) {
+        final int read = stream.read(buffer, 0, (int) Math.min(BUFFER_SIZE, remaining));
+        if (read < 0) {
+          throw new EOFException("Remote file " + path + " is shorter than " + length + " bytes");
+        }
+        digest.update(buffer, 0, read);
+        remaining -= read;
+      }
+    }
+    session.finalizeRaw();
+  }
+
+  private static final class Transfer {
+
+    private final String checksum;
+
+    private final String remoteChecksum;
+
+    private Transfer(String checksum, String remoteChecksum) {
+      this.checksum = checksum;
+      this.remoteChecksum = remoteChecksum;
+    }
+
+  }
+
+}
@@ -0,0 +1,240 @@
+package cn.maiaimei.spring.integration.sftp.handler;
+
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.checksum.StreamingDigest;
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.Attributes;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.apache.sshd.sftp.client.SftpClient.OpenMode;
+import org.springframework.integration.file.FileNameGenerator;
+import org.springframework.integration.file.remote.RemoteFileTemplate;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Download a large remote file as several byte ranges in parallel.
+ * <p>
+ * Files not smaller than the threshold are split into segments, each segment is read over its own session checked out
+ * from the template's session factory, and written into a preallocated local file with positional writes. Smaller
+ * files are downloaded as a single segment.
+ * <p>
+ * Each segment is read through the read-ahead stream of the SFTP client, skipped to the start of the segment without
+ * reading the bytes before it, so a segment keeps as many read requests in flight as a streaming GET instead of
+ * waiting for a response per chunk.
+ * <p>
+ * The partial file name contains the hash of the remote path, the remote size and modified time, so concurrent
+ * downloads of files with the same name in different folders never share it. It is deleted if the download fails, a
+ * retry downloads all the segments again.
+ * <p>
+ * If a checksum algorithm is set, the checksum is put in the {@link SftpConstants#CHECKSUM} header. The segments
+ * arrive out of order, so the checksum is computed over the assembled local file, without reading the remote file
+ * again.
+ * <p>
+ * The reply payload is the downloaded {@link File}.
+ */
+public class SegmentedDownloadMessageHandler extends AbstractReplyProducingMessageHandler {
+
+  public static final String PARTIAL_FILE_SUFFIX = ".part";
+
+  private static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+  private final RemoteFileTemplate<DirEntry> template;
+  private final Path localDirectory;
+  private final Function<Message<?>, String> remoteFileFunction;
+  private final Executor executor;
+
+  private FileNameGenerator fileNameGenerator;
+  private long threshold;
+  private int segmentCount = 4;
+  private int bufferSize = DEFAULT_BUFFER_SIZE;
+  private ChecksumAlgorithm checksumAlgorithm;
+  private BandwidthLimiter bandwidthLimiter = BandwidthLimiter.NONE;
+
+  /**
+   * Construct an instance.
+   *
+   * @param template           the template to use
+   * @param localDirectory     the local folder to download to
+   * @param remoteFileFunction the function to get the remote file path from a message
+   * @param executor           the executor to read the segments
+   */
+  public SegmentedDownloadMessageHandler(RemoteFileTemplate<DirEntry> template, Path localDirectory,
+      Function<Message<?>, String> remoteFileFunction, Executor executor) {
+    Assert.notNull(template, "template must not be null");
+    Assert.notNull(localDirectory, "localDirectory must not be null");
+    Assert.notNull(remoteFileFunction, "remoteFileFunction must not be null");
+    Assert.notNull(executor, "executor must not be null");
+    this.template = template;
+    this.localDirectory = localDirectory;
+    this.remoteFileFunction = remoteFileFunction;
+    this.executor = executor;
+  }
+
+  /**
+   * Set the file name generator of the downloaded file, default is the remote file name.
+   */
+  public void setFileNameGenerator(FileNameGenerator fileNameGenerator) {
+    this.fileNameGenerator = fileNameGenerator;
+  }
+
+  /**
+   * Set the minimum size in bytes of a file to download in segments.
+   */
+  public void setThreshold(long threshold) {
+    Assert.isTrue(threshold > 0, "threshold must be greater than 0");
+    this.threshold = threshold;
+  }
+
+  /**
+   * Set the number of segments of a large file. Default is 4.
+   */
+  public void setSegmentCount(int segmentCount) {
+    Assert.isTrue(segmentCount > 0, "segmentCount must be greater than 0");
+    this.segmentCount = segmentCount;
+  }
+
+  /**
+   * Set the number of bytes requested by each read, e.g. the buffer size of the connection. Default is 32KB.
+   */
+  public void setBufferSize(int bufferSize) {
+    Assert.isTrue(bufferSize > 0, "bufferSize must be greater than 0");
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Set the algorithm of the checksum to compute after the download.
+   */
+  public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+    this.checksumAlgorithm = checksumAlgorithm;
+  }
+
+  /**
+   * Set the limiter the downloaded bytes are acquired from.
+   *
+   * @param bandwidthLimiter the bandwidth limiter
+   */
+  public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+    Assert.notNull(bandwidthLimiter, "bandwidthLimiter must not be null");
+    this.bandwidthLimiter = bandwidthLimiter;
+  }
+
+  @Override
+  protected Object handleRequestMessage(Message<?> requestMessage) {
+    final String remoteFile = this.remoteFileFunction.apply(requestMessage);
+    final String remoteFileName = remoteFile.substring(remoteFile.lastIndexOf('/') + 1);
+    final Attributes attributes = this.template.execute(
+        session -> ((SftpClient) session.getClientInstance()).stat(remoteFile));
+    final long size = attributes.getSize();
+    final Path partialFile = this.localDirectory.resolve(String.format("%s.%08x.%d.%d%s", remoteFileName,
+        remoteFile.hashCode(), size, attributes.getModifyTime().toMillis(), PARTIAL_FILE_SUFFIX));
+    String checksum = null;
+    try (FileChannel out = FileChannel.open(partialFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      final int segments = this.threshold > 0 && size >= this.threshold ? this.segmentCount : 1;
+      if (segments > 1) {
+        // preallocate, so that the segments are written in place
+        out.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        logger.info(() -> String.format("Download %s of %d bytes in %d segments", remoteFile, size, segments));
+      }
+      final long segmentSize = (size + segments - 1) / segments;
+      final List<CompletableFuture<Void>> futures = new ArrayList<>(segments);
+      for (int i = 0; i < segments; i++) {
+        final long start = i * segmentSize;
+        final long end = Math.min(size, start + segmentSize);
+        futures.add(CompletableFuture.runAsync(() -> downloadSegment(remoteFile, out, start, end), this.executor));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+      if (this.checksumAlgorithm != null) {
+        checksum = checksum(out);
+      }
+    } catch (IOException e) {
+      deleteQuietly(partialFile);
+      throw new UncheckedIOException("Failed to write " + partialFile, e);
+    } catch (CompletionException e) {
+      deleteQuietly(partialFile);
+      throw new IllegalStateException("Failed to download " + remoteFile, e.getCause());
+    }
+    final String fileName = this.fileNameGenerator != null
+        ? this.fileNameGenerator.generateFileName(requestMessage)
+        : remoteFileName;
+    final Path localFile = this.localDirectory.resolve(fileName);
+    try {
+      Files.createDirectories(localFile.getParent());
+      Files.move(partialFile, localFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to rename " + partialFile + " to " + localFile, e);
+    }
+    return getMessageBuilderFactory().withPayload(localFile.toFile())
+        .copyHeaders(requestMessage.getHeaders())
+        .setHeader(SftpConstants.CHECKSUM, checksum)
+        .build();
+  }
+
+  private void deleteQuietly(Path partialFile) {
+    try {
+      Files.deleteIfExists(partialFile);
+    } catch (IOException e) {
+      logger.warn(e, () -> "Failed to delete " + partialFile);
+    }
+  }
+
+  private String checksum(FileChannel channel) throws IOException {
+    final StreamingDigest digest = this.checksumAlgorithm.newDigest();
+    final byte[] bytes = new byte[this.bufferSize];
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    long position = 0;
+    int read;
+    while ((read = channel.read(buffer.clear(), position)) > 0) {
+      digest.update(bytes, 0, read);
+      position += read;
+    }
+    return digest.hex();
+  }
+
+  private void downloadSegment(String remoteFile, FileChannel out, long start, long end) {
+    this.template.execute(session -> {
+      final SftpClient client = (SftpClient) session.getClientInstance();
+      final byte[] bytes = new byte[this.bufferSize];
+      try (InputStream in = client.read(remoteFile, this.bufferSize, OpenMode.Read)) {
+        // positions the stream before any request is sent, the read ahead starts at the segment
+        in.skipNBytes(start);
+        long offset = start;
+        while (offset < end) {
+          final int read = in.read(bytes, 0, (int) Math.min(bytes.length, end - offset));
+          if (read <= 0) {
+            throw new EOFException(String.format("Unexpected end of %s at byte %d", remoteFile, offset));
+          }
+          this.bandwidthLimiter.acquire(read);
+          final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+          long position = offset;
+          while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+          }
+          offset += read;
+        }
+      }
+      return null;
+    });
+  }
+
+}
@@ -0,0 +1,30 @@
+package cn.maiaimei.spring.integration.sftp.handler;
+
+import cn.maiaimei.spring.integration.sftp.session.ThreadBoundSessionFactory;
+import org.springframework.integration.handler.AbstractMessageProducingHandler;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Send the message downstream within {@link ThreadBoundSessionFactory#invoke(Runnable)}, so that every operation of
+ * the templates of that factory on the current thread runs on one thread-bound session.
+ * <p>
+ * The downstream handlers must use a template of the same factory and run on the same thread, i.e. be connected by
+ * direct channels. The session is checked out once and released when the downstream flow returns. If the session is
+ * lost, e.g. by a failed transfer, the next operation, such as a retry of the transfer, checks out a new one.
+ */
+public class SessionAffinityMessageHandler extends AbstractMessageProducingHandler {
+
+  private final ThreadBoundSessionFactory sessionFactory;
+
+  public SessionAffinityMessageHandler(ThreadBoundSessionFactory sessionFactory) {
+    Assert.notNull(sessionFactory, "sessionFactory must not be null");
+    this.sessionFactory = sessionFactory;
+  }
+
+  @Override
+  protected void handleMessageInternal(Message<?> message) {
+    this.sessionFactory.invoke(() -> sendOutputs(message, message));
+  }
+
+}
@@ -0,0 +1,161 @@
+package cn.maiaimei.spring.integration.sftp.handler;
+
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumInputStream;
+import cn.maiaimei.spring.integration.sftp.checksum.StreamingDigest;
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.throttle.ThrottledInputStream;
+import cn.maiaimei.spring.integration.sftp.utils.ChecksumUtils;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.file.remote.RemoteFileTemplate;
+import org.springframework.integration.file.remote.gateway.AbstractRemoteFileOutboundGateway.Command;
+import org.springframework.integration.sftp.gateway.SftpOutboundGateway;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * A PUT gateway which streams the file payload, so that its bytes can be throttled and digested while uploaded.
+ * <p>
+ * The file is read only once, through the {@link BandwidthLimiter} of the rule and, if a checksum algorithm is set, a
+ * {@link ChecksumInputStream}. The file is written under its temporary name by the gateway itself, so that the checksum
+ * is verified, against the server's checksum of the temporary file if the remote checksum function is set and by the
+ * verifier, before the file is published under its final name. If the checksums differ, the temporary file is removed.
+ * The checksum is put in the {@link SftpConstants#CHECKSUM} header of the reply.
+ */
+public class StreamingSftpOutboundGateway extends SftpOutboundGateway {
+
+  private final RemoteFileTemplate<DirEntry> template;
+
+  private ChecksumAlgorithm checksumAlgorithm;
+
+  private Function<String, String> remoteChecksumFunction;
+
+  private BiConsumer<Message<?>, String> checksumVerifier;
+
+  private BandwidthLimiter bandwidthLimiter = BandwidthLimiter.NONE;
+
+  /**
+   * Construct an instance. The template must not be shared, the gateway writes under the temporary file name itself.
+   *
+   * @param template the template to use
+   */
+  public StreamingSftpOutboundGateway(RemoteFileTemplate<DirEntry> template) {
+    super(template, Command.PUT.getCommand(), SftpConstants.PAYLOAD);
+    this.template = template;
+    // renamed once verified, see handleRequestMessage
+    this.template.setUseTemporaryFileName(false);
+  }
+
+  /**
+   * Set the algorithm of the checksum computed while the file is uploaded, null for no checksum.
+   *
+   * @param checksumAlgorithm the checksum algorithm
+   */
+  public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+    this.checksumAlgorithm = checksumAlgorithm;
+  }
+
+  /**
+   * Set the function computing the checksum of a remote file on the server, e.g. by check-file. It is called with the
+   * temporary file, before the rename.
+   *
+   * @param remoteChecksumFunction the function accepting the remote path and returning its checksum
+   */
+  public void setRemoteChecksumFunction(Function<String, String> remoteChecksumFunction) {
+    this.remoteChecksumFunction = remoteChecksumFunction;
+  }
+
+  /**
+   * Set the verifier which accepts the request message and the computed checksum, and throws an exception if the
+   * uploaded file is not the expected one. It is called before the temporary file is renamed.
+   */
+  public void setChecksumVerifier(BiConsumer<Message<?>, String> checksumVerifier) {
+    this.checksumVerifier = checksumVerifier;
+  }
+
+  /**
+   * Set the limiter the uploaded bytes are acquired from.
+   *
+   * @param bandwidthLimiter the bandwidth limiter
+   */
+  public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+    Assert.notNull(bandwidthLimiter, "bandwidthLimiter must not be null");
+    this.bandwidthLimiter = bandwidthLimiter;
+  }
+
+  @Override
+  protected Object handleRequestMessage(Message<?> requestMessage) {
+    final File file = (File) requestMessage.getPayload();
+    final String fileName = requestMessage.getHeaders().containsKey(FileHeaders.FILENAME)
+        ? (String) requestMessage.getHeaders().get(FileHeaders.FILENAME)
+        : file.getName();
+    final String suffix = this.template.getTemporaryFileSuffix();
+    final StreamingDigest digest = this.checksumAlgorithm != null ? this.checksumAlgorithm.newDigest() : null;
+    final String tempPath;
+    InputStream stream = null;
+    try {
+      stream = new ThrottledInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())),
+          this.bandwidthLimiter);
+      if (digest != null) {
+        stream = new ChecksumInputStream(stream, digest);
+      }
+      tempPath = (String) super.handleRequestMessage(getMessageBuilderFactory().withPayload(stream)
+          .copyHeaders(requestMessage.getHeaders())
+          .setHeader(FileHeaders.FILENAME, fileName + suffix)
+          .build());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read " + file, e);
+    } finally {
+      closeQuietly(stream);
+    }
+    final String path = tempPath.substring(0, tempPath.length() - suffix.length());
+    final String checksum = digest != null ? digest.hex() : null;
+    if (checksum != null) {
+      verify(requestMessage, tempPath, checksum);
+    }
+    this.template.rename(tempPath, path);
+    return getMessageBuilderFactory().withPayload(path)
+        .setHeader(SftpConstants.CHECKSUM, checksum);
+  }
+
+  private void verify(Message<?> requestMessage, String tempPath, String checksum) {
+    try {
+      if (this.remoteChecksumFunction != null) {
+        ChecksumUtils.verify(tempPath, this.remoteChecksumFunction.apply(tempPath), checksum);
+      }
+      if (this.checksumVerifier != null) {
+        this.checksumVerifier.accept(requestMessage, checksum);
+      }
+    } catch (RuntimeException e) {
+      // never published under its final name, the next attempt uploads it again
+      try {
+        this.template.remove(tempPath);
+      } catch (RuntimeException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+  }
+
+  private void closeQuietly(InputStream stream) {
+    if (stream == null) {
+      return;
+    }
+    try {
+      stream.close();
+    } catch (IOException e) {
+      logger.debug(e, "Failed to close the uploaded stream");
+    }
+  }
+
+}
@@ -0,0 +1,327 @@
+package cn.maiaimei.spring.integration.sftp.metadata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import org.springframework.util.Assert;
+
+/**
+ * A local metadata store which remembers the fingerprints of accepted files.
+ * <p>
+ * Every change is appended to a memory-mapped log, and an in-memory hash index of primitive fingerprints answers the
+ * lookups. The index is allocated once for {@code maxEntries}, so neither the heap nor the log grows with the number of
+ * files seen. On restart the log is replayed into the index, no remote listing is needed.
+ * <p>
+ * The log is compacted when it is full, when the index reaches {@code maxEntries} (the oldest entries are evicted)
+ * or, at most once per compaction interval, when it holds more dead records than live ones. The live records are
+ * written to a new log which atomically replaces the old one, so a crash leaves either of them, never a mix.
+ */
+public class MappedLogMetadataStore implements Closeable {
+
+  private static final long MAGIC = 0x5346545041434331L;
+  private static final int HEADER_SIZE = Long.BYTES;
+  private static final int MIN_ENTRIES = 1024;
+  private static final String COMPACT_FILE_SUFFIX = ".compact";
+
+  private final Path file;
+  private final int maxEntries;
+  private final int retainEntries;
+  private final int capacity;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+
+  private FingerprintIndex index;
+  private int position;
+  private long compactionIntervalMillis = Duration.ofHours(1).toMillis();
+  private long lastCompaction;
+
+  /**
+   * Open the store, the log is created if absent.
+   *
+   * @param file       the log file
+   * @param maxEntries the maximum number of entries to keep
+   */
+  public MappedLogMetadataStore(Path file, int maxEntries) {
+    Assert.notNull(file, "file must not be null");
+    Assert.isTrue(maxEntries >= MIN_ENTRIES, "maxEntries must be at least " + MIN_ENTRIES);
+    Assert.isTrue(maxEntries <= (Integer.MAX_VALUE - HEADER_SIZE) / Long.BYTES / 2, "maxEntries is too large");
+    this.file = file;
+    this.maxEntries = maxEntries;
+    this.retainEntries = maxEntries - maxEntries / 10;
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      // keep the records of a log written with a larger maxEntries, they are evicted by the first compaction
+      final long existing = Files.exists(file) ? Math.max(0, Files.size(file) - HEADER_SIZE) / Long.BYTES : 0;
+      this.capacity = (int) Math.min(Math.max(existing, maxEntries * 2L), (Integer.MAX_VALUE - HEADER_SIZE) / Long.BYTES);
+      map();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open metadata store " + file, e);
+    }
+    replay();
+  }
+
+  /**
+   * Set the minimum interval between two compactions which reclaim dead records. Default is 1 hour.
+   */
+  public void setCompactionInterval(Duration compactionInterval) {
+    this.compactionIntervalMillis = compactionInterval.toMillis();
+  }
+
+  /**
+   * Add the given fingerprint.
+   *
+   * @param fingerprint the fingerprint, see {@link #fingerprint(String, long, long)}
+   * @return true if the fingerprint was absent
+   */
+  public synchronized boolean add(long fingerprint) {
+    if (this.index.contains(fingerprint)) {
+      return false;
+    }
+    if (this.index.size() >= this.maxEntries) {
+      compact();
+    }
+    append(fingerprint);
+    this.index.add(fingerprint);
+    return true;
+  }
+
+  /**
+   * Remove the given fingerprint.
+   *
+   * @param fingerprint the fingerprint, see {@link #fingerprint(String, long, long)}
+   * @return true if the fingerprint was present
+   */
+  public synchronized boolean remove(long fingerprint) {
+    if (!this.index.remove(fingerprint)) {
+      return false;
+    }
+    append(fingerprint | Long.MIN_VALUE);
+    return true;
+  }
+
+  public synchronized boolean contains(long fingerprint) {
+    return this.index.contains(fingerprint);
+  }
+
+  public synchronized int size() {
+    return this.index.size();
+  }
+
+  /**
+   * Force the appended records to the storage device.
+   */
+  public synchronized void flush() {
+    this.buffer.force();
+  }
+
+  /**
+   * Rewrite the log with the live entries only, the oldest entries beyond the retained size are evicted.
+   */
+  public synchronized void compact() {
+    final int limit = Math.min(this.index.size(), this.retainEntries);
+    final long[] live = new long[limit];
+    final FingerprintIndex retained = new FingerprintIndex(this.maxEntries);
+    int count = 0;
+    // the latest records are the youngest ones
+    for (int i = this.position - 1; i >= 0 && count < limit; i--) {
+      final long record = this.buffer.getLong(offset(i));
+      if (record > 0 && this.index.contains(record) && retained.add(record)) {
+        live[count++] = record;
+      }
+    }
+    final Path compacted = this.file.resolveSibling(this.file.getFileName() + COMPACT_FILE_SUFFIX);
+    try {
+      try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        final ByteBuffer records = ByteBuffer.allocate(offset(count));
+        records.putLong(MAGIC);
+        for (int i = count - 1; i >= 0; i--) {
+          records.putLong(live[i]);
+        }
+        records.flip();
+        while (records.hasRemaining()) {
+          out.write(records);
+        }
+        out.force(true);
+      }
+      // the old log is replaced at once, then the new one is mapped
+      Files.move(compacted, this.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      this.channel.close();
+      map();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to compact metadata store " + this.file, e);
+    }
+    this.index = retained;
+    this.position = count;
+    this.lastCompaction = System.currentTimeMillis();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    this.buffer.force();
+    this.channel.close();
+  }
+
+  /**
+   * Compute the fingerprint of a remote file, files with the same name, size and modified time have the same
+   * fingerprint.
+   *
+   * @param fileName the file name
+   * @param size     the file size
+   * @param modified the modified time in milliseconds
+   * @return a positive fingerprint
+   */
+  public static long fingerprint(String fileName, long size, long modified) {
+    // FNV-1a over the name, then mix in size and modified time
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < fileName.length(); i++) {
+      hash ^= fileName.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash = mix(hash ^ mix(size));
+    hash = mix(hash ^ mix(modified ^ 0x9e3779b97f4a7c15L));
+    hash &= Long.MAX_VALUE;
+    return hash == 0 ? 1 : hash;
+  }
+
+  private static long mix(long value) {
+    value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+    value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return value ^ (value >>> 33);
+  }
+
+  private void map() throws IOException {
+    this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.buffer = this.channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.capacity * Long.BYTES);
+  }
+
+  private void replay() {
+    final long magic = this.buffer.getLong(0);
+    if (magic == 0) {
+      this.buffer.putLong(0, MAGIC);
+    } else {
+      Assert.state(magic == MAGIC, () -> "Not a metadata store: " + this.file);
+    }
+    this.index = new FingerprintIndex(this.maxEntries);
+    int i = 0;
+    boolean overflow = false;
+    for (; i < this.capacity; i++) {
+      final long record = this.buffer.getLong(offset(i));
+      if (record == 0) {
+        break;
+      }
+      if (record > 0) {
+        if (this.index.size() < this.maxEntries) {
+          this.index.add(record);
+        } else {
+          overflow = true;
+        }
+      } else {
+        this.index.remove(record & Long.MAX_VALUE);
+      }
+    }
+    this.position = i;
+    this.lastCompaction = System.currentTimeMillis();
+    if (overflow) {
+      compact();
+    }
+  }
+
+  private void append(long record) {
+    final int dead = this.position - this.index.size();
+    if (this.position >= this.capacity
+        || (dead > this.index.size()
+        && System.currentTimeMillis() - this.lastCompaction >= this.compactionIntervalMillis)) {
+      compact();
+    }
+    this.buffer.putLong(offset(this.position++), record);
+  }
+
+  private static int offset(int record) {
+    return HEADER_SIZE + record * Long.BYTES;
+  }
+
+  /**
+   * An open-addressing hash set of positive fingerprints, allocated once.
+   */
+  private static final class FingerprintIndex {
+
+    private final long[] slots;
+    private final int mask;
+    private int size;
+
+    FingerprintIndex(int maxEntries) {
+      // keep the load factor at or below 0.5
+      final int slotCount = Integer.highestOneBit(maxEntries * 2 - 1) << 1;
+      this.slots = new long[slotCount];
+      this.mask = slotCount - 1;
+    }
+
+    int size() {
+      return this.size;
+    }
+
+    boolean contains(long fingerprint) {
+      int slot = slot(fingerprint);
+      while (this.slots[slot] != 0) {
+        if (this.slots[slot] == fingerprint) {
+          return true;
+        }
+        slot = (slot + 1) & this.mask;
+      }
+      return false;
+    }
+
+    boolean add(long fingerprint) {
+      int slot = slot(fingerprint);
+      while (this.slots[slot] != 0) {
+        if (this.slots[slot] == fingerprint) {
+          return false;
+        }
+        slot = (slot + 1) & this.mask;
+      }
+      this.slots[slot] = fingerprint;
+      this.size++;
+      return true;
+    }
+
+    boolean remove(long fingerprint) {
+      int slot = slot(fingerprint);
+      while (this.slots[slot] != fingerprint) {
+        if (this.slots[slot] == 0) {
+          return false;
+        }
+        slot = (slot + 1) & this.mask;
+      }
+      // backward shift deletion keeps the probe sequences intact without tombstones
+      int hole = slot;
+      int next = (hole + 1) & this.mask;
+      while (this.slots[next] != 0) {
+        final int home = slot(this.slots[next]);
+        if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+          this.slots[hole] = this.slots[next];
+          hole = next;
+        }
+        next = (next + 1) & this.mask;
+      }
+      this.slots[hole] = 0;
+      this.size--;
+      return true;
+    }
+
+    private int slot(long fingerprint) {
+      return (int) (fingerprint ^ (fingerprint >>> 32)) & this.mask;
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+package cn.maiaimei.spring.integration.sftp.record;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.util.Assert;
+
+/**
+ * Reads comma separated values as defined by RFC 4180, the first line is the header and each following line is
+ * returned as a {@link Map} of the header to the field.
+ * <p>
+ * Fields may be quoted, a quoted field may contain commas, line breaks and doubled quotes. A line with fewer fields
+ * than the header leaves the remaining keys out, the fields beyond the header are ignored.
+ */
+public class CsvRecordReader implements RecordReader {
+
+  private static final int EOF = -1;
+
+  private final BufferedReader reader;
+
+  private final StringBuilder field = new StringBuilder();
+
+  private List<String> header;
+
+  public CsvRecordReader(BufferedReader reader) {
+    Assert.notNull(reader, "reader must not be null");
+    this.reader = reader;
+  }
+
+  @Override
+  public Object read() throws IOException {
+    if (this.header == null) {
+      this.header = readLine();
+      if (this.header == null) {
+        return null;
+      }
+    }
+    List<String> fields;
+    do {
+      fields = readLine();
+    } while (fields != null && fields.size() == 1 && fields.get(0).isEmpty());
+    if (fields == null) {
+      return null;
+    }
+    final Map<String, String> record = new LinkedHashMap<>();
+    final int size = Math.min(this.header.size(), fields.size());
+    for (int i = 0; i < size; i++) {
+      record.put(this.header.get(i), fields.get(i));
+    }
+    return record;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+
+  private List<String> readLine() throws IOException {
+    int c = this.reader.read();
+    if (c == EOF) {
+      return null;
+    }
+    final List<String> fields = new ArrayList<>();
+    this.field.setLength(0);
+    boolean quoted = false;
+    while (true) {
+      if (quoted) {
+        if (c == EOF) {
+          throw new IOException("Unexpected end of quoted CSV field");
+        }
+        if (c == '"') {
+          this.reader.mark(1);
+          if (this.reader.read() == '"') {
+            this.field.append('"');
+          } else {
+            this.reader.reset();
+            quoted = false;
+          }
+        } else {
+          this.field.append((char) c);
+        }
+      } else if (c == '"' && this.field.isEmpty()) {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(this.field.toString());
+        this.field.setLength(0);
+      } else if (c == '\n' || c == EOF) {
+        break;
+      } else if (c != '\r') {
+        this.field.append((char) c);
+      }
+      c = this.reader.read();
+    }
+    fields.add(this.field.toString());
+    this.field.setLength(0);
+    return fields;
+  }
+
+}
@@ -0,0 +1,107 @@
+package cn.maiaimei.spring.integration.sftp.record;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import org.springframework.util.Assert;
+
+/**
+ * Reads the elements of a top level JSON array, each element is returned as its raw JSON text.
+ * <p>
+ * The elements are delimited by tracking strings and nesting only, they are not parsed, so that no JSON library is
+ * needed and an element is held in memory once.
+ */
+public class JsonArrayRecordReader implements RecordReader {
+
+  private static final int EOF = -1;
+
+  private final BufferedReader reader;
+
+  private final StringBuilder buffer = new StringBuilder();
+
+  private boolean started;
+
+  private boolean finished;
+
+  public JsonArrayRecordReader(BufferedReader reader) {
+    Assert.notNull(reader, "reader must not be null");
+    this.reader = reader;
+  }
+
+  @Override
+  public Object read() throws IOException {
+    if (this.finished) {
+      return null;
+    }
+    if (!this.started) {
+      if (nextToken() != '[') {
+        throw new IOException("JSON array expected");
+      }
+      this.started = true;
+    }
+    // the comma after the previous element has been consumed by it
+    final int c = nextToken();
+    if (c == ']') {
+      this.finished = true;
+      return null;
+    }
+    if (c == EOF) {
+      throw new IOException("Unexpected end of JSON array");
+    }
+    return readElement(c);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+
+  private String readElement(int first) throws IOException {
+    this.buffer.setLength(0);
+    int depth = 0;
+    boolean inString = false;
+    int c = first;
+    while (true) {
+      if (c == EOF) {
+        throw new IOException("Unexpected end of JSON array");
+      }
+      if (inString) {
+        if (c == '\\') {
+          this.buffer.append((char) c);
+          c = this.reader.read();
+          if (c == EOF) {
+            throw new IOException("Unexpected end of JSON array");
+          }
+        } else if (c == '"') {
+          inString = false;
+        }
+      } else if (c == '"') {
+        inString = true;
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        if (depth == 0) {
+          // the end of the array right after a primitive element
+          this.finished = true;
+          break;
+        }
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        break;
+      }
+      this.buffer.append((char) c);
+      c = this.reader.read();
+    }
+    final String element = this.buffer.toString().strip();
+    this.buffer.setLength(0);
+    return element;
+  }
+
+  private int nextToken() throws IOException {
+    int c;
+    do {
+      c = this.reader.read();
+    } while (c != EOF && Character.isWhitespace(c));
+    return c;
+  }
+
+}
@@ -0,0 +1,36 @@
+package cn.maiaimei.spring.integration.sftp.record;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import org.springframework.util.Assert;
+
+/**
+ * Reads newline delimited JSON, each non blank line is returned as the raw JSON text of a record.
+ */
+public class NdjsonRecordReader implements RecordReader {
+
+  private final BufferedReader reader;
+
+  public NdjsonRecordReader(BufferedReader reader) {
+    Assert.notNull(reader, "reader must not be null");
+    this.reader = reader;
+  }
+
+  @Override
+  public Object read() throws IOException {
+    String line;
+    while ((line = this.reader.readLine()) != null) {
+      line = line.strip();
+      if (!line.isEmpty()) {
+        return line;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+
+}
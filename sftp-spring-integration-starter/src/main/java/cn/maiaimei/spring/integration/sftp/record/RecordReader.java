@@ -0,0 +1,41 @@
+package cn.maiaimei.spring.integration.sftp.record;
+
+import cn.maiaimei.spring.integration.sftp.constants.RecordFormat;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the records of a stream one by one, so that a file of any size is split with bounded memory.
+ */
+public interface RecordReader extends Closeable {
+
+  /**
+   * Read the next record.
+   *
+   * @return the next record, or null at the end of the stream
+   * @throws IOException if the stream cannot be read or is malformed
+   */
+  Object read() throws IOException;
+
+  /**
+   * Construct a {@link RecordReader} instance of the given format.
+   *
+   * @param format  the record format
+   * @param stream  the stream to read
+   * @param charset the charset of the stream
+   * @return a {@link RecordReader} instance
+   */
+  static RecordReader of(RecordFormat format, InputStream stream, Charset charset) {
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, charset));
+    return switch (format) {
+      case JSON_ARRAY -> new JsonArrayRecordReader(reader);
+      case NDJSON -> new NdjsonRecordReader(reader);
+      case CSV -> new CsvRecordReader(reader);
+    };
+  }
+
+}
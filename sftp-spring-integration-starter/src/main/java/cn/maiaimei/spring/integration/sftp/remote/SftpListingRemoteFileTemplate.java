@@ -0,0 +1,136 @@
+package cn.maiaimei.spring.integration.sftp.remote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.springframework.integration.file.remote.RemoteFileTemplate;
+import org.springframework.integration.file.remote.session.SessionFactory;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link RemoteFileTemplate} whose listing reads the remote directory entry by entry instead of collecting it first.
+ * <p>
+ * The entries matching the skip filter are dropped as they arrive, e.g. the ones below the watermark of an incremental
+ * listing. With a max depth above zero the subdirectories are walked too, level by level, and the directories of a
+ * level are listed concurrently on the executor, each on its own session checked out from the session factory. The
+ * files of a subdirectory are returned with their path relative to the listed directory as file name, e.g.
+ * {@code 2024/01/31/x.txt}.
+ */
+public class SftpListingRemoteFileTemplate extends RemoteFileTemplate<DirEntry> {
+
+  private static final String SEPARATOR = "/";
+
+  private Predicate<DirEntry> skipFilter = file -> false;
+
+  private int maxDepth;
+
+  private Executor executor = Runnable::run;
+
+  public SftpListingRemoteFileTemplate(SessionFactory<DirEntry> sessionFactory) {
+    super(sessionFactory);
+  }
+
+  /**
+   * Set the filter of the entries to drop while reading the remote directory.
+   *
+   * @param skipFilter the skip filter
+   */
+  public void setSkipFilter(Predicate<DirEntry> skipFilter) {
+    Assert.notNull(skipFilter, "skipFilter must not be null");
+    this.skipFilter = skipFilter;
+  }
+
+  /**
+   * Set the max depth of the subdirectories to walk, 0 lists the remote directory only.
+   *
+   * @param maxDepth the max depth
+   */
+  public void setMaxDepth(int maxDepth) {
+    Assert.isTrue(maxDepth >= 0, "maxDepth must not be negative");
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Set the executor listing the directories of a level concurrently.
+   *
+   * @param executor the executor
+   */
+  public void setExecutor(Executor executor) {
+    Assert.notNull(executor, "executor must not be null");
+    this.executor = executor;
+  }
+
+  @Override
+  public DirEntry[] list(String path) {
+    final List<DirEntry> files = new ArrayList<>();
+    List<String> directories = List.of("");
+    for (int depth = 0; !directories.isEmpty(); depth++) {
+      final boolean descend = depth < this.maxDepth;
+      final List<CompletableFuture<Listing>> futures = new ArrayList<>(directories.size());
+      for (String directory : directories) {
+        futures.add(CompletableFuture.supplyAsync(() -> list(path, directory, descend), this.executor));
+      }
+      final List<String> subdirectories = new ArrayList<>();
+      for (CompletableFuture<Listing> future : futures) {
+        final Listing listing = join(future, path);
+        files.addAll(listing.files());
+        subdirectories.addAll(listing.directories());
+      }
+      directories = subdirectories;
+    }
+    return files.toArray(new DirEntry[0]);
+  }
+
+  private Listing list(String path, String directory, boolean descend) {
+    final String remoteDirectory = directory.isEmpty() ? path : path + SEPARATOR + directory;
+    final String prefix = directory.isEmpty() ? "" : directory + SEPARATOR;
+    return execute(session -> {
+      final SftpClient client = (SftpClient) session.getClientInstance();
+      final List<DirEntry> files = new ArrayList<>();
+      final List<String> directories = new ArrayList<>();
+      for (DirEntry entry : client.readDir(remoteDirectory)) {
+        final String fileName = entry.getFilename();
+        if (".".equals(fileName) || "..".equals(fileName)) {
+          continue;
+        }
+        if (entry.getAttributes().isDirectory()) {
+          if (descend) {
+            directories.add(prefix + fileName);
+          }
+          continue;
+        }
+        final DirEntry file = prefix.isEmpty()
+            ? entry
+            : new DirEntry(prefix + fileName, entry.getLongFilename(), entry.getAttributes());
+        if (!this.skipFilter.test(file)) {
+          files.add(file);
+        }
+      }
+      return new Listing(files, directories);
+    });
+  }
+
+  private static Listing join(CompletableFuture<Listing> future, String path) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      final Throwable cause = Objects.requireNonNullElse(e.getCause(), e);
+      if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new MessagingException("Failed to list " + path, cause);
+    }
+  }
+
+  private record Listing(List<DirEntry> files, List<String> directories) {
+
+  }
+
+}
@@ -0,0 +1,121 @@
+package cn.maiaimei.spring.integration.sftp.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import org.springframework.util.Assert;
+
+/**
+ * An {@link Executor} running at most the given number of tasks at once on its delegate, like a semaphore which never
+ * blocks a thread.
+ * <p>
+ * A task without a permit waits in a queue instead of blocking the submitter or a thread of the delegate, the permit
+ * of a completed task is handed over to the next waiting task. With a queue capacity, a task submitted when the queue
+ * is full runs on the submitter, like the {@code CallerRunsPolicy} of a thread pool, so that the submitter is slowed
+ * down to the pace of the tasks.
+ */
+public class PermitExecutor implements Executor {
+
+  private final Executor delegate;
+
+  private final int permits;
+
+  private final int queueCapacity;
+
+  private final Deque<Runnable> waiting = new ArrayDeque<>();
+
+  private int active;
+
+  /**
+   * Construct an executor by the given delegate and number of permits.
+   *
+   * @param delegate the executor running the tasks
+   * @param permits  the number of tasks running at once
+   */
+  public PermitExecutor(Executor delegate, int permits) {
+    this(delegate, permits, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Construct an executor by the given delegate, number of permits and queue capacity.
+   *
+   * @param delegate      the executor running the tasks
+   * @param permits       the number of tasks running at once
+   * @param queueCapacity the number of tasks waiting for a permit, the next ones run on the submitter
+   */
+  public PermitExecutor(Executor delegate, int permits, int queueCapacity) {
+    Assert.notNull(delegate, "delegate must not be null");
+    Assert.isTrue(permits > 0, "permits must be positive");
+    Assert.isTrue(queueCapacity >= 0, "queueCapacity must not be negative");
+    this.delegate = delegate;
+    this.permits = permits;
+    this.queueCapacity = queueCapacity;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    final boolean permitted;
+    synchronized (this) {
+      permitted = this.active < this.permits;
+      if (permitted) {
+        this.active++;
+      } else if (this.waiting.size() < this.queueCapacity) {
+        this.waiting.add(task);
+        return;
+      }
+    }
+    if (permitted) {
+      submit(task);
+    } else {
+      // the queue is full, the submitter runs the task without a permit
+      task.run();
+    }
+  }
+
+  private void submit(Runnable task) {
+    try {
+      this.delegate.execute(() -> {
+        try {
+          task.run();
+        } finally {
+          release();
+        }
+      });
+    } catch (RuntimeException e) {
+      release();
+      throw e;
+    }
+  }
+
+  private void release() {
+    final Runnable next;
+    synchronized (this) {
+      next = this.waiting.poll();
+      if (next == null) {
+        this.active--;
+      }
+    }
+    if (next != null) {
+      submit(next);
+    }
+  }
+
+  /**
+   * Get the number of tasks holding a permit.
+   *
+   * @return the number of active tasks
+   */
+  public synchronized int getActive() {
+    return this.active;
+  }
+
+  /**
+   * Get the number of tasks waiting for a permit.
+   *
+   * @return the number of waiting tasks
+   */
+  public synchronized int getWaiting() {
+    return this.waiting.size();
+  }
+
+}
@@ -0,0 +1,217 @@
+package cn.maiaimei.spring.integration.sftp.scheduler;
+
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.support.management.metrics.MetricsCaptor;
+import org.springframework.integration.support.management.metrics.TimerFacade;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Runs the polls of all rules on one bounded worker pool, so that the cron fires of the pollers only enqueue a poll and
+ * never wait for a slow partner.
+ * <p>
+ * The waiting polls are picked by start-time fair queuing: a rule with weight w gets w times the share of the workers
+ * of a rule with weight 1 while both have polls waiting. The polls of a schema never run more than the schema's max
+ * concurrency at once, a poll whose schema is saturated waits without blocking the polls of other schemas.
+ * <p>
+ * A rule runs one poll at a time, a cron fire while the rule's previous poll is still waiting is merged into it. The
+ * time a poll waits for a worker is exposed as the {@code sftp.rule.queue.delay} timer tagged by rule if a
+ * {@link MetricsCaptor} is available.
+ */
+public class SftpRuleScheduler implements DisposableBean {
+
+  private final int poolSize;
+
+  private final ExecutorService workers;
+
+  private final Map<String, Integer> maxConcurrency = new ConcurrentHashMap<>();
+
+  private final Map<String, Integer> runningBySchema = new HashMap<>();
+
+  private final Set<RuleQueue> backlogged = new LinkedHashSet<>();
+
+  private MetricsCaptor metricsCaptor;
+
+  private int running;
+
+  private double virtualTime;
+
+  /**
+   * Construct a scheduler with the given number of workers.
+   *
+   * @param poolSize the number of polls running at once across all rules
+   */
+  public SftpRuleScheduler(int poolSize) {
+    Assert.isTrue(poolSize > 0, "poolSize must be positive");
+    this.poolSize = poolSize;
+    this.workers = Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("sftp-rule-"));
+  }
+
+  public void setMetricsCaptor(MetricsCaptor metricsCaptor) {
+    this.metricsCaptor = metricsCaptor;
+  }
+
+  /**
+   * Cap the number of polls of the given schema running at once.
+   *
+   * @param schema         the schema
+   * @param maxConcurrency the cap, zero or less to be bounded by the pool size only
+   */
+  public void setMaxConcurrency(String schema, int maxConcurrency) {
+    if (maxConcurrency > 0) {
+      this.maxConcurrency.put(schema, maxConcurrency);
+    } else {
+      this.maxConcurrency.remove(schema);
+    }
+  }
+
+  /**
+   * Construct the executor of a rule, to be set as the task executor of the rule's poller.
+   *
+   * @param ruleName the rule name
+   * @param schema   the schema of the rule
+   * @param weight   the weight of the rule, its share of the workers relative to the other rules
+   * @return an {@link Executor} instance
+   */
+  public Executor executor(String ruleName, String schema, int weight) {
+    Assert.hasText(schema, "schema must not be empty");
+    final TimerFacade queueDelay = this.metricsCaptor == null ? null : this.metricsCaptor
+        .timerBuilder(SftpConstants.QUEUE_DELAY_TIMER)
+        .tag("rule", ruleName)
+        .description("the time a poll of the rule waits for a worker")
+        .build();
+    final RuleQueue queue = new RuleQueue(schema, Math.max(1, weight), queueDelay);
+    return task -> enqueue(queue, task);
+  }
+
+  private synchronized void enqueue(RuleQueue queue, Runnable task) {
+    if (this.workers.isShutdown()) {
+      throw new RejectedExecutionException("The rule scheduler has been shut down");
+    }
+    if (queue.pending != null) {
+      return;
+    }
+    // the start tag of a rule's poll is never before the finish tag of its previous poll
+    final double startTag = Math.max(this.virtualTime, queue.finishTag);
+    queue.finishTag = startTag + 1.0 / queue.weight;
+    queue.pending = new Poll(task, startTag, System.nanoTime());
+    this.backlogged.add(queue);
+    dispatch();
+  }
+
+  private void dispatch() {
+    while (this.running < this.poolSize) {
+      RuleQueue next = null;
+      for (RuleQueue queue : this.backlogged) {
+        if (!queue.running && !isSaturated(queue.schema)
+            && (next == null || queue.pending.startTag < next.pending.startTag)) {
+          next = queue;
+        }
+      }
+      if (next == null) {
+        return;
+      }
+      final Poll poll = next.pending;
+      next.pending = null;
+      next.running = true;
+      this.backlogged.remove(next);
+      this.virtualTime = poll.startTag;
+      this.running++;
+      this.runningBySchema.merge(next.schema, 1, Integer::sum);
+      if (next.queueDelay != null) {
+        next.queueDelay.record(System.nanoTime() - poll.enqueued, TimeUnit.NANOSECONDS);
+      }
+      final RuleQueue queue = next;
+      this.workers.execute(() -> run(queue, poll));
+    }
+  }
+
+  private boolean isSaturated(String schema) {
+    final Integer max = this.maxConcurrency.get(schema);
+    return max != null && this.runningBySchema.getOrDefault(schema, 0) >= max;
+  }
+
+  private void run(RuleQueue queue, Poll poll) {
+    try {
+      poll.task.run();
+    } finally {
+      release(queue);
+    }
+  }
+
+  private synchronized void release(RuleQueue queue) {
+    queue.running = false;
+    this.running--;
+    this.runningBySchema.merge(queue.schema, -1, Integer::sum);
+    if (queue.pending != null) {
+      this.backlogged.add(queue);
+    }
+    if (!this.workers.isShutdown()) {
+      dispatch();
+    }
+  }
+
+  /**
+   * Get the number of polls running now.
+   *
+   * @return the number of running polls
+   */
+  public synchronized int getRunning() {
+    return this.running;
+  }
+
+  @Override
+  public void destroy() {
+    this.workers.shutdown();
+  }
+
+  private static final class RuleQueue {
+
+    private final String schema;
+
+    private final int weight;
+
+    private final TimerFacade queueDelay;
+
+    private Poll pending;
+
+    private boolean running;
+
+    private double finishTag;
+
+    private RuleQueue(String schema, int weight, TimerFacade queueDelay) {
+      this.schema = schema;
+      this.weight = weight;
+      this.queueDelay = queueDelay;
+    }
+
+  }
+
+  private static final class Poll {
+
+    private final Runnable task;
+
+    private final double startTag;
+
+    private final long enqueued;
+
+    private Poll(Runnable task, double startTag, long enqueued) {
+      this.task = task;
+      this.startTag = startTag;
+      this.enqueued = enqueued;
+    }
+
+  }
+
+}
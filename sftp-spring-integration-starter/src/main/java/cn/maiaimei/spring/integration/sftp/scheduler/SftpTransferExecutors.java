@@ -0,0 +1,130 @@
+package cn.maiaimei.spring.integration.sftp.scheduler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.Assert;
+
+/**
+ * The executors of the file transfers which run on virtual threads.
+ * <p>
+ * Each transfer gets its own virtual thread when the JVM supports them, before Java 21 the transfers share a bounded
+ * pool of platform threads instead. Either way the transfers of a schema are capped by the schema's permits rather
+ * than by a thread count, a transfer waiting for a permit holds no thread. A schema without max transfers is capped
+ * by the default max transfers, so that the transfers are never unbounded.
+ */
+public class SftpTransferExecutors implements DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(SftpTransferExecutors.class);
+
+  private static final String THREAD_NAME_PREFIX = "sftp-transfer-";
+
+  /**
+   * The cap of the transfers of a schema running at once, if its max transfers are not set.
+   */
+  public static final int DEFAULT_MAX_TRANSFERS = 10;
+
+  private final Executor executor;
+
+  private final ThreadPoolTaskExecutor platformExecutor;
+
+  private final Map<String, Integer> maxTransfers = new ConcurrentHashMap<>();
+
+  private final Map<String, Executor> schemaExecutors = new ConcurrentHashMap<>();
+
+  /**
+   * Construct the transfer executors.
+   *
+   * @param platformPoolSize the number of platform threads used when virtual threads are not supported
+   */
+  public SftpTransferExecutors(int platformPoolSize) {
+    Assert.isTrue(platformPoolSize > 0, "platformPoolSize must be positive");
+    Executor virtualExecutor = null;
+    try {
+      final SimpleAsyncTaskExecutor asyncExecutor = new SimpleAsyncTaskExecutor(THREAD_NAME_PREFIX);
+      asyncExecutor.setVirtualThreads(Boolean.TRUE);
+      virtualExecutor = asyncExecutor;
+    } catch (UnsupportedOperationException e) {
+      log.info("Virtual threads are not supported, transfer files with {} platform threads", platformPoolSize);
+    }
+    if (virtualExecutor != null) {
+      this.executor = virtualExecutor;
+      this.platformExecutor = null;
+    } else {
+      this.platformExecutor = new ThreadPoolTaskExecutor();
+      this.platformExecutor.setCorePoolSize(platformPoolSize);
+      this.platformExecutor.setMaxPoolSize(platformPoolSize);
+      this.platformExecutor.setThreadNamePrefix(THREAD_NAME_PREFIX);
+      this.platformExecutor.setWaitForTasksToCompleteOnShutdown(Boolean.TRUE);
+      this.platformExecutor.initialize();
+      this.executor = this.platformExecutor;
+    }
+  }
+
+  /**
+   * Cap the number of transfers of the given schema running at once.
+   *
+   * @param schema       the schema
+   * @param maxTransfers the cap, zero or less for {@link #DEFAULT_MAX_TRANSFERS}
+   */
+  public void setMaxTransfers(String schema, int maxTransfers) {
+    if (maxTransfers > 0) {
+      this.maxTransfers.put(schema, maxTransfers);
+    } else {
+      this.maxTransfers.remove(schema);
+    }
+    this.schemaExecutors.remove(schema);
+  }
+
+  /**
+   * Get the cap of the transfers of the given schema running at once.
+   *
+   * @param schema the schema
+   * @return the max transfers of the schema, or {@link #DEFAULT_MAX_TRANSFERS} if not set
+   */
+  public int getMaxTransfers(String schema) {
+    return this.maxTransfers.getOrDefault(schema, DEFAULT_MAX_TRANSFERS);
+  }
+
+  /**
+   * Whether the transfers run on virtual threads.
+   *
+   * @return true if virtual threads are supported by the JVM
+   */
+  public boolean isVirtual() {
+    return this.platformExecutor == null;
+  }
+
+  /**
+   * Get the executor running the transfers without any cap, e.g. for the segments of a transfer.
+   *
+   * @return an {@link Executor} instance
+   */
+  public Executor getExecutor() {
+    return this.executor;
+  }
+
+  /**
+   * Get the executor of the transfers of the given schema, shared by the rules of the schema.
+   *
+   * @param schema the schema
+   * @return an {@link Executor} instance capped by the max transfers of the schema
+   */
+  public Executor getExecutor(String schema) {
+    return this.schemaExecutors.computeIfAbsent(schema,
+        key -> new PermitExecutor(this.executor, getMaxTransfers(key)));
+  }
+
+  @Override
+  public void destroy() {
+    if (this.platformExecutor != null) {
+      this.platformExecutor.shutdown();
+    }
+  }
+
+}
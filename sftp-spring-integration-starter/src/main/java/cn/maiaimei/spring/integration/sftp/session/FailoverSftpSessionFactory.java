@@ -0,0 +1,318 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.file.remote.session.SessionFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link SessionFactory} spreading the sessions of a schema over the hosts of an HA group.
+ * <p>
+ * A host failing to open a session, or whose session fails the test of the session pool, is ejected for the eject
+ * duration, doubled on each consecutive failure up to 32 times. Once the duration elapsed the host is probed by the
+ * next session again, and is healthy again on success. If all the hosts are ejected, the host ejected first is tried.
+ */
+public class FailoverSftpSessionFactory implements SessionFactory<DirEntry> {
+
+  private static final Logger log = LoggerFactory.getLogger(FailoverSftpSessionFactory.class);
+
+  private static final int MAX_BACKOFF_SHIFT = 5;
+
+  private final List<Host> hosts;
+
+  private final SftpHostSelection selection;
+
+  private final long ejectNanos;
+
+  private final AtomicInteger next = new AtomicInteger();
+
+  /**
+   * Construct a factory by the given session factories of the hosts.
+   *
+   * @param sessionFactories the session factories by host, in order
+   * @param selection        how to select the host of a new session
+   * @param ejectDuration    the milliseconds an unhealthy host is ejected for
+   */
+  public FailoverSftpSessionFactory(Map<String, ? extends SessionFactory<DirEntry>> sessionFactories,
+      SftpHostSelection selection, long ejectDuration) {
+    Assert.notEmpty(sessionFactories, "sessionFactories must not be empty");
+    Assert.notNull(selection, "selection must not be null");
+    Assert.isTrue(ejectDuration > 0, "ejectDuration must be positive");
+    final List<Host> list = new ArrayList<>(sessionFactories.size());
+    sessionFactories.forEach((name, sessionFactory) -> list.add(new Host(name, sessionFactory)));
+    this.hosts = Collections.unmodifiableList(list);
+    this.selection = selection;
+    this.ejectNanos = TimeUnit.MILLISECONDS.toNanos(ejectDuration);
+  }
+
+  @Override
+  public Session<DirEntry> getSession() {
+    final List<Host> tried = new ArrayList<>(this.hosts.size());
+    RuntimeException failure = null;
+    Host host;
+    while ((host = select(tried)) != null) {
+      tried.add(host);
+      final long start = System.nanoTime();
+      try {
+        final Session<DirEntry> session = host.sessionFactory.getSession();
+        host.succeeded(System.nanoTime() - start);
+        return new HostSession(host, session);
+      } catch (RuntimeException e) {
+        host.failed(this.ejectNanos);
+        log.warn("Failed to open an SFTP session on host {}, failing over, message: {}", host, e.getMessage());
+        failure = e;
+      }
+    }
+    throw failure;
+  }
+
+  /**
+   * Select a healthy host not tried yet, or the host ejected first if all of them are ejected.
+   *
+   * @param tried the hosts already tried by the session
+   * @return the host, or null if all the hosts have been tried
+   */
+  private Host select(List<Host> tried) {
+    final long now = System.nanoTime();
+    final List<Host> healthy = new ArrayList<>(this.hosts.size());
+    Host ejectedFirst = null;
+    for (Host host : this.hosts) {
+      if (tried.contains(host)) {
+        continue;
+      }
+      if (host.isHealthy(now)) {
+        healthy.add(host);
+      } else if (ejectedFirst == null || host.ejectedUntil - ejectedFirst.ejectedUntil < 0) {
+        ejectedFirst = host;
+      }
+    }
+    if (healthy.isEmpty()) {
+      return tried.isEmpty() ? ejectedFirst : null;
+    }
+    final int start = Math.floorMod(this.next.getAndIncrement(), healthy.size());
+    switch (this.selection) {
+      case LEAST_ACTIVE:
+        Host least = null;
+        for (int i = 0; i < healthy.size(); i++) {
+          final Host host = healthy.get((start + i) % healthy.size());
+          if (least == null || host.active.get() < least.active.get()) {
+            least = host;
+          }
+        }
+        return least;
+      case LATENCY_WEIGHTED:
+        double total = 0;
+        for (Host host : healthy) {
+          total += host.weight();
+        }
+        double random = ThreadLocalRandom.current().nextDouble(total);
+        for (Host host : healthy) {
+          random -= host.weight();
+          if (random < 0) {
+            return host;
+          }
+        }
+        return healthy.get(healthy.size() - 1);
+      default:
+        return healthy.get(start);
+    }
+  }
+
+  /**
+   * Get the number of hosts not ejected.
+   *
+   * @return the number of healthy hosts
+   */
+  public int getHealthyHostCount() {
+    final long now = System.nanoTime();
+    int count = 0;
+    for (Host host : this.hosts) {
+      if (host.isHealthy(now)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static final class Host {
+
+    private final String name;
+
+    private final SessionFactory<DirEntry> sessionFactory;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private volatile int failures;
+
+    private volatile long ejectedUntil;
+
+    private volatile double latencyNanos;
+
+    private Host(String name, SessionFactory<DirEntry> sessionFactory) {
+      this.name = name;
+      this.sessionFactory = sessionFactory;
+    }
+
+    private boolean isHealthy(long now) {
+      return this.failures == 0 || now - this.ejectedUntil >= 0;
+    }
+
+    private synchronized void succeeded(long connectNanos) {
+      if (this.failures > 0) {
+        log.info("SFTP host {} is healthy again", this);
+      }
+      this.failures = 0;
+      // exponentially weighted moving average of the connect latency
+      this.latencyNanos = this.latencyNanos == 0 ? connectNanos : this.latencyNanos * 0.8 + connectNanos * 0.2;
+      this.active.incrementAndGet();
+    }
+
+    private synchronized void failed(long ejectNanos) {
+      if (this.failures > 0 && System.nanoTime() - this.ejectedUntil < 0) {
+        // already ejected, e.g. by another session of the host
+        return;
+      }
+      this.ejectedUntil = System.nanoTime() + (ejectNanos << Math.min(this.failures, MAX_BACKOFF_SHIFT));
+      this.failures++;
+      log.warn("SFTP host {} has been ejected after {} consecutive failures", this, this.failures);
+    }
+
+    private double weight() {
+      return 1d / Math.max(this.latencyNanos, 1d);
+    }
+
+    @Override
+    public String toString() {
+      return this.name;
+    }
+
+  }
+
+  /**
+   * The session of a host, counting the active sessions of the host and ejecting the host if the session fails its
+   * test.
+   */
+  private final class HostSession implements Session<DirEntry> {
+
+    private final Host host;
+
+    private final Session<DirEntry> session;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private HostSession(Host host, Session<DirEntry> session) {
+      this.host = host;
+      this.session = session;
+    }
+
+    @Override
+    public boolean remove(String path) throws IOException {
+      return this.session.remove(path);
+    }
+
+    @Override
+    public DirEntry[] list(String path) throws IOException {
+      return this.session.list(path);
+    }
+
+    @Override
+    public void read(String source, OutputStream outputStream) throws IOException {
+      this.session.read(source, outputStream);
+    }
+
+    @Override
+    public void write(InputStream inputStream, String destination) throws IOException {
+      this.session.write(inputStream, destination);
+    }
+
+    @Override
+    public void append(InputStream inputStream, String destination) throws IOException {
+      this.session.append(inputStream, destination);
+    }
+
+    @Override
+    public boolean mkdir(String directory) throws IOException {
+      return this.session.mkdir(directory);
+    }
+
+    @Override
+    public boolean rmdir(String directory) throws IOException {
+      return this.session.rmdir(directory);
+    }
+
+    @Override
+    public void rename(String pathFrom, String pathTo) throws IOException {
+      this.session.rename(pathFrom, pathTo);
+    }
+
+    @Override
+    public void close() {
+      try {
+        this.session.close();
+      } finally {
+        if (this.closed.compareAndSet(false, true)) {
+          this.host.active.decrementAndGet();
+        }
+      }
+    }
+
+    @Override
+    public boolean isOpen() {
+      return this.session.isOpen();
+    }
+
+    @Override
+    public boolean exists(String path) throws IOException {
+      return this.session.exists(path);
+    }
+
+    @Override
+    public String[] listNames(String path) throws IOException {
+      return this.session.listNames(path);
+    }
+
+    @Override
+    public InputStream readRaw(String source) throws IOException {
+      return this.session.readRaw(source);
+    }
+
+    @Override
+    public boolean finalizeRaw() throws IOException {
+      return this.session.finalizeRaw();
+    }
+
+    @Override
+    public Object getClientInstance() {
+      return this.session.getClientInstance();
+    }
+
+    @Override
+    public String getHostPort() {
+      return this.session.getHostPort();
+    }
+
+    @Override
+    public boolean test() {
+      final boolean healthy = this.session.test();
+      if (!healthy) {
+        this.host.failed(FailoverSftpSessionFactory.this.ejectNanos);
+      }
+      return healthy;
+    }
+
+  }
+
+}
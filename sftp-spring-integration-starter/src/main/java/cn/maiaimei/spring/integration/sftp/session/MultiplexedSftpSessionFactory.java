@@ -0,0 +1,214 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import cn.maiaimei.spring.integration.sftp.throttle.BandwidthLimiter;
+import cn.maiaimei.spring.integration.sftp.throttle.ThrottledSftpSession;
+import cn.maiaimei.spring.integration.sftp.throttle.ThrottledSftpSessionFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.sftp.session.SftpSession;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link ThrottledSftpSessionFactory} whose sessions are SFTP subsystem channels multiplexed over shared SSH
+ * connections, instead of one SSH connection per session.
+ * <p>
+ * A session is opened as a new channel on a connection with fewer than the max channels, a new connection is only
+ * established, and authenticated, when all the connections are full. A connection is closed with its last channel.
+ * <p>
+ * Only the channel slot is reserved under the lock of the connections, the connection is established and the channel
+ * is opened outside of it, so that a slow connect does not hold the sessions of the other connections. The sessions
+ * requested while a connection is being established reserve their slots on it and wait for it.
+ * <p>
+ * Each connection also keeps the channel it was established with open, the server must allow one more channel per
+ * connection than the max channels, e.g. OpenSSH's MaxSessions defaults to 10.
+ */
+public class MultiplexedSftpSessionFactory extends ThrottledSftpSessionFactory {
+
+  private static final Logger log = LoggerFactory.getLogger(MultiplexedSftpSessionFactory.class);
+
+  private final int maxChannels;
+
+  private final List<Connection> connections = new ArrayList<>();
+
+  /**
+   * Construct a factory by the given limiter and max channels per connection.
+   *
+   * @param limiter     the limiter shared by the sessions
+   * @param maxChannels the max number of sessions per connection
+   */
+  public MultiplexedSftpSessionFactory(BandwidthLimiter limiter, int maxChannels) {
+    super(limiter);
+    Assert.isTrue(maxChannels > 0, "maxChannels must be positive");
+    this.maxChannels = maxChannels;
+  }
+
+  @Override
+  public SftpSession getSession() {
+    while (true) {
+      Connection connection = null;
+      boolean establish = false;
+      synchronized (this.connections) {
+        for (Connection candidate : this.connections) {
+          if (!candidate.full && candidate.channels < this.maxChannels && candidate.isOpen()) {
+            connection = candidate;
+            break;
+          }
+        }
+        if (connection == null) {
+          connection = new Connection();
+          this.connections.add(connection);
+          establish = true;
+        }
+        connection.channels++;
+      }
+      if (establish) {
+        establish(connection);
+      }
+      final SftpSession session = openChannel(connection);
+      if (session != null) {
+        return session;
+      }
+      if (establish) {
+        throw new IllegalStateException("Failed to open an SFTP channel on a new connection " + connection);
+      }
+    }
+  }
+
+  /**
+   * Establish the given reserved connection, outside of the lock of the connections.
+   */
+  private void establish(Connection connection) {
+    final SftpSession anchor;
+    try {
+      // the connection's first channel is the anchor closing the connection, it is never handed out
+      anchor = super.getSession();
+    } catch (RuntimeException e) {
+      connection.established.completeExceptionally(e);
+      release(connection);
+      throw e;
+    }
+    connection.establish(anchor);
+    log.info("SFTP connection {} has been established, {} connections are open", connection,
+        getConnectionCount());
+  }
+
+  /**
+   * Open a channel on the given connection, whose slot has been reserved, outside of the lock of the connections.
+   *
+   * @return the session of the channel, or null if the connection refused it
+   */
+  private SftpSession openChannel(Connection connection) {
+    final SftpClient channel;
+    try {
+      channel = SftpClientFactory.instance().createSftpClient(connection.established.join());
+    } catch (CompletionException e) {
+      // the connection this session waited for could not be established
+      release(connection);
+      throw e.getCause() instanceof RuntimeException cause ? cause : e;
+    } catch (IOException e) {
+      // e.g. the server's max channels per connection has been reached, no more channels on this connection
+      log.warn("Failed to open an SFTP channel on connection {}, message: {}", connection, e.getMessage());
+      synchronized (this.connections) {
+        connection.full = true;
+        connection.channels--;
+        closeIfUnused(connection);
+      }
+      return null;
+    }
+    return new ThrottledSftpSession(channel, getLimiter(), getBufferSize()) {
+      private final AtomicBoolean released = new AtomicBoolean();
+
+      @Override
+      public void close() {
+        try {
+          super.close();
+        } finally {
+          if (released.compareAndSet(false, true)) {
+            release(connection);
+          }
+        }
+      }
+    };
+  }
+
+  private void release(Connection connection) {
+    synchronized (this.connections) {
+      connection.channels--;
+      closeIfUnused(connection);
+    }
+  }
+
+  private void closeIfUnused(Connection connection) {
+    if (connection.channels > 0 && connection.isOpen()) {
+      return;
+    }
+    this.connections.remove(connection);
+    if (connection.anchor == null) {
+      // the connection has not been established
+      return;
+    }
+    try {
+      connection.anchor.close();
+    } catch (RuntimeException e) {
+      log.warn("Failed to close SFTP connection {}, message: {}", connection, e.getMessage());
+    } finally {
+      // the anchor only closes the connection if it owns it, make sure it does not leak
+      connection.clientSession.close(false);
+    }
+  }
+
+  /**
+   * Get the number of open connections.
+   *
+   * @return the number of connections
+   */
+  public int getConnectionCount() {
+    synchronized (this.connections) {
+      return this.connections.size();
+    }
+  }
+
+  private static final class Connection {
+
+    private final CompletableFuture<ClientSession> established = new CompletableFuture<>();
+
+    private volatile SftpSession anchor;
+
+    private volatile ClientSession clientSession;
+
+    private int channels;
+
+    private boolean full;
+
+    private void establish(SftpSession anchor) {
+      this.anchor = anchor;
+      this.clientSession = ((SftpClient) anchor.getClientInstance()).getClientSession();
+      this.established.complete(this.clientSession);
+    }
+
+    private boolean isOpen() {
+      // a connection being established is open to the sessions waiting for it
+      if (!this.established.isDone()) {
+        return true;
+      }
+      final ClientSession session = this.clientSession;
+      return session != null && session.isOpen();
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(this.clientSession);
+    }
+
+  }
+
+}
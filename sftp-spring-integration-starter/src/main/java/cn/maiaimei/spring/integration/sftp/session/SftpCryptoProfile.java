@@ -0,0 +1,101 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.cipher.BuiltinCiphers;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.mac.BuiltinMacs;
+import org.apache.sshd.common.mac.Mac;
+
+/**
+ * The ciphers and MACs an SSH client proposes to the server, in order of preference.
+ * <p>
+ * Each profile falls back to the other common ciphers, so that the connection can still be established with a server
+ * not supporting the preferred ones. The key exchange is left to the SSHD defaults, which already prefer curve25519
+ * and ECDH and only cost once per connection.
+ */
+public enum SftpCryptoProfile {
+
+  /**
+   * The SSHD defaults.
+   */
+  DEFAULT(Collections.emptyList(), Collections.emptyList()),
+
+  /**
+   * AES-GCM first, the cheapest on CPUs with AES-NI, the MAC is part of the cipher.
+   */
+  AES_GCM(
+      Arrays.asList(BuiltinCiphers.aes128gcm, BuiltinCiphers.aes256gcm, BuiltinCiphers.cc20p1305_openssh,
+          BuiltinCiphers.aes128ctr, BuiltinCiphers.aes256ctr),
+      Arrays.asList(BuiltinMacs.hmacsha256etm, BuiltinMacs.hmacsha512etm, BuiltinMacs.hmacsha256)),
+
+  /**
+   * ChaCha20-Poly1305 first, the cheapest on CPUs without AES-NI, the MAC is part of the cipher.
+   */
+  CHACHA20(
+      Arrays.asList(BuiltinCiphers.cc20p1305_openssh, BuiltinCiphers.aes128gcm, BuiltinCiphers.aes256gcm,
+          BuiltinCiphers.aes128ctr, BuiltinCiphers.aes256ctr),
+      Arrays.asList(BuiltinMacs.hmacsha256etm, BuiltinMacs.hmacsha512etm, BuiltinMacs.hmacsha256)),
+
+  /**
+   * AES-CTR with HMAC-SHA2 first, for servers only supporting the older ciphers.
+   */
+  AES_CTR(
+      Arrays.asList(BuiltinCiphers.aes128ctr, BuiltinCiphers.aes256ctr, BuiltinCiphers.aes128gcm,
+          BuiltinCiphers.aes256gcm),
+      Arrays.asList(BuiltinMacs.hmacsha256etm, BuiltinMacs.hmacsha256, BuiltinMacs.hmacsha512etm,
+          BuiltinMacs.hmacsha512));
+
+  private final List<BuiltinCiphers> ciphers;
+
+  private final List<BuiltinMacs> macs;
+
+  SftpCryptoProfile(List<BuiltinCiphers> ciphers, List<BuiltinMacs> macs) {
+    this.ciphers = ciphers;
+    this.macs = macs;
+  }
+
+  /**
+   * Apply the profile and the compression to the given client, before it is started.
+   * <p>
+   * With compression, zlib@openssh.com is proposed first, which only compresses after the authentication, then zlib,
+   * then none if the server does not support compression.
+   *
+   * @param sshClient   the client to configure
+   * @param compression whether to propose compression
+   */
+  public void apply(SshClient sshClient, boolean compression) {
+    if (!this.ciphers.isEmpty()) {
+      final List<NamedFactory<Cipher>> cipherFactories = new ArrayList<>();
+      for (BuiltinCiphers cipher : this.ciphers) {
+        if (cipher.isSupported()) {
+          cipherFactories.add(cipher);
+        }
+      }
+      sshClient.setCipherFactories(cipherFactories);
+    }
+    if (!this.macs.isEmpty()) {
+      final List<NamedFactory<Mac>> macFactories = new ArrayList<>();
+      for (BuiltinMacs mac : this.macs) {
+        if (mac.isSupported()) {
+          macFactories.add(mac);
+        }
+      }
+      sshClient.setMacFactories(macFactories);
+    }
+    if (compression) {
+      final List<NamedFactory<Compression>> compressionFactories = new ArrayList<>();
+      compressionFactories.add(BuiltinCompressions.delayedZlib);
+      compressionFactories.add(BuiltinCompressions.zlib);
+      compressionFactories.add(BuiltinCompressions.none);
+      sshClient.setCompressionFactories(compressionFactories);
+    }
+  }
+
+}
@@ -0,0 +1,23 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+/**
+ * How a {@link FailoverSftpSessionFactory} selects the host of a new session among its healthy hosts.
+ */
+public enum SftpHostSelection {
+
+  /**
+   * The hosts in turn.
+   */
+  ROUND_ROBIN,
+
+  /**
+   * The host with the fewest open sessions, in turn on a tie.
+   */
+  LEAST_ACTIVE,
+
+  /**
+   * A random host, weighted by the inverse of its average connect latency, so a slow node gets fewer sessions.
+   */
+  LATENCY_WEIGHTED
+
+}
@@ -0,0 +1,416 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import cn.maiaimei.spring.integration.sftp.constants.SftpConstants;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.support.management.metrics.MetricsCaptor;
+import org.springframework.integration.support.management.metrics.TimerFacade;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Validates the pooled sessions of the schemas in the background, instead of testing every session on checkout.
+ * <p>
+ * On start the pools of all schemas are prewarmed to their min idle sessions in parallel, so that the first polls do
+ * not connect. The start only waits for the prewarm until the prewarm timeout, the schemas not prewarmed by then are
+ * reported and keep prewarming in the background, so that the application starts degraded instead of waiting for the
+ * slowest partner, or for a pool which cannot hold the min idle sessions. The time to open each session is exposed as the
+ * {@code sftp.session.connect} timer tagged by schema if a {@link MetricsCaptor} is available. Then the sessions are
+ * checked on a schedule: the pool hands out its idle sessions in FIFO order, checking them out one at
+ * a time visits each of them once. A session failing its test is evicted, the round trip of the test also keeps the
+ * healthy ones alive.
+ * <p>
+ * The validations of all schemas share one thread, so a checkout waits for the checkout timeout only: a pool whose
+ * sessions are all checked out by the transfers is skipped until the next validation, instead of holding the other
+ * schemas for the wait timeout of the pool. The pool of a schema whose sessions have been evicted is prewarmed again
+ * on a worker thread.
+ */
+public class SftpSessionValidator implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(SftpSessionValidator.class);
+
+  private static final int DEFAULT_PREWARM_PARALLELISM = 8;
+
+  private static final long DEFAULT_PREWARM_TIMEOUT = 30000;
+
+  private static final long DEFAULT_CHECKOUT_TIMEOUT = 1000;
+
+  private final Map<String, Settings> settings = new ConcurrentHashMap<>();
+
+  private MetricsCaptor metricsCaptor;
+
+  private int prewarmParallelism = DEFAULT_PREWARM_PARALLELISM;
+
+  private long prewarmTimeout = DEFAULT_PREWARM_TIMEOUT;
+
+  private long checkoutTimeout = DEFAULT_CHECKOUT_TIMEOUT;
+
+  private ScheduledExecutorService scheduler;
+
+  private ExecutorService worker;
+
+  private volatile boolean running;
+
+  /**
+   * Register the session pool of the given schema.
+   *
+   * @param schema             the schema
+   * @param sessionFactory     the session pool of the schema
+   * @param poolSize           the max sessions of the pool, zero or less if unbounded
+   * @param minIdle            the number of sessions to open on start, zero or less not to prewarm, at most the pool
+   *                           size
+   * @param validateCount      the number of sessions to check on each validation
+   * @param validationInterval the interval between two validations in milliseconds, zero or less not to validate
+   */
+  public void register(String schema, CachingSessionFactory<DirEntry> sessionFactory, int poolSize, int minIdle,
+      int validateCount, long validationInterval) {
+    Assert.notNull(sessionFactory, "sessionFactory must not be null");
+    // the prewarm holds the min idle sessions at once, more than the pool size would block on the checkout
+    Assert.isTrue(poolSize <= 0 || minIdle <= poolSize,
+        () -> "[" + schema + "] minIdle " + minIdle + " must not be greater than poolSize " + poolSize);
+    final TimerFacade connectTimer = this.metricsCaptor == null ? null : this.metricsCaptor
+        .timerBuilder(SftpConstants.CONNECT_TIMER)
+        .tag("schema", schema)
+        .description("the time to open a session of the schema")
+        .build();
+    this.settings.put(schema,
+        new Settings(sessionFactory, minIdle, Math.max(1, validateCount), validationInterval, connectTimer));
+  }
+
+  /**
+   * Set the metrics captor, before the schemas are registered.
+   *
+   * @param metricsCaptor the metrics captor
+   */
+  public void setMetricsCaptor(MetricsCaptor metricsCaptor) {
+    this.metricsCaptor = metricsCaptor;
+  }
+
+  /**
+   * Set the number of sessions opened at once on start, across all schemas.
+   *
+   * @param prewarmParallelism the number of sessions opened at once
+   */
+  public void setPrewarmParallelism(int prewarmParallelism) {
+    Assert.isTrue(prewarmParallelism > 0, "prewarmParallelism must be positive");
+    this.prewarmParallelism = prewarmParallelism;
+  }
+
+  /**
+   * Set how long the start waits for the prewarm, default is 30 seconds.
+   *
+   * @param prewarmTimeout the timeout in milliseconds, zero or less to wait until all the pools are prewarmed
+   */
+  public void setPrewarmTimeout(long prewarmTimeout) {
+    this.prewarmTimeout = prewarmTimeout;
+  }
+
+  /**
+   * Set how long a validation waits for an idle session of the pool, default is 1 second.
+   *
+   * @param checkoutTimeout the timeout in milliseconds
+   */
+  public void setCheckoutTimeout(long checkoutTimeout) {
+    Assert.isTrue(checkoutTimeout > 0, "checkoutTimeout must be positive");
+    this.checkoutTimeout = checkoutTimeout;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (this.running) {
+      return;
+    }
+    prewarmAll();
+    final CustomizableThreadFactory workerThreadFactory = new CustomizableThreadFactory("sftp-session-worker-");
+    workerThreadFactory.setDaemon(true);
+    this.worker = Executors.newCachedThreadPool(workerThreadFactory);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(
+        new CustomizableThreadFactory("sftp-session-validator-"));
+    this.settings.forEach((schema, setting) -> {
+      if (setting.validationInterval > 0) {
+        this.scheduler.scheduleWithFixedDelay(() -> validate(schema, setting),
+            setting.validationInterval, setting.validationInterval, TimeUnit.MILLISECONDS);
+      }
+    });
+    this.running = true;
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (this.scheduler != null) {
+      this.scheduler.shutdownNow();
+      this.scheduler = null;
+    }
+    if (this.worker != null) {
+      this.worker.shutdownNow();
+      this.worker = null;
+    }
+    this.running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return this.running;
+  }
+
+  /**
+   * Prewarm the pools of all schemas in parallel, waiting until the prewarm timeout.
+   */
+  private void prewarmAll() {
+    final List<Prewarm> prewarms = new ArrayList<>();
+    this.settings.forEach((schema, setting) -> {
+      if (setting.minIdle > 0) {
+        prewarms.add(new Prewarm(schema, setting));
+      }
+    });
+    if (prewarms.isEmpty()) {
+      return;
+    }
+    final int sessionCount = prewarms.stream().mapToInt(prewarm -> prewarm.setting.minIdle).sum();
+    final int rounds = prewarms.stream().mapToInt(prewarm -> prewarm.setting.minIdle).max().orElse(0);
+    final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sftp-session-prewarm-");
+    threadFactory.setDaemon(true);
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(this.prewarmParallelism, sessionCount), threadFactory);
+    final CountDownLatch done = new CountDownLatch(prewarms.size());
+    // interleave the schemas, so that a slow partner does not hold the workers of the others
+    for (int i = 0; i < rounds; i++) {
+      for (Prewarm prewarm : prewarms) {
+        if (i < prewarm.setting.minIdle) {
+          executor.execute(() -> prewarm.open(done));
+        }
+      }
+    }
+    executor.shutdown();
+    try {
+      if (this.prewarmTimeout > 0) {
+        if (!done.await(this.prewarmTimeout, TimeUnit.MILLISECONDS)) {
+          prewarms.stream().filter(prewarm -> !prewarm.isDone()).forEach(prewarm -> log.warn(
+              "[{}] Sessions have not been prewarmed in {} ms, starting degraded, the prewarm goes on in the "
+                  + "background", prewarm.schema, this.prewarmTimeout));
+        }
+      } else {
+        done.await();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Open sessions until the given number of sessions are idle in the pool, by checking them out at once.
+   */
+  private void prewarm(String schema, Settings setting, int count) {
+    if (count <= 0) {
+      return;
+    }
+    final List<Session<DirEntry>> sessions = new ArrayList<>(count);
+    try {
+      for (int i = 0; i < count; i++) {
+        sessions.add(open(setting));
+      }
+    } catch (RuntimeException e) {
+      log.warn("[{}] Error occurs in prewarming sessions, message: {}", schema, e.getMessage());
+    } finally {
+      sessions.forEach(Session::close);
+    }
+    log.info("[{}] {} sessions have been prewarmed", schema, sessions.size());
+  }
+
+  private static Session<DirEntry> open(Settings setting) {
+    final long start = System.nanoTime();
+    final Session<DirEntry> session = setting.sessionFactory.getSession();
+    if (setting.connectTimer != null) {
+      setting.connectTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    return session;
+  }
+
+  /**
+   * Check the idle sessions one at a time and evict the dead ones.
+   */
+  private void validate(String schema, Settings setting) {
+    int evicted = 0;
+    try {
+      for (int i = 0; i < setting.validateCount; i++) {
+        final Session<DirEntry> session = checkout(setting);
+        if (session == null) {
+          // the sessions in use are tested by the transfers themselves
+          log.debug("[{}] No idle session in {} ms, skipping the validation", schema, this.checkoutTimeout);
+          break;
+        }
+        try {
+          if (!session.test()) {
+            evict(session);
+            evicted++;
+          }
+        } finally {
+          session.close();
+        }
+      }
+    } catch (RuntimeException e) {
+      log.warn("[{}] Error occurs in validating sessions, message: {}", schema, e.getMessage());
+    }
+    if (evicted > 0) {
+      log.info("[{}] {} dead sessions have been evicted", schema, evicted);
+      // not on the validation thread, which is shared by all schemas
+      final ExecutorService executor = this.worker;
+      if (executor != null && setting.prewarming.compareAndSet(false, true)) {
+        executor.execute(() -> {
+          try {
+            prewarm(schema, setting, setting.minIdle);
+          } finally {
+            setting.prewarming.set(false);
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Check out a session of the pool on a worker thread, waiting for the checkout timeout at most.
+   *
+   * @return the session, or null if the pool has no idle session in time
+   */
+  private Session<DirEntry> checkout(Settings setting) {
+    final CompletableFuture<Session<DirEntry>> checkout =
+        CompletableFuture.supplyAsync(setting.sessionFactory::getSession, this.worker);
+    try {
+      return checkout.get(this.checkoutTimeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // the session is returned to the pool once it is checked out
+      checkout.thenAccept(Session::close);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      checkout.thenAccept(Session::close);
+      return null;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  private void evict(Session<DirEntry> session) {
+    // a dirty session is closed instead of returned to the pool
+    if (session instanceof CachingSessionFactory.CachedSession) {
+      ((CachingSessionFactory.CachedSession) session).dirty();
+    }
+  }
+
+  private static final class Settings {
+
+    private final CachingSessionFactory<DirEntry> sessionFactory;
+
+    private final int minIdle;
+
+    private final int validateCount;
+
+    private final long validationInterval;
+
+    private final TimerFacade connectTimer;
+
+    private final AtomicBoolean prewarming = new AtomicBoolean();
+
+    private Settings(CachingSessionFactory<DirEntry> sessionFactory, int minIdle, int validateCount,
+        long validationInterval, TimerFacade connectTimer) {
+      this.sessionFactory = sessionFactory;
+      this.minIdle = minIdle;
+      this.validateCount = validateCount;
+      this.validationInterval = validationInterval;
+      this.connectTimer = connectTimer;
+    }
+
+  }
+
+  /**
+   * The prewarm of a schema on start, whose sessions are held until all of them are open, so that the pool opens a
+   * new session for each of them instead of handing out an idle one.
+   */
+  private static final class Prewarm {
+
+    private final String schema;
+
+    private final Settings setting;
+
+    private final List<Session<DirEntry>> sessions = new ArrayList<>();
+
+    private final long start = System.nanoTime();
+
+    private int pending;
+
+    private int failed;
+
+    private long maxConnectNanos;
+
+    private String failure;
+
+    private Prewarm(String schema, Settings setting) {
+      this.schema = schema;
+      this.setting = setting;
+      this.pending = setting.minIdle;
+    }
+
+    private void open(CountDownLatch done) {
+      final long connectStart = System.nanoTime();
+      Session<DirEntry> session = null;
+      String message = null;
+      try {
+        session = SftpSessionValidator.open(this.setting);
+      } catch (RuntimeException e) {
+        message = e.getMessage();
+      }
+      final long connectNanos = System.nanoTime() - connectStart;
+      final List<Session<DirEntry>> opened;
+      synchronized (this) {
+        if (session != null) {
+          this.sessions.add(session);
+        } else {
+          this.failed++;
+          this.failure = message;
+        }
+        this.maxConnectNanos = Math.max(this.maxConnectNanos, connectNanos);
+        if (--this.pending > 0) {
+          return;
+        }
+        opened = new ArrayList<>(this.sessions);
+      }
+      opened.forEach(Session::close);
+      final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.start);
+      if (this.failed > 0) {
+        log.warn("[{}] {} sessions have been prewarmed in {} ms, {} failed, message: {}", this.schema,
+            opened.size(), elapsed, this.failed, this.failure);
+      } else {
+        log.info("[{}] {} sessions have been prewarmed in {} ms, max connect latency {} ms", this.schema,
+            opened.size(), elapsed, TimeUnit.NANOSECONDS.toMillis(this.maxConnectNanos));
+      }
+      done.countDown();
+    }
+
+    private synchronized boolean isDone() {
+      return this.pending == 0;
+    }
+
+  }
+
+}
@@ -0,0 +1,76 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.core.CoreModuleProperties;
+import org.springframework.util.Assert;
+
+/**
+ * The chunk size of the SFTP reads and writes of a connection, and the number of outstanding requests of its reads.
+ * <p>
+ * The buffer size is the size of the SSH_FXP_READ and SSH_FXP_WRITE requests of the connection's sessions, i.e. of
+ * the streaming GET, the PUT and the resumable upload, and of the resumable and segmented downloads, whose handlers
+ * read through the client with the same buffer size.
+ * <p>
+ * SSHD reads ahead as many SSH_FXP_READ requests as the client's channel window holds chunks. The channel window is
+ * therefore raised to hold the outstanding requests, so that a high-RTT link is kept full by the downloads instead of
+ * waiting for a response per chunk. The writes are pipelined up to the window the server grants, which the client
+ * cannot raise, so the outstanding requests and the window size have no effect on the uploads.
+ */
+public class SftpTransferWindow {
+
+  /**
+   * The SSHD defaults.
+   */
+  public static final SftpTransferWindow DEFAULT = new SftpTransferWindow(0, 0, 0);
+
+  private final int bufferSize;
+
+  private final int outstandingRequests;
+
+  private final long windowSize;
+
+  /**
+   * Construct a window by the given settings, a setting not greater than zero keeps the SSHD default.
+   *
+   * @param bufferSize          the size of a read or written chunk, i.e. of one request
+   * @param outstandingRequests the number of read requests to keep in flight
+   * @param windowSize          the min size of the client's channel window
+   */
+  public SftpTransferWindow(int bufferSize, int outstandingRequests, long windowSize) {
+    Assert.isTrue(outstandingRequests <= 0 || bufferSize > 0, "outstandingRequests requires a bufferSize");
+    this.bufferSize = bufferSize;
+    this.outstandingRequests = outstandingRequests;
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * Get the size of a read or written chunk.
+   *
+   * @return the buffer size, not greater than zero for the SSHD default
+   */
+  public int getBufferSize() {
+    return this.bufferSize;
+  }
+
+  /**
+   * Get the size of the channel window, large enough for the outstanding requests.
+   *
+   * @return the window size, not greater than zero for the SSHD default
+   */
+  public long getWindowSize() {
+    return Math.max(this.windowSize, (long) this.bufferSize * Math.max(this.outstandingRequests, 0));
+  }
+
+  /**
+   * Apply the window size to the given client, before it is started.
+   *
+   * @param sshClient the client to configure
+   */
+  public void apply(SshClient sshClient) {
+    final long size = getWindowSize();
+    if (size > 0) {
+      CoreModuleProperties.WINDOW_SIZE.set(sshClient, size);
+    }
+  }
+
+}
@@ -0,0 +1,195 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.file.remote.session.SessionFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link SessionFactory} which hands out one session per thread while an {@link #invoke(Runnable)} scope is open,
+ * so that the remote operations of a file share one session.
+ * <p>
+ * Unlike {@code RemoteFileTemplate#invoke}, the bound session is checked on each checkout: once it is closed, e.g. its
+ * connection has been lost by a failed transfer, it is discarded and a new session is checked out and bound for the
+ * rest of the scope. So a retried transfer runs on a live session. Outside of a scope, the sessions of the delegate are
+ * returned as they are.
+ */
+public class ThreadBoundSessionFactory implements SessionFactory<DirEntry> {
+
+  private static final Logger log = LoggerFactory.getLogger(ThreadBoundSessionFactory.class);
+
+  private final SessionFactory<DirEntry> sessionFactory;
+
+  private final ThreadLocal<Binding> bindings = new ThreadLocal<>();
+
+  /**
+   * Construct a factory binding the sessions of the given factory.
+   *
+   * @param sessionFactory the factory to check the sessions out from
+   */
+  public ThreadBoundSessionFactory(SessionFactory<DirEntry> sessionFactory) {
+    Assert.notNull(sessionFactory, "sessionFactory must not be null");
+    this.sessionFactory = sessionFactory;
+  }
+
+  @Override
+  public Session<DirEntry> getSession() {
+    final Binding binding = this.bindings.get();
+    if (Objects.isNull(binding)) {
+      return this.sessionFactory.getSession();
+    }
+    if (Objects.nonNull(binding.session) && !binding.session.isOpen()) {
+      log.warn("The session bound to {} has been lost, checking out a new one", Thread.currentThread().getName());
+      discard(binding.session);
+      binding.session = null;
+    }
+    if (Objects.isNull(binding.session)) {
+      binding.session = this.sessionFactory.getSession();
+    }
+    return new BoundSession(binding.session);
+  }
+
+  /**
+   * Run the given action with a session bound to the current thread, the session is checked out on the first use and
+   * released when the action returns. A nested scope runs on the session of the outer one.
+   *
+   * @param action the action to run
+   */
+  public void invoke(Runnable action) {
+    if (Objects.nonNull(this.bindings.get())) {
+      action.run();
+      return;
+    }
+    final Binding binding = new Binding();
+    this.bindings.set(binding);
+    try {
+      action.run();
+    } finally {
+      this.bindings.remove();
+      if (Objects.nonNull(binding.session)) {
+        binding.session.close();
+      }
+    }
+  }
+
+  private static void discard(Session<DirEntry> session) {
+    if (session instanceof CachingSessionFactory<?>.CachedSession cachedSession) {
+      // a dirty session is closed instead of being returned to the pool
+      cachedSession.dirty();
+    } else {
+      session.close();
+    }
+  }
+
+  private static final class Binding {
+
+    private Session<DirEntry> session;
+
+  }
+
+  /**
+   * The bound session handed out by a checkout, closing it leaves the session bound until the end of the scope.
+   */
+  private static final class BoundSession implements Session<DirEntry> {
+
+    private final Session<DirEntry> session;
+
+    private BoundSession(Session<DirEntry> session) {
+      this.session = session;
+    }
+
+    @Override
+    public boolean remove(String path) throws IOException {
+      return this.session.remove(path);
+    }
+
+    @Override
+    public DirEntry[] list(String path) throws IOException {
+      return this.session.list(path);
+    }
+
+    @Override
+    public void read(String source, OutputStream outputStream) throws IOException {
+      this.session.read(source, outputStream);
+    }
+
+    @Override
+    public void write(InputStream inputStream, String destination) throws IOException {
+      this.session.write(inputStream, destination);
+    }
+
+    @Override
+    public void append(InputStream inputStream, String destination) throws IOException {
+      this.session.append(inputStream, destination);
+    }
+
+    @Override
+    public boolean mkdir(String directory) throws IOException {
+      return this.session.mkdir(directory);
+    }
+
+    @Override
+    public boolean rmdir(String directory) throws IOException {
+      return this.session.rmdir(directory);
+    }
+
+    @Override
+    public void rename(String pathFrom, String pathTo) throws IOException {
+      this.session.rename(pathFrom, pathTo);
+    }
+
+    @Override
+    public void close() {
+      // released at the end of the scope
+    }
+
+    @Override
+    public boolean isOpen() {
+      return this.session.isOpen();
+    }
+
+    @Override
+    public boolean exists(String path) throws IOException {
+      return this.session.exists(path);
+    }
+
+    @Override
+    public String[] listNames(String path) throws IOException {
+      return this.session.listNames(path);
+    }
+
+    @Override
+    public InputStream readRaw(String source) throws IOException {
+      return this.session.readRaw(source);
+    }
+
+    @Override
+    public boolean finalizeRaw() throws IOException {
+      return this.session.finalizeRaw();
+    }
+
+    @Override
+    public Object getClientInstance() {
+      return this.session.getClientInstance();
+    }
+
+    @Override
+    public String getHostPort() {
+      return this.session.getHostPort();
+    }
+
+    @Override
+    public boolean test() {
+      return this.session.test();
+    }
+
+  }
+
+}
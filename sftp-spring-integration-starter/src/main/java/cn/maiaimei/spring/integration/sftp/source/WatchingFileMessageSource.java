@@ -0,0 +1,235 @@
+package cn.maiaimei.spring.integration.sftp.source;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.springframework.context.Lifecycle;
+import org.springframework.integration.endpoint.AbstractMessageSource;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.file.filters.FileListFilter;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.util.Assert;
+
+/**
+ * A message source of the files of a local folder, driven by the CREATE and MODIFY events of a {@link WatchService}
+ * instead of listing the folder on each poll.
+ * <p>
+ * A file is emitted once its size has been stable for the debounce duration, so a file still being written by
+ * another process is not uploaded half-way. The events are lost when the queue of the watch service overflows, the
+ * folder is rescanned fully then. The cron only drives a safety-net sweep of the folder, catching the files whose
+ * events have been missed, e.g. on a network file system, the folder is swept on start too.
+ */
+public class WatchingFileMessageSource extends AbstractMessageSource<File> implements Lifecycle, Closeable {
+
+  private final File directory;
+
+  private final FileListFilter<File> filter;
+
+  private final long debounceNanos;
+
+  private final CronExpression sweepCron;
+
+  private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+  private final Queue<File> settled = new ConcurrentLinkedQueue<>();
+
+  private volatile WatchService watchService;
+
+  private volatile LocalDateTime nextSweep;
+
+  /**
+   * Construct an instance.
+   *
+   * @param directory the local folder to watch
+   * @param filter    the filter of the settled files
+   * @param debounce  the milliseconds the size of a file must be stable for before it is emitted
+   * @param cron      the cron expression of the safety-net sweep, null to sweep on start only
+   */
+  public WatchingFileMessageSource(File directory, FileListFilter<File> filter, long debounce, String cron) {
+    Assert.notNull(directory, "directory must not be null");
+    Assert.notNull(filter, "filter must not be null");
+    Assert.isTrue(debounce >= 0, "debounce must not be negative");
+    this.directory = directory;
+    this.filter = filter;
+    this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounce);
+    this.sweepCron = Objects.isNull(cron) ? null : CronExpression.parse(cron);
+  }
+
+  @Override
+  public String getComponentType() {
+    return "file:watching-inbound-channel-adapter";
+  }
+
+  @Override
+  public synchronized void start() {
+    if (isRunning()) {
+      return;
+    }
+    if (!this.directory.exists() && !this.directory.mkdirs()) {
+      throw new IllegalStateException("Failed to create local folder " + this.directory);
+    }
+    try {
+      final WatchService service = FileSystems.getDefault().newWatchService();
+      this.directory.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+      this.watchService = service;
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to watch local folder " + this.directory, e);
+    }
+    final Thread watcher = new Thread(this::watch, "sftp-watch-" + this.directory.getName());
+    watcher.setDaemon(true);
+    watcher.start();
+    sweep();
+  }
+
+  @Override
+  public synchronized void stop() {
+    final WatchService service = this.watchService;
+    this.watchService = null;
+    if (Objects.nonNull(service)) {
+      try {
+        // wakes the watch thread up with a ClosedWatchServiceException
+        service.close();
+      } catch (IOException e) {
+        logger.warn(e, () -> "Failed to close the watch service of " + this.directory);
+      }
+    }
+    this.pending.clear();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return Objects.nonNull(this.watchService);
+  }
+
+  @Override
+  public void close() {
+    stop();
+  }
+
+  @Override
+  protected Object doReceive() {
+    if (!isRunning()) {
+      start();
+    }
+    if (Objects.nonNull(this.sweepCron) && !LocalDateTime.now().isBefore(this.nextSweep)) {
+      sweep();
+    }
+    if (this.settled.isEmpty()) {
+      settle();
+    }
+    final File file = this.settled.poll();
+    if (Objects.isNull(file)) {
+      return null;
+    }
+    return getMessageBuilderFactory().withPayload(file)
+        .setHeader(FileHeaders.FILENAME, file.getName())
+        .setHeader(FileHeaders.RELATIVE_PATH, file.getName())
+        .setHeader(FileHeaders.ORIGINAL_FILE, file);
+  }
+
+  private void watch() {
+    WatchService service;
+    while (Objects.nonNull(service = this.watchService)) {
+      final WatchKey key;
+      try {
+        key = service.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ClosedWatchServiceException e) {
+        return;
+      }
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (StandardWatchEventKinds.OVERFLOW == event.kind()) {
+          logger.warn(() -> "Events of local folder " + this.directory + " have been lost, rescanning it");
+          sweep();
+        } else {
+          // a new event restarts the debounce of the file
+          final File file = this.directory.toPath().resolve((Path) event.context()).toFile();
+          this.pending.put(file.getName(), new Pending(file));
+        }
+      }
+      if (!key.reset()) {
+        logger.error(() -> "Local folder " + this.directory + " is no longer watched, relying on the sweep");
+        return;
+      }
+    }
+  }
+
+  /**
+   * List the local folder, adding the files not pending yet.
+   */
+  private void sweep() {
+    if (Objects.nonNull(this.sweepCron)) {
+      this.nextSweep = this.sweepCron.next(LocalDateTime.now());
+    }
+    final File[] files = this.directory.listFiles(File::isFile);
+    if (Objects.isNull(files)) {
+      return;
+    }
+    for (File file : files) {
+      this.pending.putIfAbsent(file.getName(), new Pending(file));
+    }
+  }
+
+  /**
+   * Move the pending files whose size has been stable for the debounce duration through the filter to the settled
+   * files.
+   */
+  private void settle() {
+    final long now = System.nanoTime();
+    final Iterator<Map.Entry<String, Pending>> iterator = this.pending.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Map.Entry<String, Pending> entry = iterator.next();
+      final Pending file = entry.getValue();
+      if (!file.file.isFile()) {
+        this.pending.remove(entry.getKey(), file);
+        continue;
+      }
+      final long size = file.file.length();
+      if (size != file.size) {
+        file.size = size;
+        file.since = now;
+      } else if (now - file.since >= this.debounceNanos && this.pending.remove(entry.getKey(), file)) {
+        final List<File> accepted = this.filter.filterFiles(new File[]{file.file});
+        this.settled.addAll(Objects.isNull(accepted) ? Collections.emptyList() : accepted);
+      }
+    }
+  }
+
+  /**
+   * A file waiting for its size to be stable.
+   */
+  private static final class Pending {
+
+    private final File file;
+
+    private long size = -1;
+
+    private long since;
+
+    private Pending(File file) {
+      this.file = file;
+    }
+
+  }
+
+}
@@ -0,0 +1,40 @@
+package cn.maiaimei.spring.integration.sftp.throttle;
+
+import java.io.InterruptedIOException;
+import org.springframework.util.Assert;
+
+/**
+ * Limits the bytes per second transferred through it.
+ */
+@FunctionalInterface
+public interface BandwidthLimiter {
+
+  /**
+   * A limiter which never waits.
+   */
+  BandwidthLimiter NONE = bytes -> {
+  };
+
+  /**
+   * Account for the given bytes, waiting as long as the limit requires.
+   *
+   * @param bytes the number of bytes transferred or about to be transferred
+   * @throws InterruptedIOException if the thread is interrupted while waiting
+   */
+  void acquire(long bytes) throws InterruptedIOException;
+
+  /**
+   * Return a limiter which acquires from this limiter and then from the given one, e.g. a rule and its schema.
+   *
+   * @param next the limiter to acquire from after this one
+   * @return the chained limiter
+   */
+  default BandwidthLimiter andThen(BandwidthLimiter next) {
+    Assert.notNull(next, "next must not be null");
+    return bytes -> {
+      acquire(bytes);
+      next.acquire(bytes);
+    };
+  }
+
+}
@@ -0,0 +1,46 @@
+package cn.maiaimei.spring.integration.sftp.throttle;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link TokenBucketBandwidthLimiter} of each schema, shared by the sessions of the schema and the handlers which
+ * transfer bytes through the SFTP client directly.
+ */
+public class SftpBandwidthLimiters {
+
+  private final Map<String, TokenBucketBandwidthLimiter> limiters = new ConcurrentHashMap<>();
+
+  /**
+   * Register the limiter of the given schema.
+   *
+   * @param schema            the schema
+   * @param maxBytesPerSecond the limit in bytes per second, zero or less if unlimited
+   * @return the registered limiter
+   */
+  public TokenBucketBandwidthLimiter register(String schema, long maxBytesPerSecond) {
+    return this.limiters.computeIfAbsent(schema, key -> new TokenBucketBandwidthLimiter(maxBytesPerSecond));
+  }
+
+  /**
+   * Get the limiter of the given schema.
+   *
+   * @param schema the schema
+   * @return the limiter of the schema, or {@link BandwidthLimiter#NONE} if not registered
+   */
+  public BandwidthLimiter get(String schema) {
+    final BandwidthLimiter limiter = this.limiters.get(schema);
+    return limiter != null ? limiter : BandwidthLimiter.NONE;
+  }
+
+  /**
+   * Get the limiters by schema.
+   *
+   * @return an unmodifiable view of the limiters
+   */
+  public Map<String, TokenBucketBandwidthLimiter> getLimiters() {
+    return Collections.unmodifiableMap(this.limiters);
+  }
+
+}
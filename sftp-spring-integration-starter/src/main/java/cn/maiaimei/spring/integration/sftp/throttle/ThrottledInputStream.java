@@ -0,0 +1,37 @@
+package cn.maiaimei.spring.integration.sftp.throttle;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Acquires the bytes read through it from a {@link BandwidthLimiter}.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+
+  private final BandwidthLimiter limiter;
+
+  public ThrottledInputStream(InputStream in, BandwidthLimiter limiter) {
+    super(in);
+    this.limiter = limiter;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int read = super.read();
+    if (read >= 0) {
+      this.limiter.acquire(1);
+    }
+    return read;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    final int read = super.read(bytes, offset, length);
+    if (read > 0) {
+      this.limiter.acquire(read);
+    }
+    return read;
+  }
+
+}
@@ -0,0 +1,31 @@
+package cn.maiaimei.spring.integration.sftp.throttle;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Acquires the bytes written through it from a {@link BandwidthLimiter}.
+ */
+public class ThrottledOutputStream extends FilterOutputStream {
+
+  private final BandwidthLimiter limiter;
+
+  public ThrottledOutputStream(OutputStream out, BandwidthLimiter limiter) {
+    super(out);
+    this.limiter = limiter;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    this.limiter.acquire(1);
+    this.out.write(b);
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    this.limiter.acquire(length);
+    this.out.write(bytes, offset, length);
+  }
+
+}
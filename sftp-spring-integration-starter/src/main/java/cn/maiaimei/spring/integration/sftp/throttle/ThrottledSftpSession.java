@@ -0,0 +1,75 @@
+package cn.maiaimei.spring.integration.sftp.throttle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.OpenMode;
+import org.springframework.integration.sftp.session.SftpSession;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link SftpSession} whose read and written streams acquire their bytes from a {@link BandwidthLimiter}.
+ * <p>
+ * With a buffer size, the streams read ahead and write in chunks of that size, instead of the SSHD default.
+ */
+public class ThrottledSftpSession extends SftpSession {
+
+  private final BandwidthLimiter limiter;
+
+  private final int bufferSize;
+
+  public ThrottledSftpSession(SftpClient sftpClient, BandwidthLimiter limiter) {
+    this(sftpClient, limiter, 0);
+  }
+
+  public ThrottledSftpSession(SftpClient sftpClient, BandwidthLimiter limiter, int bufferSize) {
+    super(sftpClient);
+    Assert.notNull(limiter, "limiter must not be null");
+    this.limiter = limiter;
+    this.bufferSize = bufferSize;
+  }
+
+  @Override
+  public void read(String source, OutputStream outputStream) throws IOException {
+    if (this.bufferSize <= 0) {
+      super.read(source, new ThrottledOutputStream(outputStream, this.limiter));
+      return;
+    }
+    try (InputStream inputStream = getClientInstance().read(source, this.bufferSize)) {
+      inputStream.transferTo(new ThrottledOutputStream(outputStream, this.limiter));
+    }
+  }
+
+  @Override
+  public InputStream readRaw(String source) throws IOException {
+    final InputStream inputStream = this.bufferSize <= 0
+        ? super.readRaw(source) : getClientInstance().read(source, this.bufferSize);
+    return new ThrottledInputStream(inputStream, this.limiter);
+  }
+
+  @Override
+  public void write(InputStream inputStream, String destination) throws IOException {
+    if (this.bufferSize <= 0) {
+      super.write(new ThrottledInputStream(inputStream, this.limiter), destination);
+      return;
+    }
+    write(inputStream, destination, OpenMode.Write, OpenMode.Create, OpenMode.Truncate);
+  }
+
+  @Override
+  public void append(InputStream inputStream, String destination) throws IOException {
+    if (this.bufferSize <= 0) {
+      super.append(new ThrottledInputStream(inputStream, this.limiter), destination);
+      return;
+    }
+    write(inputStream, destination, OpenMode.Write, OpenMode.Create, OpenMode.Append);
+  }
+
+  private void write(InputStream inputStream, String destination, OpenMode... modes) throws IOException {
+    try (OutputStream outputStream = getClientInstance().write(destination, this.bufferSize, modes)) {
+      new ThrottledInputStream(inputStream, this.limiter).transferTo(outputStream);
+    }
+  }
+
+}
@@ -0,0 +1,56 @@
+package cn.maiaimei.spring.integration.sftp.throttle;
+
+import org.apache.sshd.sftp.client.SftpClient;
+import org.springframework.integration.sftp.session.DefaultSftpSessionFactory;
+import org.springframework.integration.sftp.session.SftpSession;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link DefaultSftpSessionFactory} whose sessions share one {@link BandwidthLimiter}, so that all the transfers of
+ * a schema together stay below its limit.
+ */
+public class ThrottledSftpSessionFactory extends DefaultSftpSessionFactory {
+
+  private final BandwidthLimiter limiter;
+
+  private int bufferSize;
+
+  public ThrottledSftpSessionFactory(BandwidthLimiter limiter) {
+    Assert.notNull(limiter, "limiter must not be null");
+    this.limiter = limiter;
+  }
+
+  @Override
+  public SftpSession getSession() {
+    final SftpSession session = super.getSession();
+    return new ThrottledSftpSession((SftpClient) session.getClientInstance(), this.limiter, this.bufferSize);
+  }
+
+  /**
+   * Set the size of the chunks the sessions stream, not greater than zero for the SSHD default.
+   *
+   * @param bufferSize the buffer size
+   */
+  public void setBufferSize(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Get the size of the chunks the sessions stream.
+   *
+   * @return the buffer size
+   */
+  protected int getBufferSize() {
+    return this.bufferSize;
+  }
+
+  /**
+   * Get the limiter shared by the sessions.
+   *
+   * @return the limiter
+   */
+  protected BandwidthLimiter getLimiter() {
+    return this.limiter;
+  }
+
+}
@@ -0,0 +1,104 @@
+package cn.maiaimei.spring.integration.sftp.throttle;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket {@link BandwidthLimiter} shared by all the transfers of a schema or a rule.
+ * <p>
+ * The bucket refills at {@code bytesPerSecond} and holds at most one second of tokens, so a burst never exceeds the
+ * limit for longer than a second. A transfer takes its tokens at once and may run the bucket into debt, then sleeps
+ * until the debt is paid, so that concurrent transfers are served in order without spinning. A limit of zero or less
+ * never waits, the throughput is measured in any case.
+ */
+public class TokenBucketBandwidthLimiter implements BandwidthLimiter {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final long bytesPerSecond;
+
+  private final LongAdder transferred = new LongAdder();
+
+  private double tokens;
+
+  private long refilledAt;
+
+  private long sampledAt;
+
+  private long sampledBytes;
+
+  private double throughput;
+
+  public TokenBucketBandwidthLimiter(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+    this.tokens = Math.max(bytesPerSecond, 0);
+    this.refilledAt = System.nanoTime();
+    this.sampledAt = this.refilledAt;
+  }
+
+  @Override
+  public void acquire(long bytes) throws InterruptedIOException {
+    if (bytes <= 0) {
+      return;
+    }
+    this.transferred.add(bytes);
+    if (this.bytesPerSecond <= 0) {
+      return;
+    }
+    final long waitNanos = reserve(bytes);
+    if (waitNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+      }
+    }
+  }
+
+  /**
+   * Get the limit in bytes per second, zero or less if unlimited.
+   *
+   * @return the limit in bytes per second
+   */
+  public long getBytesPerSecond() {
+    return this.bytesPerSecond;
+  }
+
+  /**
+   * Get the total bytes transferred through this limiter.
+   *
+   * @return the total bytes
+   */
+  public long getTransferredBytes() {
+    return this.transferred.sum();
+  }
+
+  /**
+   * Get the bytes per second transferred since the previous sample, sampled at most once per second.
+   *
+   * @return the measured throughput in bytes per second
+   */
+  public synchronized double getThroughput() {
+    final long now = System.nanoTime();
+    final long elapsed = now - this.sampledAt;
+    if (elapsed >= NANOS_PER_SECOND) {
+      final long bytes = this.transferred.sum();
+      this.throughput = (bytes - this.sampledBytes) * (double) NANOS_PER_SECOND / elapsed;
+      this.sampledBytes = bytes;
+      this.sampledAt = now;
+    }
+    return this.throughput;
+  }
+
+  private synchronized long reserve(long bytes) {
+    final long now = System.nanoTime();
+    this.tokens = Math.min(this.bytesPerSecond,
+        this.tokens + (now - this.refilledAt) * (double) this.bytesPerSecond / NANOS_PER_SECOND);
+    this.refilledAt = now;
+    this.tokens -= bytes;
+    return this.tokens >= 0 ? 0 : (long) (-this.tokens * NANOS_PER_SECOND / this.bytesPerSecond);
+  }
+
+}
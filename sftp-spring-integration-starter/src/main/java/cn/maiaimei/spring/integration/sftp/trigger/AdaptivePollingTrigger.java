@@ -0,0 +1,89 @@
+package cn.maiaimei.spring.integration.sftp.trigger;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.springframework.integration.aop.ReceiveMessageAdvice;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.util.Assert;
+
+/**
+ * A poller {@link Trigger} whose interval adapts to the polls, bounded by a cron expression.
+ * <p>
+ * It must be added to the advice chain of the poller too, so that it sees whether a poll received any message. While
+ * the polls receive messages the interval is divided by the multiplier down to the min interval, when a poll comes
+ * back empty it is multiplied up to the max interval. The next poll never comes later than the next fire time of the
+ * cron, so the cron remains the worst case latency.
+ */
+public class AdaptivePollingTrigger implements Trigger, ReceiveMessageAdvice {
+
+  private static final long DEFAULT_MAX_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+  private final CronTrigger cronTrigger;
+
+  private final long minInterval;
+
+  private final long maxInterval;
+
+  private final double multiplier;
+
+  private volatile boolean received;
+
+  private long interval;
+
+  /**
+   * Construct an adaptive polling trigger.
+   *
+   * @param cron        the cron expression bounding the next poll
+   * @param minInterval the min interval in milliseconds, reached while the polls receive messages
+   * @param maxInterval the max interval in milliseconds, reached while the polls come back empty, zero or less to be
+   *                    bounded by the cron only
+   * @param multiplier  the factor the interval is divided or multiplied by after each poll
+   */
+  public AdaptivePollingTrigger(String cron, long minInterval, long maxInterval, double multiplier) {
+    Assert.hasText(cron, "cron must not be empty");
+    Assert.isTrue(minInterval > 0, "minInterval must be positive");
+    Assert.isTrue(maxInterval <= 0 || maxInterval >= minInterval, "maxInterval must not be less than minInterval");
+    Assert.isTrue(multiplier > 1, "multiplier must be greater than 1");
+    this.cronTrigger = new CronTrigger(cron);
+    this.minInterval = minInterval;
+    this.maxInterval = maxInterval > 0 ? maxInterval : DEFAULT_MAX_INTERVAL;
+    this.multiplier = multiplier;
+    this.interval = minInterval;
+  }
+
+  @Override
+  public synchronized Instant nextExecution(TriggerContext triggerContext) {
+    final Instant lastCompletion = triggerContext.lastCompletion();
+    if (lastCompletion != null) {
+      this.interval = this.received
+          ? Math.max(this.minInterval, (long) (this.interval / this.multiplier))
+          : Math.min(this.maxInterval, (long) (this.interval * this.multiplier));
+    }
+    this.received = false;
+    final Instant base = lastCompletion != null ? lastCompletion : triggerContext.getClock().instant();
+    final Instant next = base.plusMillis(this.interval);
+    final Instant cronNext = this.cronTrigger.nextExecution(triggerContext);
+    return cronNext != null && cronNext.isBefore(next) ? cronNext : next;
+  }
+
+  @Override
+  public Message<?> afterReceive(Message<?> result, Object source) {
+    if (result != null) {
+      this.received = true;
+    }
+    return result;
+  }
+
+  /**
+   * Get the current interval in milliseconds.
+   *
+   * @return the current interval
+   */
+  public synchronized long getInterval() {
+    return this.interval;
+  }
+
+}
@@ -0,0 +1,93 @@
+package cn.maiaimei.spring.integration.sftp.utils;
+
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.apache.sshd.sftp.client.extensions.CheckFileNameExtension;
+import org.springframework.integration.file.remote.RemoteFileTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+public final class ChecksumUtils {
+
+  private ChecksumUtils() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Get the sidecar file of the given file, e.g. {@code X.dat.sha256} for {@code X.dat}.
+   */
+  public static String getSidecarFile(String file, ChecksumAlgorithm algorithm) {
+    return file + "." + algorithm.getExtension();
+  }
+
+  /**
+   * Read the expected checksum from a local sidecar file.
+   */
+  public static String readSidecar(Path sidecarFile) {
+    try {
+      return parseSidecar(Files.readString(sidecarFile, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read sidecar file " + sidecarFile, e);
+    }
+  }
+
+  /**
+   * Read the expected checksum from a remote sidecar file.
+   */
+  public static String readSidecar(RemoteFileTemplate<DirEntry> template, String remoteSidecarFile) {
+    return template.execute(session -> {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      session.read(remoteSidecarFile, out);
+      return parseSidecar(out.toString(StandardCharsets.UTF_8));
+    });
+  }
+
+  /**
+   * Ask the server for the checksum of a remote file through the SFTP {@code check-file} extension.
+   */
+  public static String checkFile(RemoteFileTemplate<DirEntry> template, String remoteFile,
+      ChecksumAlgorithm algorithm) {
+    Assert.notNull(algorithm.getCheckFileAlgorithm(), algorithm + " is not supported by check-file");
+    return template.execute(session -> {
+      final SftpClient client = (SftpClient) session.getClientInstance();
+      final CheckFileNameExtension extension = client.getExtension(CheckFileNameExtension.class);
+      Assert.state(extension.isSupported(), "check-file is not supported by the server");
+      final Map.Entry<String, Collection<byte[]>> result = extension.checkFileName(remoteFile,
+          Collections.singletonList(algorithm.getCheckFileAlgorithm()), 0L, 0L, 0);
+      Assert.state(!CollectionUtils.isEmpty(result.getValue()), "check-file returns no hash for " + remoteFile);
+      return HexFormat.of().formatHex(result.getValue().iterator().next());
+    });
+  }
+
+  /**
+   * Compare the computed checksum with the expected one.
+   *
+   * @throws IllegalStateException if they do not match
+   */
+  public static void verify(String fileName, String checksum, String expectedChecksum) {
+    if (!checksum.equalsIgnoreCase(expectedChecksum)) {
+      throw new IllegalStateException(String.format("Checksum mismatch of file %s, expected %s but was %s",
+          fileName, expectedChecksum, checksum));
+    }
+  }
+
+  /**
+   * The sidecar file contains the checksum, optionally followed by the file name, e.g. the output of sha256sum.
+   */
+  private static String parseSidecar(String content) {
+    final String trimmed = content.trim();
+    final int end = trimmed.indexOf(' ');
+    return (end < 0 ? trimmed : trimmed.substring(0, end)).toLowerCase();
+  }
+}
@@ -71,6 +71,13 @@ public class SftpTestSupport extends FileTestSupport {
     return cachingSessionFactory;
   }
 
+  /**
+   * Close the connections of all the clients, as if the network dropped them.
+   */
+  public static void closeServerSessions() {
+    server.getActiveSessions().forEach(session -> session.close(true));
+  }
+
   public static ApacheMinaSftpEventListener eventListener() {
     return EVENT_LISTENER;
   }
@@ -0,0 +1,130 @@
+package cn.maiaimei.spring.integration.sftp.expression;
+
+import cn.maiaimei.commons.lang.utils.ValueExpressionUtils;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.integration.file.FileHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * Compares the per-file cost of the remote paths and the local file name of an inbound rule, interpreted for every
+ * file as before, compiled by SpEL in IMMEDIATE mode, and precompiled once per rule.
+ * <p>
+ * Run the main method, or e.g. {@code java -cp <test classpath> org.openjdk.jmh.Main DownloadPathBenchmark}. The
+ * rename expression is passed as is to {@link ValueExpressionUtils}, override it by {@code -p renameExpression=...}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DownloadPathBenchmark {
+
+  private static final String TEMP_FOLDER = "/foo/temp";
+
+  private static final String ARCHIVE_FOLDER = "/foo/archive";
+
+  @Param({"test-in_${currentTimestamp->yyyyMMddHHmmssSSS}${serialNumber->%05d}.txt"})
+  private String renameExpression;
+
+  private Message<?> message;
+
+  private AtomicInteger counter;
+
+  private Expression interpretedTempPath;
+
+  private Expression interpretedArchivePath;
+
+  private Expression compiledTempPath;
+
+  private Expression compiledArchivePath;
+
+  private RemotePathExpression tempPath;
+
+  private RemotePathExpression archivePath;
+
+  private DownloadFileNameGenerator fileNameGenerator;
+
+  @Setup
+  public void setup() {
+    final Map<String, Object> headers = new HashMap<>();
+    headers.put(FileHeaders.REMOTE_FILE, "TEST_DOWNLOAD_20240101.txt");
+    headers.put(FileHeaders.REMOTE_DIRECTORY, "/foo/source");
+    headers.put("now", "20240101");
+    headers.put("file_remoteHostPort", "localhost:22");
+    message = MessageBuilder.withPayload(Boolean.TRUE).copyHeaders(headers).build();
+    counter = new AtomicInteger();
+
+    // the expressions of the MV command, as parsed once by the outbound gateway
+    final String tempExpression = "'" + TEMP_FOLDER + "/' + headers['file_remoteFile']";
+    final String archiveExpression = "'" + ARCHIVE_FOLDER + "/' + headers['now'] + '/' + headers['file_remoteFile']";
+    final SpelExpressionParser parser = new SpelExpressionParser();
+    interpretedTempPath = parser.parseExpression(tempExpression);
+    interpretedArchivePath = parser.parseExpression(archiveExpression);
+    final SpelExpressionParser compilingParser = new SpelExpressionParser(
+        new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, getClass().getClassLoader()));
+    compiledTempPath = compilingParser.parseExpression(tempExpression);
+    compiledArchivePath = compilingParser.parseExpression(archiveExpression);
+
+    tempPath = RemotePathExpression.of(TEMP_FOLDER, FileHeaders.REMOTE_FILE);
+    archivePath = RemotePathExpression.of(ARCHIVE_FOLDER, "now", FileHeaders.REMOTE_FILE);
+    fileNameGenerator = new DownloadFileNameGenerator(renameExpression, counter, Boolean.FALSE);
+  }
+
+  @Benchmark
+  public String interpretedPaths() {
+    return interpretedTempPath.getValue(message, String.class)
+        + interpretedArchivePath.getValue(message, String.class);
+  }
+
+  @Benchmark
+  public String compiledPaths() {
+    return compiledTempPath.getValue(message, String.class) + compiledArchivePath.getValue(message, String.class);
+  }
+
+  @Benchmark
+  public String precompiledPaths() {
+    return tempPath.apply(message) + archivePath.apply(message);
+  }
+
+  @Benchmark
+  public String copiedHeadersFileName() {
+    final Map<String, String> headerMap = message.getHeaders().entrySet().stream()
+        .collect(Collectors.toMap(Entry::getKey, e -> String.valueOf(e.getValue())));
+    return ValueExpressionUtils.parse(renameExpression, headerMap, counter);
+  }
+
+  @Benchmark
+  public String precompiledFileName() {
+    return fileNameGenerator.generateFileName(message);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(DownloadPathBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
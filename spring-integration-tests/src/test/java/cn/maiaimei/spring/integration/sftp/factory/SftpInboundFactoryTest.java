@@ -1,21 +1,37 @@
 package cn.maiaimei.spring.integration.sftp.factory;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import cn.maiaimei.commons.lang.utils.IdGenerator;
 import cn.maiaimei.spring.integration.TestIntegrationConfig;
 import cn.maiaimei.spring.integration.sftp.SftpTestSupport;
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
 import cn.maiaimei.spring.integration.sftp.config.SftpConfiguration;
 import cn.maiaimei.spring.integration.sftp.config.SftpConnection;
 import cn.maiaimei.spring.integration.sftp.config.SftpConnectionHolder;
 import cn.maiaimei.spring.integration.sftp.config.rule.BaseSftpInboundRule;
+import cn.maiaimei.spring.integration.sftp.constants.ChecksumVerification;
+import cn.maiaimei.spring.integration.sftp.constants.ReadyFileAction;
+import cn.maiaimei.spring.integration.sftp.constants.RecordFormat;
 import com.google.common.collect.Maps;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -56,6 +72,7 @@ public class SftpInboundFactoryTest extends SftpTestSupport {
   private File remoteSourceFile;
   private File localFile;
   private IntegrationFlowRegistration registration;
+  private BaseSftpInboundRule rule;
 
   @Override
   public void doSetUp() {
@@ -66,7 +83,7 @@ public class SftpInboundFactoryTest extends SftpTestSupport {
     File remoteArchiveFile = createRemoteFolder("archive");
 
     // Create inbound rule
-    BaseSftpInboundRule rule = new BaseSftpInboundRule();
+    rule = new BaseSftpInboundRule();
     rule.setId(IdGenerator.nextIdString());
     rule.setName("test-download");
     rule.setSchema(SFTP_SERVER_NAME);
@@ -79,10 +96,6 @@ public class SftpInboundFactoryTest extends SftpTestSupport {
 //        "test-in_${currentTimestamp->yyyyMMddHHmmssSSS}${serialNumber->%05d}.txt");
     rule.setRetryMaxAttempts(4);
     rule.setRetryMaxWaitTime(1000);
-
-    // Register integration flow
-    final IntegrationFlow flow = sftpInboundFactory.createSimpleSftpInboundFlow(rule);
-    registration = flowContext.registration(flow).register();
   }
 
   @Override
@@ -91,9 +104,16 @@ public class SftpInboundFactoryTest extends SftpTestSupport {
     registration.destroy();
   }
 
+  private void register() {
+    final IntegrationFlow flow = sftpInboundFactory.createSimpleSftpInboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+  }
+
   @Test
   public void testDownloadSingleFile()
       throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    register();
+
     // Prepare phase
     Path tempFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_",
         ".txt");
@@ -117,6 +137,8 @@ public class SftpInboundFactoryTest extends SftpTestSupport {
   @Test
   public void testDownloadMultipleFiles()
       throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    register();
+
     // Prepare phase
     for (int i = 0; i < 10; i++) {
       Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
@@ -135,6 +157,495 @@ public class SftpInboundFactoryTest extends SftpTestSupport {
     assertTrue(future.get(10, TimeUnit.SECONDS));
   }
 
+  @Test
+  public void testDownloadMultipleFilesConcurrently()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setConcurrency(4);
+    register();
+
+    // Prepare phase
+    for (int i = 0; i < 10; i++) {
+      Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    }
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (localFile.listFiles().length < 10) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertTrue(remoteSourceFile.listFiles(File::isFile).length == 0);
+  }
+
+  @Test
+  public void testDownloadOnVirtualThreads()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setVirtualThreads(Boolean.TRUE);
+    rule.setConcurrency(4);
+    register();
+
+    // Prepare phase
+    for (int i = 0; i < 10; i++) {
+      Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    }
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (localFile.listFiles().length < 10) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertTrue(remoteSourceFile.listFiles(File::isFile).length == 0);
+  }
+
+  @Test
+  public void testDownloadReadyFile()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setReadyFileSuffix(".ok");
+    rule.setReadyFileAction(ReadyFileAction.DELETE);
+    register();
+
+    // Prepare phase
+    Path partialFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    // the ready file is written aside and moved in after its marker, so that no poll sees it without the marker
+    Path stagedFile = Files.createTempFile("TEST_DOWNLOAD_", ".txt");
+    Path readyMarkerFile = Files.createFile(
+        remoteSourceFile.toPath().resolve(stagedFile.getFileName() + ".ok"));
+    Path readyFile = Files.move(stagedFile, remoteSourceFile.toPath().resolve(stagedFile.getFileName()));
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      Path expectedFile = localFile.toPath().resolve(readyFile.getFileName());
+      while (!Files.exists(expectedFile) || Files.exists(readyMarkerFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertTrue(Files.exists(partialFile));
+    assertTrue(Files.notExists(localFile.toPath().resolve(partialFile.getFileName())));
+
+    // the file polled without its marker is downloaded once the marker arrives
+    Path partialMarkerFile = Files.createFile(
+        remoteSourceFile.toPath().resolve(partialFile.getFileName() + ".ok"));
+    Future<Boolean> laterFuture = Executors.newSingleThreadExecutor().submit(() -> {
+      Path expectedFile = localFile.toPath().resolve(partialFile.getFileName());
+      while (!Files.exists(expectedFile) || Files.exists(partialMarkerFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+    assertTrue(laterFuture.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testDownloadFileOnceAfterRestart()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setMetadataStore(createLocalFolder("metadata").getAbsolutePath());
+    register();
+
+    // Prepare phase
+    Path tempFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    final FileTime lastModifiedTime = Files.getLastModifiedTime(tempFile);
+    Path expectedFile = localFile.toPath().resolve(tempFile.getFileName());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+
+    // Restart the flow, the same file is dropped again, only the new file is downloaded
+    registration.destroy();
+    Files.createFile(tempFile);
+    Files.setLastModifiedTime(tempFile, lastModifiedTime);
+    Path newFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    register();
+    Future<Boolean> newFuture = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(localFile.toPath().resolve(newFile.getFileName()))) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(newFuture.get(10, TimeUnit.SECONDS));
+    assertTrue(Files.exists(tempFile));
+  }
+
+  @Test
+  public void testResumableDownload()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setResumableDownload(Boolean.TRUE);
+    register();
+
+    // Prepare phase
+    Path tempFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    final byte[] content = new byte[1024 * 1024];
+    new Random().nextBytes(content);
+    Files.write(tempFile, content);
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Path expectedFile = localFile.toPath().resolve(tempFile.getFileName());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertArrayEquals(content, Files.readAllBytes(expectedFile));
+  }
+
+  @Test
+  public void testDownloadWithSessionAffinity()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setConcurrency(2);
+    rule.setSessionAffinity(Boolean.TRUE);
+    register();
+
+    // Prepare phase
+    Path tempFile1 = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    Files.write(tempFile1, "foo".getBytes(StandardCharsets.UTF_8));
+    Path tempFile2 = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    Files.write(tempFile2, "bar".getBytes(StandardCharsets.UTF_8));
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Path expectedFile1 = localFile.toPath().resolve(tempFile1.getFileName());
+    Path expectedFile2 = localFile.toPath().resolve(tempFile2.getFileName());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile1) || !Files.exists(expectedFile2)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertArrayEquals("foo".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(expectedFile1));
+    assertArrayEquals("bar".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(expectedFile2));
+    assertTrue(Files.notExists(tempFile1));
+    assertTrue(Files.notExists(tempFile2));
+  }
+
+  @Test
+  public void testResumeDownloadWithSessionAffinityAfterConnectionLost() throws Exception {
+    rule.setResumableDownload(Boolean.TRUE);
+    rule.setSessionAffinity(Boolean.TRUE);
+    rule.setMaxBytesPerSecond(256 * 1024);
+    register();
+
+    // Prepare phase, a file taking a few seconds to download
+    final byte[] content = new byte[1024 * 1024];
+    new Random(0).nextBytes(content);
+    Path tempFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    Files.write(tempFile, content);
+
+    // Drop the connection once the download has started, the retry checks out a new session and resumes
+    Path expectedFile = localFile.toPath().resolve(tempFile.getFileName());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!hasPartialFile()) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+      closeServerSessions();
+      while (!Files.exists(expectedFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(30, TimeUnit.SECONDS));
+    assertArrayEquals(content, Files.readAllBytes(expectedFile));
+  }
+
+  private boolean hasPartialFile() {
+    final File[] files = localFile.listFiles((dir, name) -> name.endsWith(".part"));
+    return files != null && files.length > 0 && files[0].length() > 0;
+  }
+
+  @Test
+  public void testIncrementalListing()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setIncrementalListing(Boolean.TRUE);
+    register();
+
+    // Prepare phase
+    Path ignoredFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_IGNORED_", ".csv");
+    Path tempFile1 = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    Files.write(tempFile1, "foo".getBytes(StandardCharsets.UTF_8));
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Path expectedFile1 = localFile.toPath().resolve(tempFile1.getFileName());
+    Future<Boolean> future1 = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile1)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+    assertTrue(future1.get(10, TimeUnit.SECONDS));
+
+    // A file arriving after the first listing is still picked up
+    Path tempFile2 = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    Files.write(tempFile2, "bar".getBytes(StandardCharsets.UTF_8));
+    Path expectedFile2 = localFile.toPath().resolve(tempFile2.getFileName());
+    Future<Boolean> future2 = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile2)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future2.get(10, TimeUnit.SECONDS));
+    assertTrue(Files.exists(ignoredFile));
+    assertTrue(Files.notExists(tempFile1));
+    assertTrue(Files.notExists(tempFile2));
+  }
+
+  @Test
+  public void testDownloadRecursively()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setRecursive(Boolean.TRUE);
+    rule.setMaxDepth(2);
+    rule.setDirectoryPatterns(Map.of("*/ACME", "*.json"));
+    register();
+
+    // Prepare phase
+    Path directory = Files.createDirectories(remoteSourceFile.toPath().resolve("2024/ACME"));
+    Path tooDeepDirectory = Files.createDirectories(directory.resolve("nested"));
+    Path tempFile1 = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    Files.write(tempFile1, "foo".getBytes(StandardCharsets.UTF_8));
+    Path tempFile2 = Files.createTempFile(directory, "TEST_DOWNLOAD_", ".json");
+    Files.write(tempFile2, "bar".getBytes(StandardCharsets.UTF_8));
+    Path ignoredFile1 = Files.createTempFile(directory, "TEST_IGNORED_", ".txt");
+    Path ignoredFile2 = Files.createTempFile(tooDeepDirectory, "TEST_IGNORED_", ".json");
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Path expectedFile1 = localFile.toPath().resolve(tempFile1.getFileName());
+    Path expectedFile2 = localFile.toPath().resolve("2024/ACME").resolve(tempFile2.getFileName());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile1) || !Files.exists(expectedFile2)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertArrayEquals("bar".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(expectedFile2));
+    assertTrue(Files.notExists(tempFile2));
+    assertTrue(Files.exists(ignoredFile1));
+    assertTrue(Files.exists(ignoredFile2));
+  }
+
+  @Test
+  public void testSplitRecords()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    final List<Object> records = new CopyOnWriteArrayList<>();
+    final IntegrationFlowRegistration recordRegistration = flowContext.registration(
+        IntegrationFlow.from("testRecordChannel").handle(message -> records.add(message.getPayload())).get()
+    ).register();
+    rule.setPattern("*.json");
+    rule.setRecordFormat(RecordFormat.NDJSON);
+    rule.setRecordChannel("testRecordChannel");
+    register();
+
+    try {
+      // Prepare phase
+      Path tempFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_TRANSACTION_", ".json");
+      Files.write(tempFile, "{\"id\":1}\n{\"id\":2}\n\n{\"id\":3}\n".getBytes(StandardCharsets.UTF_8));
+
+      // Run async task to wait for expected records to be sent
+      // to the record channel from a remote SFTP server
+      Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+        while (records.size() < 3 || Files.exists(tempFile)) {
+          TimeUnit.MILLISECONDS.sleep(200);
+        }
+        return Boolean.TRUE;
+      });
+
+      // Validation phase
+      assertTrue(future.get(10, TimeUnit.SECONDS));
+      assertEquals(List.of("{\"id\":1}", "{\"id\":2}", "{\"id\":3}"), records);
+      assertTrue(Files.notExists(localFile.toPath().resolve(tempFile.getFileName())));
+    } finally {
+      recordRegistration.destroy();
+    }
+  }
+
+  @Test
+  public void testDownloadWithBandwidthLimit()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setMaxBytesPerSecond(512 * 1024);
+    register();
+
+    // Prepare phase
+    Path tempFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    final byte[] content = new byte[3 * 512 * 1024];
+    new Random().nextBytes(content);
+    Files.write(tempFile, content);
+    final long start = System.nanoTime();
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Path expectedFile = localFile.toPath().resolve(tempFile.getFileName());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase, the first second is a burst, the remaining bytes take two seconds
+    assertTrue(future.get(20, TimeUnit.SECONDS));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1500);
+    assertArrayEquals(content, Files.readAllBytes(expectedFile));
+  }
+
+  @Test
+  public void testAdaptivePolling()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    // the cron alone would poll once an hour
+    rule.setCron("0 0 * * * ?");
+    rule.setAdaptivePolling(Boolean.TRUE);
+    rule.setPollingMinInterval(100);
+    rule.setPollingMaxInterval(1000);
+    register();
+
+    // Prepare phase, wait for some empty polls to back off
+    TimeUnit.SECONDS.sleep(2);
+    Path tempFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    Files.write(tempFile, "foo".getBytes(StandardCharsets.UTF_8));
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Path expectedFile = localFile.toPath().resolve(tempFile.getFileName());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase, the file is polled within the max interval
+    assertTrue(future.get(5, TimeUnit.SECONDS));
+    assertTrue(Files.notExists(tempFile));
+  }
+
+  @Test
+  public void testArchiveByDate()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setRecursive(Boolean.TRUE);
+    rule.setArchiveByDate(Boolean.TRUE);
+    register();
+
+    // Prepare phase
+    Path directory = Files.createDirectories(remoteSourceFile.toPath().resolve("ACME"));
+    Path tempFile = Files.createTempFile(directory, "TEST_DOWNLOAD_", ".txt");
+    Files.write(tempFile, "foo".getBytes(StandardCharsets.UTF_8));
+
+    // Run async task to wait for expected files to be moved to the archive folder of today
+    Path expectedFile = Path.of(rule.getRemoteArchive(), LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE),
+        "ACME", tempFile.getFileName().toString());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase, the relative path is kept from the source to the archive folder
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertTrue(Files.exists(localFile.toPath().resolve("ACME").resolve(tempFile.getFileName())));
+    assertTrue(Files.notExists(tempFile));
+  }
+
+  @Test
+  public void testSegmentedDownload()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException {
+    rule.setSegmentThreshold(1024 * 1024);
+    rule.setSegmentCount(4);
+    register();
+
+    // Prepare phase
+    Path tempFile = Files.createTempFile(remoteSourceFile.toPath(), "TEST_DOWNLOAD_", ".txt");
+    final byte[] content = new byte[5 * 1024 * 1024 + 7];
+    new Random().nextBytes(content);
+    Files.write(tempFile, content);
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Path expectedFile = localFile.toPath().resolve(tempFile.getFileName());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertArrayEquals(content, Files.readAllBytes(expectedFile));
+  }
+
+  @Test
+  public void testDownloadWithChecksum()
+      throws ExecutionException, InterruptedException, TimeoutException, IOException, NoSuchAlgorithmException {
+    rule.setChecksumAlgorithm(ChecksumAlgorithm.SHA256);
+    rule.setChecksumVerification(ChecksumVerification.SIDECAR);
+    // the sidecar files are matched by the pattern too
+    rule.setPattern("*");
+    register();
+
+    // Prepare phase
+    final String fileName = "TEST_DOWNLOAD_CHECKSUM.txt";
+    final byte[] content = "foo".getBytes(StandardCharsets.UTF_8);
+    final String checksum = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    // the sidecar is written first, so that no poll sees the file without it
+    final Path sidecarFile = Files.writeString(remoteSourceFile.toPath().resolve(fileName + ".sha256"),
+        checksum + "  " + fileName);
+    Files.write(remoteSourceFile.toPath().resolve(fileName), content);
+
+    // Run async task to wait for expected files to be downloaded 
+    // to a file system from a remote SFTP server
+    Path expectedFile = localFile.toPath().resolve(fileName);
+    Path archivedSidecarFile = Paths.get(rule.getRemoteArchive(), fileName + ".sha256");
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!Files.exists(expectedFile) || !Files.exists(archivedSidecarFile)) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertArrayEquals(content, Files.readAllBytes(expectedFile));
+    // the sidecar is moved along with the file, it is never downloaded as a data file
+    assertTrue(Files.notExists(sidecarFile));
+    assertTrue(Files.notExists(localFile.toPath().resolve(fileName + ".sha256")));
+  }
+
   @Import({
       TestIntegrationConfig.class,
       SftpConfiguration.class
@@ -1,20 +1,31 @@
 package cn.maiaimei.spring.integration.sftp.factory;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import cn.maiaimei.commons.lang.constants.NumberConstants;
 import cn.maiaimei.commons.lang.utils.IdGenerator;
 import cn.maiaimei.spring.integration.TestIntegrationConfig;
 import cn.maiaimei.spring.integration.sftp.SftpTestSupport;
+import cn.maiaimei.spring.integration.sftp.checksum.ChecksumAlgorithm;
 import cn.maiaimei.spring.integration.sftp.config.SftpConfiguration;
 import cn.maiaimei.spring.integration.sftp.config.SftpConnection;
 import cn.maiaimei.spring.integration.sftp.config.SftpConnectionHolder;
 import cn.maiaimei.spring.integration.sftp.config.rule.SimpleSftpOutboundRule;
+import cn.maiaimei.spring.integration.sftp.constants.ChecksumVerification;
 import com.google.common.collect.Maps;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -83,8 +94,10 @@ public class SftpOutboundFactoryTest extends SftpTestSupport {
 
   @Override
   protected void doTearDown() {
-    // Destroy integration flow
-    registration.destroy();
+    // Destroy integration flow, if one has been registered
+    if (registration != null) {
+      registration.destroy();
+    }
   }
 
   @Test
@@ -105,6 +118,257 @@ public class SftpOutboundFactoryTest extends SftpTestSupport {
     assertTrue(future.get(10, TimeUnit.SECONDS));
   }
 
+  @Test
+  public void testConcurrentSftpOutbound() throws Exception {
+    for (int i = 0; i < 9; i++) {
+      Files.createTempFile(new File(rule.getLocal()).toPath(), "TEST_UPLOAD_", ".txt");
+    }
+    rule.setConcurrency(4);
+    rule.setMaxMessagesPerPoll(10);
+    IntegrationFlow flow = sftpOutboundFactory.createSimpleSftpOutboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+
+    // Run async task to wait for all files to be uploaded by the workers and moved to the sent folder
+    final File localArchiveFile = new File(rule.getArchive());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (remoteDestinationFile.listFiles().length < 10
+          || localArchiveFile.listFiles(File::isFile).length < 10) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(20, TimeUnit.SECONDS));
+    // each file has been uploaded and moved once
+    assertEquals(10, remoteDestinationFile.listFiles().length);
+    assertEquals(0, new File(rule.getLocal()).listFiles().length);
+  }
+
+  @Test
+  public void testConcurrentSftpOutboundWithNonMatchingFile() throws Exception {
+    for (int i = 0; i < 9; i++) {
+      Files.createTempFile(new File(rule.getLocal()).toPath(), "TEST_UPLOAD_", ".txt");
+    }
+    final File nonMatchingFile = Files.createTempFile(new File(rule.getLocal()).toPath(), "TEST_IGNORED_", ".csv")
+        .toFile();
+    rule.setConcurrency(4);
+    rule.setMaxMessagesPerPoll(10);
+    IntegrationFlow flow = sftpOutboundFactory.createSimpleSftpOutboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+
+    // Run async task to wait for the matching files to be uploaded by the workers and moved to the sent folder
+    final File localArchiveFile = new File(rule.getArchive());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (localArchiveFile.listFiles(File::isFile).length < 10) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+    assertTrue(future.get(20, TimeUnit.SECONDS));
+
+    // A file uploaded while the non-matching one is still listed by every poll
+    final File lateFile = Files.createTempFile(new File(rule.getLocal()).toPath(), "TEST_UPLOAD_", ".txt")
+        .toFile();
+    Future<Boolean> lateFuture = Executors.newSingleThreadExecutor().submit(() -> {
+      while (lateFile.exists()) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(lateFuture.get(10, TimeUnit.SECONDS));
+    assertEquals(11, remoteDestinationFile.listFiles().length);
+    // the non-matching file is neither uploaded nor moved
+    assertTrue(nonMatchingFile.exists());
+    assertFalse(new File(remoteDestinationFile, nonMatchingFile.getName()).exists());
+  }
+
+  @Test
+  public void testWatchSftpOutbound() throws Exception {
+    // the cron only sweeps the local folder on start, the next files are detected by their events
+    rule.setCron("0 0 0 1 1 *");
+    rule.setWatch(true);
+    rule.setWatchDebounce(200);
+    IntegrationFlow flow = sftpOutboundFactory.createSimpleSftpOutboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+
+    // Run async task to wait for the swept file, then for a file created once watching, to be uploaded
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (remoteDestinationFile.listFiles().length < 1) {
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+      Files.createTempFile(new File(rule.getLocal()).toPath(), "TEST_UPLOAD_", ".txt");
+      while (remoteDestinationFile.listFiles().length < 2) {
+        TimeUnit.MILLISECONDS.sleep(100);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testBatchSftpOutbound() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      Files.createTempFile(new File(rule.getLocal()).toPath(), "TEST_UPLOAD_", ".txt");
+    }
+    IntegrationFlow flow = sftpOutboundFactory.createBatchSftpOutboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+
+    // Run async task to wait for the batch to be uploaded through one session and moved to the sent folder
+    final File localArchiveFile = new File(rule.getArchive());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (localArchiveFile.listFiles(File::isFile).length < 5) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    // the temporary files have all been renamed
+    assertEquals(5, remoteDestinationFile.listFiles((dir, name) -> name.endsWith(".txt")).length);
+    assertEquals(0, localArchiveErrorFile.listFiles().length);
+  }
+
+  @Test
+  public void testBatchSftpOutboundRejectsIgnoredSettings() {
+    rule.setConcurrency(4);
+    assertThrows(IllegalArgumentException.class, () -> sftpOutboundFactory.createBatchSftpOutboundFlow(rule));
+    rule.setConcurrency(0);
+    rule.setResumableUpload(true);
+    assertThrows(IllegalArgumentException.class, () -> sftpOutboundFactory.createBatchSftpOutboundFlow(rule));
+  }
+
+  @Test
+  public void testBatchSftpOutboundRetriedAfterFailure() throws Exception {
+    // the remote folder cannot be created under a file, so the whole batch fails
+    final File blockingFile = new File(remoteDestinationFile, "blocked");
+    Files.createFile(blockingFile.toPath());
+    rule.setRemote(new File(blockingFile, "destination").getAbsolutePath());
+    rule.setAcceptOnce(true);
+    IntegrationFlow flow = sftpOutboundFactory.createBatchSftpOutboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+    TimeUnit.SECONDS.sleep(2);
+    assertEquals(1, new File(rule.getLocal()).listFiles(File::isFile).length);
+
+    // the files of the failed batch are not accepted once, they are uploaded once the remote folder can be created
+    Files.delete(blockingFile.toPath());
+    final File localArchiveFile = new File(rule.getArchive());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (localArchiveFile.listFiles(File::isFile).length < 1) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertEquals(0, localArchiveErrorFile.listFiles().length);
+  }
+
+  @Test
+  public void testResumableSftpOutbound() throws Exception {
+    final byte[] content = new byte[1 << 20];
+    new Random(0).nextBytes(content);
+    Files.write(new File(rule.getLocal(), "TEST_RESUME.txt").toPath(), content);
+    // the temporary file left by a failed upload
+    Files.write(new File(remoteDestinationFile, "TEST_RESUME.txt.writing").toPath(),
+        Arrays.copyOf(content, content.length / 3));
+    rule.setResumableUpload(true);
+    IntegrationFlow flow = sftpOutboundFactory.createSimpleSftpOutboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+
+    // Run async task to wait for the upload to be resumed and renamed
+    final File remoteFile = new File(remoteDestinationFile, "TEST_RESUME.txt");
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!remoteFile.exists()) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertArrayEquals(content, Files.readAllBytes(remoteFile.toPath()));
+    assertFalse(new File(remoteDestinationFile, "TEST_RESUME.txt.writing").exists());
+  }
+
+  @Test
+  public void testVerifiedResumableSftpOutbound() throws Exception {
+    final byte[] content = new byte[1 << 20];
+    new Random(0).nextBytes(content);
+    Files.write(new File(rule.getLocal(), "TEST_RESUME.txt").toPath(), content);
+    // the temporary file left by a failed upload, whose bytes have been corrupted
+    final byte[] corrupted = Arrays.copyOf(content, content.length / 3);
+    corrupted[0] ^= 1;
+    Files.write(new File(remoteDestinationFile, "TEST_RESUME.txt.writing").toPath(), corrupted);
+    rule.setResumableUpload(true);
+    rule.setVerifyResumedUpload(true);
+    rule.setChecksumAlgorithm(ChecksumAlgorithm.SHA256);
+    IntegrationFlow flow = sftpOutboundFactory.createSimpleSftpOutboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+
+    // Run async task to wait for the corrupted upload to be rejected and the whole file to be uploaded again
+    final File remoteFile = new File(remoteDestinationFile, "TEST_RESUME.txt");
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (!remoteFile.exists()) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    assertArrayEquals(content, Files.readAllBytes(remoteFile.toPath()));
+  }
+
+  @Test
+  public void testSidecarChecksumSftpOutbound() throws Exception {
+    rule.setChecksumAlgorithm(ChecksumAlgorithm.SHA256);
+    rule.setChecksumVerification(ChecksumVerification.SIDECAR);
+    // the sidecar files are matched by the pattern too
+    rule.setPattern("*");
+    final File local = new File(rule.getLocal());
+    // the sidecars are written first, so that no poll sees a file without it
+    for (File file : local.listFiles()) {
+      writeSidecar(file, Files.readAllBytes(file.toPath()));
+    }
+    final File corruptFile = new File(local, "TEST_CORRUPT.txt");
+    writeSidecar(corruptFile, "bar".getBytes(StandardCharsets.UTF_8));
+    Files.writeString(corruptFile.toPath(), "foo");
+    IntegrationFlow flow = sftpOutboundFactory.createSimpleSftpOutboundFlow(rule);
+    registration = flowContext.registration(flow).register();
+
+    // Run async task to wait for the valid file to be moved to the sent folder with its sidecar
+    final File localArchiveFile = new File(rule.getArchive());
+    Future<Boolean> future = Executors.newSingleThreadExecutor().submit(() -> {
+      while (localArchiveFile.listFiles(File::isFile).length < 2) {
+        TimeUnit.MILLISECONDS.sleep(200);
+      }
+      return Boolean.TRUE;
+    });
+
+    // Validation phase
+    assertTrue(future.get(10, TimeUnit.SECONDS));
+    // give the corrupt file a few polls
+    TimeUnit.SECONDS.sleep(2);
+    // the sidecars are not uploaded, the corrupt file is never published, nor left under its temporary name
+    final String[] remoteFiles = remoteDestinationFile.list();
+    assertEquals(1, remoteFiles.length);
+    assertTrue(remoteFiles[0].startsWith("TEST_UPLOAD_"));
+    assertEquals(1, localArchiveFile.listFiles((dir, name) -> name.endsWith(".sha256")).length);
+    assertTrue(corruptFile.exists());
+  }
+
+  private static void writeSidecar(File file, byte[] content) throws Exception {
+    final String checksum = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    Files.writeString(new File(file.getPath() + ".sha256").toPath(), checksum + "  " + file.getName());
+  }
+
   @Test
   public void testAdvancedSftpOutbound() throws ExecutionException, InterruptedException, TimeoutException {
     rule.setSchema("unknown-sftp");
@@ -0,0 +1,86 @@
+package cn.maiaimei.spring.integration.sftp.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cn.maiaimei.spring.integration.sftp.SftpTestSupport;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.file.remote.session.SessionFactory;
+import org.springframework.integration.sftp.session.SftpRemoteFileTemplate;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+@Slf4j
+public class SegmentedDownloadMessageHandlerTest extends SftpTestSupport {
+
+  private static final int FILE_SIZE = 32 * 1024 * 1024;
+
+  private static final int RUNS = 3;
+
+  @Test
+  public void testSegmentedDownloadIsNotSlowerThanGet() throws IOException {
+    // Prepare phase
+    final String fileName = "TEST_SEGMENTED_DOWNLOAD.bin";
+    final byte[] content = new byte[FILE_SIZE];
+    new Random().nextBytes(content);
+    Files.write(getRemoteTemporaryFolder().toPath().resolve(fileName), content);
+    final String remoteFile = "/" + fileName;
+    final Path localDirectory = createLocalFolder("segmented").toPath();
+
+    final SessionFactory<DirEntry> sessionFactory = sessionFactory();
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final SegmentedDownloadMessageHandler handler = new SegmentedDownloadMessageHandler(
+          new SftpRemoteFileTemplate(sessionFactory), localDirectory, message -> (String) message.getPayload(),
+          executor);
+      handler.setThreshold(1024 * 1024);
+      handler.setSegmentCount(4);
+      final Message<String> message = MessageBuilder.withPayload(remoteFile).build();
+
+      // warm up the cached sessions of both paths
+      handler.handleRequestMessage(message);
+      get(sessionFactory, remoteFile);
+
+      // best of a few runs, so that a single hiccup does not decide
+      long getNanos = Long.MAX_VALUE;
+      long segmentedNanos = Long.MAX_VALUE;
+      for (int i = 0; i < RUNS; i++) {
+        long start = System.nanoTime();
+        get(sessionFactory, remoteFile);
+        getNanos = Math.min(getNanos, System.nanoTime() - start);
+        start = System.nanoTime();
+        handler.handleRequestMessage(message);
+        segmentedNanos = Math.min(segmentedNanos, System.nanoTime() - start);
+      }
+      log.info("GET took {} ms, segmented download took {} ms", getNanos / 1_000_000, segmentedNanos / 1_000_000);
+
+      // Validation phase
+      assertArrayEquals(content, Files.readAllBytes(localDirectory.resolve(fileName)));
+      // a margin for the scheduling of the segments on a loaded machine
+      assertTrue(segmentedNanos <= getNanos * 5 / 4 + 50_000_000L,
+          "segmented download took " + segmentedNanos + "ns, GET took " + getNanos + "ns");
+    } finally {
+      executor.shutdownNow();
+      new File(getRemoteTemporaryFolder(), fileName).delete();
+    }
+  }
+
+  private static void get(SessionFactory<DirEntry> sessionFactory, String remoteFile) throws IOException {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(FILE_SIZE);
+    try (Session<DirEntry> session = sessionFactory.getSession()) {
+      session.read(remoteFile, outputStream);
+    }
+  }
+
+}
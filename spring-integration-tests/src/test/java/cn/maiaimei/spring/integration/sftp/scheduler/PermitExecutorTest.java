@@ -0,0 +1,67 @@
+package cn.maiaimei.spring.integration.sftp.scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class PermitExecutorTest {
+
+  @Test
+  public void testDefaultMaxTransfersOfSchema() {
+    final SftpTransferExecutors executors = new SftpTransferExecutors(4);
+    try {
+      executors.setMaxTransfers("capped", 2);
+      executors.setMaxTransfers("unset", 0);
+      assertEquals(2, executors.getMaxTransfers("capped"));
+      // a schema without max transfers is never unbounded
+      assertEquals(SftpTransferExecutors.DEFAULT_MAX_TRANSFERS, executors.getMaxTransfers("unset"));
+      assertTrue(executors.getExecutor("unset") instanceof PermitExecutor);
+    } finally {
+      executors.destroy();
+    }
+  }
+
+  @Test
+  public void testCallerRunsWhenQueueIsFull() throws InterruptedException {
+    final SftpTransferExecutors executors = new SftpTransferExecutors(4);
+    try {
+      final PermitExecutor executor = new PermitExecutor(executors.getExecutor(), 1, 1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(3);
+      final AtomicInteger callerRuns = new AtomicInteger();
+      final Thread caller = Thread.currentThread();
+      final Runnable task = () -> {
+        if (Thread.currentThread() == caller) {
+          callerRuns.incrementAndGet();
+        } else {
+          await(release);
+        }
+        done.countDown();
+      };
+
+      // the first task holds the permit, the second one waits, the third one runs on the submitter
+      executor.execute(task);
+      executor.execute(task);
+      assertEquals(1, executor.getWaiting());
+      executor.execute(task);
+      assertEquals(1, callerRuns.get());
+
+      release.countDown();
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+    } finally {
+      executors.destroy();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
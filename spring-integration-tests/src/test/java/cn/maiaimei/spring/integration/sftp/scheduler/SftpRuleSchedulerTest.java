@@ -0,0 +1,86 @@
+package cn.maiaimei.spring.integration.sftp.scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class SftpRuleSchedulerTest {
+
+  private SftpRuleScheduler scheduler;
+
+  @AfterEach
+  public void tearDown() {
+    scheduler.destroy();
+  }
+
+  @Test
+  public void testMaxConcurrencyOfSchema() throws InterruptedException {
+    scheduler = new SftpRuleScheduler(4);
+    scheduler.setMaxConcurrency("slow", 1);
+    final Executor slow1 = scheduler.executor("slow-1", "slow", 1);
+    final Executor slow2 = scheduler.executor("slow-2", "slow", 1);
+    final Executor fast = scheduler.executor("fast", "fast", 1);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final CountDownLatch slowPolls = new CountDownLatch(4);
+    final CountDownLatch fastPolls = new CountDownLatch(10);
+    final Runnable slowPoll = () -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      sleep(50);
+      running.decrementAndGet();
+      slowPolls.countDown();
+    };
+
+    // the fast rule keeps polling while the slow schema is saturated
+    for (int i = 0; i < 10; i++) {
+      slow1.execute(slowPoll);
+      slow2.execute(slowPoll);
+      fast.execute(fastPolls::countDown);
+      TimeUnit.MILLISECONDS.sleep(20);
+    }
+
+    assertTrue(fastPolls.await(5, TimeUnit.SECONDS));
+    assertTrue(slowPolls.await(5, TimeUnit.SECONDS));
+    assertEquals(1, maxRunning.get());
+  }
+
+  @Test
+  public void testWeightedFairQueuing() throws InterruptedException {
+    scheduler = new SftpRuleScheduler(1);
+    final Executor light = scheduler.executor("light", "foo", 1);
+    final Executor heavy = scheduler.executor("heavy", "foo", 3);
+    final AtomicInteger lightPolls = new AtomicInteger();
+    final AtomicInteger heavyPolls = new AtomicInteger();
+
+    // both rules always have a poll waiting for the only worker
+    final long end = System.currentTimeMillis() + 1000;
+    while (System.currentTimeMillis() < end) {
+      light.execute(() -> {
+        lightPolls.incrementAndGet();
+        sleep(5);
+      });
+      heavy.execute(() -> {
+        heavyPolls.incrementAndGet();
+        sleep(5);
+      });
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+
+    final double share = (double) heavyPolls.get() / lightPolls.get();
+    assertTrue(share > 2 && share < 4, "heavy/light share was " + share);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import cn.maiaimei.spring.integration.sftp.SftpTestSupport;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.sftp.session.DefaultSftpSessionFactory;
+
+public class FailoverSftpSessionFactoryTest extends SftpTestSupport {
+
+  @Test
+  public void testFailoverToHealthyHost() throws IOException {
+    final int deadPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      deadPort = socket.getLocalPort();
+    }
+    final Map<String, DefaultSftpSessionFactory> sessionFactories = new LinkedHashMap<>();
+    sessionFactories.put("dead", sessionFactory(deadPort));
+    sessionFactories.put("alive", sessionFactory(SFTP_SERVER_PORT));
+    final FailoverSftpSessionFactory factory = new FailoverSftpSessionFactory(sessionFactories,
+        SftpHostSelection.ROUND_ROBIN, 60000);
+
+    for (int i = 0; i < 4; i++) {
+      final Session<DirEntry> session = factory.getSession();
+      try {
+        assertTrue(session.test());
+      } finally {
+        session.close();
+      }
+    }
+    // the dead host has been ejected on its first failure, the sessions fail over to the alive host
+    assertEquals(1, factory.getHealthyHostCount());
+  }
+
+  private static DefaultSftpSessionFactory sessionFactory(int port) {
+    final DefaultSftpSessionFactory factory = new DefaultSftpSessionFactory(Boolean.FALSE);
+    factory.setHost(SFTP_SERVER_HOST);
+    factory.setPort(port);
+    factory.setUser(SFTP_SERVER_USER);
+    factory.setPassword(SFTP_SERVER_PASSWORD);
+    factory.setAllowUnknownKeys(Boolean.TRUE);
+    factory.setTimeout(1000);
+    return factory;
+  }
+
+}
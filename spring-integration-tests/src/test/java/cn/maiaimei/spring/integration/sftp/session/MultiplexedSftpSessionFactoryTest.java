@@ -0,0 +1,74 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import cn.maiaimei.spring.integration.sftp.SftpTestSupport;
+import cn.maiaimei.spring.integration.sftp.throttle.TokenBucketBandwidthLimiter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.sftp.session.SftpSession;
+
+public class MultiplexedSftpSessionFactoryTest extends SftpTestSupport {
+
+  @Test
+  public void testMultiplexChannels() {
+    final MultiplexedSftpSessionFactory factory =
+        new MultiplexedSftpSessionFactory(new TokenBucketBandwidthLimiter(0), 2);
+    factory.setHost(SFTP_SERVER_HOST);
+    factory.setPort(SFTP_SERVER_PORT);
+    factory.setUser(SFTP_SERVER_USER);
+    factory.setPassword(SFTP_SERVER_PASSWORD);
+    factory.setAllowUnknownKeys(Boolean.TRUE);
+
+    final SftpSession first = factory.getSession();
+    final SftpSession second = factory.getSession();
+    final SftpSession third = factory.getSession();
+    // two channels share the first connection, the third channel needs a second connection
+    assertEquals(2, factory.getConnectionCount());
+    assertSame(first.getClientInstance().getClientSession(), second.getClientInstance().getClientSession());
+    assertTrue(third.test());
+
+    first.close();
+    assertEquals(2, factory.getConnectionCount());
+    second.close();
+    third.close();
+    assertEquals(0, factory.getConnectionCount());
+  }
+
+  @Test
+  public void testWaitForConnectionBeingEstablished() throws Exception {
+    final MultiplexedSftpSessionFactory factory =
+        new MultiplexedSftpSessionFactory(new TokenBucketBandwidthLimiter(0), 2);
+    factory.setHost(SFTP_SERVER_HOST);
+    factory.setPort(SFTP_SERVER_PORT);
+    factory.setUser(SFTP_SERVER_USER);
+    factory.setPassword(SFTP_SERVER_PASSWORD);
+    factory.setAllowUnknownKeys(Boolean.TRUE);
+
+    // the sessions requested at once share the connections being established instead of connecting on their own
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final List<Future<SftpSession>> futures = new ArrayList<>();
+    try {
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(factory::getSession));
+      }
+      final List<SftpSession> sessions = new ArrayList<>();
+      for (Future<SftpSession> future : futures) {
+        sessions.add(future.get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(2, factory.getConnectionCount());
+      sessions.forEach(session -> assertTrue(session.test()));
+      sessions.forEach(SftpSession::close);
+      assertEquals(0, factory.getConnectionCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.integration.sftp.session.DefaultSftpSessionFactory;
+import org.springframework.integration.sftp.session.SftpSession;
+
+/**
+ * Compares the round trip of a CSV file, uploaded and downloaded over one SFTP session, per crypto profile and with
+ * or without compression, against an embedded SFTP server set up as in the {@code SftpServerApplication}.
+ * <p>
+ * Run the main method, or e.g. {@code java -cp <test classpath> org.openjdk.jmh.Main SftpCryptoProfileBenchmark}.
+ * Both ends run on the same host, so the results show the CPU cost of each profile, not the gain of compression on a
+ * slow link, narrow them by e.g. {@code -p cryptoProfile=AES_GCM -p compression=true}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SftpCryptoProfileBenchmark {
+
+  private static final String REMOTE_FILE = "benchmark.csv";
+
+  @Param({"DEFAULT", "AES_GCM", "CHACHA20", "AES_CTR"})
+  private SftpCryptoProfile cryptoProfile;
+
+  @Param({"false", "true"})
+  private boolean compression;
+
+  @Param({"8388608"})
+  private int fileSize;
+
+  private Path homeDirectory;
+
+  private SshServer server;
+
+  private SftpSession session;
+
+  private byte[] content;
+
+  @Setup
+  public void setup() throws IOException {
+    homeDirectory = Files.createTempDirectory("sftp-benchmark");
+    server = SshServer.setUpDefaultServer();
+    server.setPasswordAuthenticator((username, password, serverSession) -> true);
+    server.setPort(0);
+    server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(homeDirectory.resolve("hostkey.ser")));
+    server.setCompressionFactories(
+        Arrays.asList(BuiltinCompressions.none, BuiltinCompressions.zlib, BuiltinCompressions.delayedZlib));
+    server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+    server.setFileSystemFactory(new VirtualFileSystemFactory(homeDirectory));
+    server.start();
+
+    final DefaultSftpSessionFactory sessionFactory = new DefaultSftpSessionFactory(Boolean.FALSE);
+    sessionFactory.setHost("localhost");
+    sessionFactory.setPort(server.getPort());
+    sessionFactory.setUser("foo");
+    sessionFactory.setPassword("foo");
+    sessionFactory.setAllowUnknownKeys(Boolean.TRUE);
+    sessionFactory.setSshClientConfigurer(sshClient -> cryptoProfile.apply(sshClient, compression));
+    session = sessionFactory.getSession();
+
+    final StringBuilder csv = new StringBuilder(fileSize);
+    for (int i = 0; csv.length() < fileSize; i++) {
+      csv.append(i).append(",TEST_DOWNLOAD_").append(20240101 + i % 28).append(",foo,bar,")
+          .append(i * 31 % 1000).append('\n');
+    }
+    content = csv.substring(0, fileSize).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public int roundTrip() throws IOException {
+    session.write(new ByteArrayInputStream(content), REMOTE_FILE);
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length);
+    session.read(REMOTE_FILE, outputStream);
+    return outputStream.size();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    session.close();
+    server.stop();
+    Files.deleteIfExists(homeDirectory.resolve(REMOTE_FILE));
+    Files.deleteIfExists(homeDirectory.resolve("hostkey.ser"));
+    Files.deleteIfExists(homeDirectory);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(SftpCryptoProfileBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
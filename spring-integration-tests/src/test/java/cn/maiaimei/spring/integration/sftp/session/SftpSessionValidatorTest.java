@@ -0,0 +1,161 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import cn.maiaimei.spring.integration.sftp.SftpTestSupport;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.sshd.sftp.client.SftpClient.DirEntry;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.sftp.session.DefaultSftpSessionFactory;
+import org.springframework.integration.sftp.session.SftpSession;
+
+public class SftpSessionValidatorTest extends SftpTestSupport {
+
+  @Test
+  public void testPrewarmAndEvictDeadSessions() throws InterruptedException {
+    final List<SftpSession> created = new CopyOnWriteArrayList<>();
+    final DefaultSftpSessionFactory factory = new DefaultSftpSessionFactory(Boolean.FALSE) {
+      @Override
+      public SftpSession getSession() {
+        final SftpSession session = super.getSession();
+        created.add(session);
+        return session;
+      }
+    };
+    factory.setHost(SFTP_SERVER_HOST);
+    factory.setPort(SFTP_SERVER_PORT);
+    factory.setUser(SFTP_SERVER_USER);
+    factory.setPassword(SFTP_SERVER_PASSWORD);
+    factory.setAllowUnknownKeys(Boolean.TRUE);
+    final CachingSessionFactory<DirEntry> sessionFactory = new CachingSessionFactory<>(factory, 4);
+
+    final SftpSessionValidator validator = new SftpSessionValidator();
+    validator.register(SFTP_SERVER_NAME, sessionFactory, 4, 2, 2, 100);
+    validator.start();
+    try {
+      // the pool is prewarmed to the min idle sessions on start
+      assertEquals(2, created.size());
+
+      // kill an idle session behind the back of the pool
+      created.get(0).close();
+
+      // the dead session is evicted and replaced in the background
+      final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+      while (created.size() < 3 && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+      assertEquals(3, created.size());
+      final Session<DirEntry> session = sessionFactory.getSession();
+      try {
+        assertTrue(session.test());
+      } finally {
+        session.close();
+      }
+    } finally {
+      validator.stop();
+      sessionFactory.destroy();
+    }
+  }
+
+  @Test
+  public void testStartDegradedOnSlowSchema() throws InterruptedException {
+    final DefaultSftpSessionFactory factory = new DefaultSftpSessionFactory(Boolean.FALSE);
+    factory.setHost(SFTP_SERVER_HOST);
+    factory.setPort(SFTP_SERVER_PORT);
+    factory.setUser(SFTP_SERVER_USER);
+    factory.setPassword(SFTP_SERVER_PASSWORD);
+    factory.setAllowUnknownKeys(Boolean.TRUE);
+    final List<Session<DirEntry>> fastSessions = new CopyOnWriteArrayList<>();
+    final CachingSessionFactory<DirEntry> fastSessionFactory = new CachingSessionFactory<>(() -> {
+      final SftpSession session = factory.getSession();
+      fastSessions.add(session);
+      return session;
+    }, 4);
+    final CachingSessionFactory<DirEntry> slowSessionFactory = new CachingSessionFactory<>(() -> {
+      try {
+        TimeUnit.SECONDS.sleep(3);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return factory.getSession();
+    }, 4);
+
+    final SftpSessionValidator validator = new SftpSessionValidator();
+    validator.setPrewarmParallelism(4);
+    validator.setPrewarmTimeout(1000);
+    validator.register("fast", fastSessionFactory, 4, 2, 2, 0);
+    validator.register("slow", slowSessionFactory, 4, 2, 2, 0);
+    final long start = System.currentTimeMillis();
+    validator.start();
+    try {
+      // the start does not wait for the slow schema, whose sessions are opened in parallel to the fast ones
+      assertTrue(System.currentTimeMillis() - start < 2500);
+      assertTrue(validator.isRunning());
+      assertEquals(2, fastSessions.size());
+    } finally {
+      validator.stop();
+      fastSessionFactory.destroy();
+      slowSessionFactory.destroy();
+    }
+  }
+
+  @Test
+  public void testSkipCheckedOutPool() throws InterruptedException {
+    final List<SftpSession> created = new CopyOnWriteArrayList<>();
+    final DefaultSftpSessionFactory factory = new DefaultSftpSessionFactory(Boolean.FALSE) {
+      @Override
+      public SftpSession getSession() {
+        final SftpSession session = super.getSession();
+        created.add(session);
+        return session;
+      }
+    };
+    factory.setHost(SFTP_SERVER_HOST);
+    factory.setPort(SFTP_SERVER_PORT);
+    factory.setUser(SFTP_SERVER_USER);
+    factory.setPassword(SFTP_SERVER_PASSWORD);
+    factory.setAllowUnknownKeys(Boolean.TRUE);
+    final CachingSessionFactory<DirEntry> busySessionFactory = new CachingSessionFactory<>(factory, 1);
+    final CachingSessionFactory<DirEntry> sessionFactory = new CachingSessionFactory<>(factory, 4);
+
+    final SftpSessionValidator validator = new SftpSessionValidator();
+    validator.setCheckoutTimeout(100);
+    validator.register("busy", busySessionFactory, 1, 0, 1, 100);
+    validator.register(SFTP_SERVER_NAME, sessionFactory, 4, 2, 2, 100);
+    // the only session of the busy pool is held by a transfer
+    final Session<DirEntry> busySession = busySessionFactory.getSession();
+    validator.start();
+    try {
+      assertEquals(3, created.size());
+      created.get(1).close();
+
+      // the validation of the other schema is not held by the busy pool
+      final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+      while (created.size() < 4 && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+      assertEquals(4, created.size());
+    } finally {
+      busySession.close();
+      validator.stop();
+      busySessionFactory.destroy();
+      sessionFactory.destroy();
+    }
+  }
+
+  @Test
+  public void testRejectMinIdleGreaterThanPoolSize() {
+    final DefaultSftpSessionFactory factory = new DefaultSftpSessionFactory(Boolean.FALSE);
+    final CachingSessionFactory<DirEntry> sessionFactory = new CachingSessionFactory<>(factory, 2);
+    final SftpSessionValidator validator = new SftpSessionValidator();
+    // the prewarm would block on the checkout of the third session
+    assertThrows(IllegalArgumentException.class,
+        () -> validator.register(SFTP_SERVER_NAME, sessionFactory, 2, 3, 2, 0));
+  }
+
+}
@@ -0,0 +1,237 @@
+package cn.maiaimei.spring.integration.sftp.session;
+
+import cn.maiaimei.spring.integration.sftp.throttle.ThrottledSftpSessionFactory;
+import cn.maiaimei.spring.integration.sftp.throttle.TokenBucketBandwidthLimiter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.integration.sftp.session.SftpSession;
+
+/**
+ * Compares the upload and the download of a file per transfer window, against an embedded SFTP server behind a proxy
+ * delaying every packet by half of the round trip time in each direction.
+ * <p>
+ * Run the main method, or e.g. {@code java -cp <test classpath> org.openjdk.jmh.Main SftpTransferWindowBenchmark}. A
+ * buffer size of zero keeps the SSHD defaults, change the link by e.g. {@code -p roundTripMillis=80}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SftpTransferWindowBenchmark {
+
+  private static final String REMOTE_FILE = "benchmark.bin";
+
+  @Param({"0", "32768", "131072"})
+  private int bufferSize;
+
+  @Param({"64"})
+  private int outstandingRequests;
+
+  @Param({"40"})
+  private long roundTripMillis;
+
+  @Param({"16777216"})
+  private int fileSize;
+
+  private Path homeDirectory;
+
+  private SshServer server;
+
+  private LatencyProxy proxy;
+
+  private SftpSession session;
+
+  private byte[] content;
+
+  @Setup
+  public void setup() throws IOException {
+    homeDirectory = Files.createTempDirectory("sftp-benchmark");
+    server = SshServer.setUpDefaultServer();
+    server.setPasswordAuthenticator((username, password, serverSession) -> true);
+    server.setPort(0);
+    server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(homeDirectory.resolve("hostkey.ser")));
+    server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+    server.setFileSystemFactory(new VirtualFileSystemFactory(homeDirectory));
+    server.start();
+    proxy = new LatencyProxy(server.getPort(), roundTripMillis / 2);
+
+    final SftpTransferWindow transferWindow = new SftpTransferWindow(bufferSize,
+        bufferSize > 0 ? outstandingRequests : 0, 0);
+    final ThrottledSftpSessionFactory sessionFactory = new ThrottledSftpSessionFactory(
+        new TokenBucketBandwidthLimiter(0));
+    sessionFactory.setHost(proxy.getHost());
+    sessionFactory.setPort(proxy.getPort());
+    sessionFactory.setUser("foo");
+    sessionFactory.setPassword("foo");
+    sessionFactory.setAllowUnknownKeys(Boolean.TRUE);
+    sessionFactory.setBufferSize(transferWindow.getBufferSize());
+    sessionFactory.setSshClientConfigurer(transferWindow::apply);
+    session = sessionFactory.getSession();
+
+    content = new byte[fileSize];
+    new Random(fileSize).nextBytes(content);
+    session.write(new ByteArrayInputStream(content), REMOTE_FILE);
+  }
+
+  @Benchmark
+  public String upload() throws IOException {
+    session.write(new ByteArrayInputStream(content), REMOTE_FILE);
+    return REMOTE_FILE;
+  }
+
+  @Benchmark
+  public int download() throws IOException {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length);
+    session.read(REMOTE_FILE, outputStream);
+    return outputStream.size();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    session.close();
+    proxy.close();
+    server.stop();
+    Files.deleteIfExists(homeDirectory.resolve(REMOTE_FILE));
+    Files.deleteIfExists(homeDirectory.resolve("hostkey.ser"));
+    Files.deleteIfExists(homeDirectory);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(SftpTransferWindowBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  /**
+   * Forwards the connections to a local port, each chunk being written once the delay after it was read elapsed.
+   */
+  private static final class LatencyProxy implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+
+    private final int targetPort;
+
+    private final long delayNanos;
+
+    private LatencyProxy(int targetPort, long delayMillis) throws IOException {
+      this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      this.targetPort = targetPort;
+      this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+      startDaemon(this::accept);
+    }
+
+    private String getHost() {
+      return this.serverSocket.getInetAddress().getHostAddress();
+    }
+
+    private int getPort() {
+      return this.serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+      while (!this.serverSocket.isClosed()) {
+        try {
+          final Socket client = this.serverSocket.accept();
+          final Socket target = new Socket(InetAddress.getLoopbackAddress(), this.targetPort);
+          client.setTcpNoDelay(true);
+          target.setTcpNoDelay(true);
+          forward(client, target);
+          forward(target, client);
+        } catch (IOException e) {
+          // closed
+        }
+      }
+    }
+
+    private void forward(Socket from, Socket to) {
+      final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+      startDaemon(() -> {
+        try (InputStream in = from.getInputStream()) {
+          final byte[] buffer = new byte[65536];
+          int read;
+          while ((read = in.read(buffer)) > 0) {
+            chunks.put(new Chunk(System.nanoTime() + this.delayNanos, Arrays.copyOf(buffer, read)));
+          }
+        } catch (IOException | InterruptedException e) {
+          // closed
+        } finally {
+          chunks.add(new Chunk(0, new byte[0]));
+        }
+      });
+      startDaemon(() -> {
+        try (OutputStream out = to.getOutputStream()) {
+          Chunk chunk;
+          while ((chunk = chunks.take()).bytes.length > 0) {
+            final long waitNanos = chunk.dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+              TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            out.write(chunk.bytes);
+            out.flush();
+          }
+        } catch (IOException | InterruptedException e) {
+          // closed
+        }
+      });
+    }
+
+    private static void startDaemon(Runnable runnable) {
+      final Thread thread = new Thread(runnable, "latency-proxy");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.serverSocket.close();
+    }
+
+  }
+
+  private static final class Chunk {
+
+    private final long dueNanos;
+
+    private final byte[] bytes;
+
+    private Chunk(long dueNanos, byte[] bytes) {
+      this.dueNanos = dueNanos;
+      this.bytes = bytes;
+    }
+
+  }
+
+}